@@ -17,7 +17,9 @@ package com.norconex.jef5.job.group;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import com.norconex.jef5.job.IJob;
@@ -111,28 +113,41 @@ public abstract class AbstractJobGroup implements IJobGroup {
     /*default*/ class GroupStatusUpdater {
         private final JobStatusUpdater statusUpdater;
         private final double[] completionRatios = new double[jobs.size()];
+        private final Map<String, Integer> jobIndexes = new HashMap<>();
+        // Kept up to date on each change, so large groups are not
+        // scanned every time a child progresses.
+        private double ratioTotal;
+        private int completedCount;
         public GroupStatusUpdater(JobStatusUpdater statusUpdater) {
             super();
             this.statusUpdater = statusUpdater;
+            for (int i = 0; i < jobIds.size(); i++) {
+                jobIndexes.putIfAbsent(jobIds.get(i), i);
+            }
         }
         public synchronized void childStatusChanged(JobStatus status) {
-            int jobIndex = jobIds.indexOf(status.getJobId());
-            if (jobIndex >= 0) {
-                completionRatios[jobIndex] = status.getProgress();
-            }
-            // Compute average
-            double ratioTotal = 0;
-            int completedCount = 0;
-            for (int i = 0; i < completionRatios.length; i++) {
-                if (completionRatios[i] >= 1.0d) {
+            Integer jobIndex = jobIndexes.get(status.getJobId());
+            if (jobIndex != null) {
+                double oldRatio = completionRatios[jobIndex];
+                double newRatio = status.getProgress();
+                completionRatios[jobIndex] = newRatio;
+                ratioTotal += newRatio - oldRatio;
+                if (oldRatio >= 1.0d) {
+                    completedCount--;
+                }
+                if (newRatio >= 1.0d) {
                     completedCount++;
                 }
-                ratioTotal += completionRatios[i];
             }
-            statusUpdater.setProgress(Math.min(1.0d,
-                    (ratioTotal / jobs.size())));
-            statusUpdater.setNote(completedCount + " of "
-                    + jobs.size() + " jobs completed.");
+            // Compute average
+            double progress = Math.min(1.0d, (ratioTotal / jobs.size()));
+            String note = completedCount + " of "
+                    + jobs.size() + " jobs completed.";
+            // Single notification for both changes
+            statusUpdater.batch(u -> {
+                u.setProgress(progress);
+                u.setNote(note);
+            });
         }
 
     }
@@ -14,14 +14,15 @@
  */
 package com.norconex.jef5.job.group;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +39,17 @@ import com.norconex.jef5.suite.JobSuite;
  * done executing.  An exception in one job will not stop the other jobs
  * in the group from running.  On the other hand, one or more exception will
  * result in this group to fail.
+ * <p>
+ * Jobs are executed by the job executor shared by all groups of a
+ * suite (see {@link JobSuite#getJobExecutor()}), which bounds how many
+ * jobs run at once in the whole suite.  The maximum number of threads
+ * of a group further limits how many of its own jobs run at once.
+ * </p>
+ * <p>
+ * Jobs that were stopped can be queued again while the group is still
+ * executing (see {@link JobSuite#requeueJob(String)}), without
+ * affecting other jobs.
+ * </p>
  *
  * @author Pascal Essiembre
  */
@@ -48,6 +60,8 @@ public class AsyncJobGroup extends AbstractJobGroup {
             LoggerFactory.getLogger(AsyncJobGroup.class);
 
     private final int maxThread;
+    // Current execution, null when not executing.
+    private volatile Execution execution;
 
     /**
      * Constructor.
@@ -94,60 +108,169 @@ public class AsyncJobGroup extends AbstractJobGroup {
 
     @Override
     public void executeGroup(final JobSuite suite) {
-        final Collection<IJob> failedJobs =
-                Collections.synchronizedCollection(new ArrayList<>());
         List<IJob> jobs = getJobs();
-        int realMaxThread = Math.min(maxThread, jobs.size());
-        final CountDownLatch latch = new CountDownLatch(jobs.size());
-        ExecutorService pool = Executors.newFixedThreadPool(realMaxThread);
+        Execution exec = new Execution(suite,
+                Math.max(1, Math.min(maxThread, jobs.size())));
+        execution = exec;
         for (final IJob job : jobs) {
-            pool.execute(() -> runJob(job, suite, failedJobs, latch));
+            exec.submit(job);
         }
 
         try {
-            latch.await();
-            pool.shutdown();
+            // Waits for all jobs to end, including requeued ones.
+            exec.await();
         } catch (InterruptedException e) {
              throw new JefException(e);
+        } finally {
+            execution = null;
+            exec.close();
         }
         if (LOG.isDebugEnabled()) {
             LOG.debug("All threads finished for async group\""
                     + getId() + "\".");
         }
 
-        if (!failedJobs.isEmpty()) {
+        if (!exec.failedJobs.isEmpty()) {
             throw new JefException(
-                    failedJobs.size() + " out of " + jobs.size()
+                    exec.failedJobs.size() + " out of " + jobs.size()
                   + " jobs failed in async group \"" + getId() + "\"");
         }
     }
 
-    private void runJob(IJob job, JobSuite suite, Collection<IJob> failedJobs,
-            CountDownLatch latch) {
-        Thread.currentThread().setName(job.getId());
-        JobSuite.setCurrentJobId(job.getId());
+    /**
+     * Queues a job of this group for execution again, as long as this
+     * group has not yet finished executing.  The job is executed as
+     * soon as a thread is available.
+     * @param job a job of this group
+     * @param suite job suite
+     * @return <code>true</code> if the job was queued for execution
+     */
+    @Override
+    public boolean requeue(IJob job, JobSuite suite) {
+        Execution exec = execution;
+        return exec != null && getJobs().contains(job) && exec.submit(job);
+    }
 
+    private void runJob(IJob job, Execution exec) {
         try {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Thread from " + AsyncJobGroup.this.getId()
                     + " started and about to run: " + job.getId());
             }
-            if (!suite.runJob(job)) {
-                synchronized (failedJobs) {
-                    LOG.error(job.getId() + " failed.");
-                    failedJobs.add(job);
+            if (!exec.suite.runJob(job)) {
+                LOG.error(job.getId() + " failed.");
+                exec.failedJobs.add(job);
+            } else {
+                // A requeued job can succeed where it previously failed.
+                exec.failedJobs.remove(job);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(job.getId() + " succeeded.");
                 }
-            } else if (LOG.isDebugEnabled()) {
-                LOG.debug(job.getId() + " succeeded.");
             }
-            JobSuite.setCurrentJobId(AsyncJobGroup.this.getId());
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Thread from " + AsyncJobGroup.this.getId()
                     + " finished to run: " + job.getId());
             }
         } finally {
-            latch.countDown();
+            // Clears any interruption meant for this job.
+            Thread.interrupted();
+            exec.jobEnded();
         }
+    }
 
+    // State of one group execution.  Jobs are submitted to the suite
+    // job executor, no more than the group maximum number of threads
+    // at once, the others waiting in this group queue.
+    private class Execution {
+        private final JobSuite suite;
+        private final int maxThreads;
+        private final Set<IJob> failedJobs = ConcurrentHashMap.newKeySet();
+        private final Queue<IJob> pendingJobs = new ArrayDeque<>();
+        private int runningJobs;
+        // Jobs queued or running, not yet ended.  Once it reaches zero
+        // while the group waits, the execution is closed.
+        private int outstandingJobs;
+        private boolean closed;
+        public Execution(JobSuite suite, int maxThreads) {
+            super();
+            this.suite = suite;
+            this.maxThreads = maxThreads;
+        }
+        private boolean submit(IJob job) {
+            synchronized (this) {
+                // Jobs can no longer be added once all jobs have ended.
+                if (closed) {
+                    return false;
+                }
+                outstandingJobs++;
+                pendingJobs.add(job);
+            }
+            executePending();
+            return true;
+        }
+        private void jobEnded() {
+            releaseJob();
+            executePending();
+        }
+        private synchronized void releaseJob() {
+            runningJobs--;
+            outstandingJobs--;
+            if (outstandingJobs == 0) {
+                notifyAll();
+            }
+        }
+        private void executePending() {
+            List<IJob> jobs = new ArrayList<>();
+            do {
+                jobs.clear();
+                synchronized (this) {
+                    while (runningJobs < maxThreads
+                            && !pendingJobs.isEmpty()) {
+                        runningJobs++;
+                        jobs.add(pendingJobs.remove());
+                    }
+                }
+                for (IJob job : jobs) {
+                    try {
+                        suite.getJobExecutor().execute(
+                                () -> runJob(job, this));
+                    } catch (RejectedExecutionException e) {
+                        LOG.error("Job could not be executed: {}",
+                                job.getId(), e);
+                        failedJobs.add(job);
+                        releaseJob();
+                    }
+                }
+                // Rejected jobs free their slot for pending ones.
+            } while (!jobs.isEmpty());
+        }
+        // Blocks until all jobs ended.  When this group is itself run by
+        // the job executor (nested group), other jobs run meanwhile.
+        private void await() throws InterruptedException {
+            suite.getJobExecutor().block(new ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    synchronized (Execution.this) {
+                        while (outstandingJobs > 0) {
+                            Execution.this.wait();
+                        }
+                        closed = true;
+                    }
+                    return true;
+                }
+                @Override
+                public boolean isReleasable() {
+                    synchronized (Execution.this) {
+                        if (outstandingJobs == 0) {
+                            closed = true;
+                        }
+                        return closed;
+                    }
+                }
+            });
+        }
+        private synchronized void close() {
+            closed = true;
+        }
     }
 }
@@ -18,6 +18,7 @@ import java.util.List;
 
 import com.norconex.jef5.job.IJob;
 import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.suite.JobSuite;
 
 
 /**
@@ -36,4 +37,16 @@ public interface IJobGroup extends IJob {
 
 
     void groupProgressed(JobStatus childJobStatus);
+
+    /**
+     * Queues a job of this group for execution again while this group is
+     * still executing, typically once it was stopped.  Default does not
+     * support it and returns <code>false</code>.
+     * @param job a job of this group
+     * @param suite job suite
+     * @return <code>true</code> if the job was queued for execution
+     */
+    default boolean requeue(IJob job, JobSuite suite) {
+        return false;
+    }
 }
@@ -0,0 +1,86 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.shutdown;
+
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.commons.lang.xml.XML;
+import com.norconex.jef5.suite.JobStopCoordinator;
+import com.norconex.jef5.suite.JobSuite;
+
+/**
+ * Base class for shutdown hooks, stopping a job suite and its jobs,
+ * or individual jobs, once a stop request is received, whatever the
+ * transport.
+ * @author Pascal Essiembre
+ */
+public abstract class AbstractShutdownHook implements IShutdownHook {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(AbstractShutdownHook.class);
+
+    /**
+     * Stops the job suite through its stop coordinator, returning
+     * right away.
+     * @param suite the job suite to stop
+     * @see JobStopCoordinator
+     */
+    protected void stopSuite(JobSuite suite) {
+        suite.getStopCoordinator().stop();
+    }
+
+    /**
+     * Stops a job and its child jobs through the job suite stop
+     * coordinator, returning right away.
+     * @param suite the job suite
+     * @param jobId identifier of the job to stop
+     * @return <code>false</code> if there is no such job in the suite
+     * @see JobStopCoordinator#stopJob(String)
+     */
+    protected boolean stopJob(JobSuite suite, String jobId) {
+        if (suite.getJob(jobId) == null) {
+            LOG.warn("Cannot stop unknown job: {}", jobId);
+            return false;
+        }
+        suite.getStopCoordinator().stopJob(jobId);
+        return true;
+    }
+
+    /**
+     * Gets an attribute this hook advertised in a suite index
+     * (see {@link #getIndexAttributes()}).
+     * @param indexFile suite index file
+     * @param name attribute name
+     * @return attribute value
+     * @throws ShutdownException invalid index or missing attribute
+     */
+    protected String getIndexAttribute(Path indexFile, String name)
+            throws ShutdownException {
+        if (indexFile == null || !indexFile.toFile().isFile()) {
+            throw new ShutdownException("Invalid index file: " + indexFile);
+        }
+        String value = new XML(indexFile).getString(
+                "shutdownHook/@" + name, null);
+        if (value == null) {
+            throw new ShutdownException("Index file does not advertise "
+                    + getClass().getSimpleName() + " \"" + name + "\": "
+                    + indexFile.toAbsolutePath());
+        }
+        return value;
+    }
+}
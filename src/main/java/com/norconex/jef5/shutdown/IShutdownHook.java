@@ -15,6 +15,8 @@
 package com.norconex.jef5.shutdown;
 
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
 
 import com.norconex.jef5.suite.JobSuite;
 
@@ -26,8 +28,7 @@ import com.norconex.jef5.suite.JobSuite;
  */
 public interface IShutdownHook {
 
-    //TODO add hook implementation as part of suite index.
-    //TODO filebased + port based + Runtime.getRuntime().addShutdownHook(new Thread() 
+    //TODO Runtime.getRuntime().addShutdownHook(new Thread() 
     
     /**
      * Setup and/or start the shutdown hook, which can be terminated
@@ -40,6 +41,18 @@ public interface IShutdownHook {
      * Called at the end of job suite execution upon completion. 
      */
     void destroy();
+
+    /**
+     * Gets how other processes can reach this hook once set up (e.g.,
+     * a port number).  They are recorded as attributes of the
+     * <code>shutdownHook</code> element of the suite index, along with
+     * this hook class, for {@link #shutdown(Path)} to use. 
+     * Default returns an empty map.
+     * @return index attributes
+     */
+    default Map<String, String> getIndexAttributes() {
+        return Collections.emptyMap();
+    }
     
     /**
      * Shuts down a currently running job suite.
@@ -49,4 +62,26 @@ public interface IShutdownHook {
      * @throws ShutdownException could not shutdown running suite.
      */
     boolean shutdown(Path indexFile) throws ShutdownException;
+
+    /**
+     * Stops a job of a currently running job suite, along with its
+     * child jobs, if any. Other jobs keep running. Default implementation
+     * shuts down the whole suite when the job id is <code>null</code>
+     * and throws a {@link ShutdownException} otherwise.
+     * @param indexFile path to index file, containing suite status info
+     * @param jobId identifier of the job to stop, or <code>null</code>
+     *        for the whole suite
+     * @return <code>true</code> if the process was running and the
+     *         stop request was sent. <code>false</code> if no process
+     *         running.
+     * @throws ShutdownException could not stop the job
+     */
+    default boolean shutdown(Path indexFile, String jobId)
+            throws ShutdownException {
+        if (jobId == null) {
+            return shutdown(indexFile);
+        }
+        throw new ShutdownException(getClass().getSimpleName()
+                + " does not support stopping individual jobs.");
+    }
 }
@@ -15,55 +15,66 @@
 package com.norconex.jef5.shutdown.impl;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.norconex.commons.lang.Sleeper;
 import com.norconex.jef5.JefException;
-import com.norconex.jef5.event.JefEvent;
-import com.norconex.jef5.job.IJob;
-import com.norconex.jef5.shutdown.IShutdownHook;
+import com.norconex.jef5.shutdown.AbstractShutdownHook;
 import com.norconex.jef5.shutdown.ShutdownException;
-import com.norconex.jef5.status.JobState;
-import com.norconex.jef5.status.JobStatus;
 import com.norconex.jef5.status.JobSuiteStatus;
 import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobSuiteLock;
 
 /**
  * Listens for STOP requests using a stop file.  The stop file
  * file has the same path of the suite index file location, with ".stop"
- * extension instead.
+ * extension instead.  An empty stop file stops the whole suite, while
+ * a stop file holding a job id only stops that job and its child jobs.
+ * <p>
+ * The stop file creation is detected with a {@link WatchService} on its
+ * directory, so the hook uses no CPU while waiting.  Only events about
+ * the stop file are considered, not those about other files sharing
+ * its directory (e.g., job statuses).  Where the file
+ * system does not support watching, the stop file is checked every
+ * second instead.
+ * </p>
  *
  * @author Pascal Essiembre
  */
-public class FileShutdownHook implements IShutdownHook {
+public class FileShutdownHook extends AbstractShutdownHook {
 
     private static final Logger LOG =
             LoggerFactory.getLogger(FileShutdownHook.class);
 
-    private static final int STOP_WAIT_DELAY = 3;
+    private static final long POLL_INTERVAL = 1000;
 
-    private boolean monitoring = false;
+    private volatile boolean monitoring = false;
     private JobSuite suite;
+    private WatchService watchService;
 
 
     @Override
     public void setup(final JobSuite suite) {
         this.suite = suite;
         final Path stopFile = getStopFile(suite.getStatusIndex());
+        monitoring = true;
+        watchService = newWatchService(stopFile.getParent());
+        final WatchService ws = watchService;
         new Thread(() -> {
-            monitoring = true;
-            while(monitoring) {
-                if (stopFile.toFile().exists()) {
-                    stopMonitoring(stopFile);
-                    stopSuite();
-                }
-                Sleeper.sleepNanos(500);
+            if (ws == null || !watch(ws, stopFile)) {
+                poll(stopFile);
             }
         }, "ShutdownHook Thread").start();
     }
@@ -71,6 +82,8 @@ public class FileShutdownHook implements IShutdownHook {
     @Override
     public void destroy() {
         monitoring = false;
+        closeWatchService(watchService);
+        watchService = null;
         Path stopFile = getStopFile(suite.getStatusIndex());
         if (stopFile.toFile().exists()) {
             try {
@@ -85,6 +98,11 @@ public class FileShutdownHook implements IShutdownHook {
 
     @Override
     public boolean shutdown(Path indexFile) throws ShutdownException {
+        return shutdown(indexFile, null);
+    }
+    @Override
+    public boolean shutdown(Path indexFile, String jobId)
+            throws ShutdownException {
         if (indexFile == null || !indexFile.toFile().isFile()) {
             throw new ShutdownException("Invalid index file: " + indexFile);
         }
@@ -96,8 +114,7 @@ public class FileShutdownHook implements IShutdownHook {
         }
 
         try {
-            if (!JobSuiteStatus.getInstance(
-                    indexFile).getRootStatus().isRunning()) {
+            if (!isRunning(indexFile)) {
                 LOG.info("The job suite is not running.");
                 return false;
             }
@@ -107,7 +124,15 @@ public class FileShutdownHook implements IShutdownHook {
                             + stopFile.toAbsolutePath(), e);
         }
         try {
-            Files.createFile(stopFile);
+            if (jobId == null) {
+                Files.createFile(stopFile);
+            } else {
+                // Moved in place once written so it is never read partially.
+                Path tmpFile = stopFile.resolveSibling(
+                        stopFile.getFileName() + ".tmp");
+                Files.write(tmpFile, jobId.getBytes(StandardCharsets.UTF_8));
+                Files.move(tmpFile, stopFile, StandardCopyOption.ATOMIC_MOVE);
+            }
         } catch (IOException e) {
             throw new ShutdownException("Could not create stop file: "
                     + stopFile.toAbsolutePath(), e);
@@ -115,49 +140,112 @@ public class FileShutdownHook implements IShutdownHook {
         return true;
     }
 
-    private synchronized void stopMonitoring(Path stopFile) {
-        monitoring = false;
+    // The suite lock tells without reading statuses, which some status
+    // stores cannot do while their suite is running.
+    private boolean isRunning(Path indexFile) throws IOException {
+        Path lockFile = JobSuite.getLockFile(indexFile.getParent());
+        if (Files.exists(lockFile)) {
+            return JobSuiteLock.isLocked(lockFile);
+        }
+        return JobSuiteStatus.getInstance(
+                indexFile).getRootStatus().isRunning();
+    }
+
+    private WatchService newWatchService(Path dir) {
+        WatchService ws = null;
         try {
-            Files.deleteIfExists(stopFile);
-        } catch (IOException e) {
-            throw new JefException("Cannot delete stop file: " + stopFile, e);
+            Files.createDirectories(dir);
+            ws = dir.getFileSystem().newWatchService();
+            dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE);
+            return ws;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.info("Cannot watch for stop file in {}, polling instead.",
+                    dir, e);
+            closeWatchService(ws);
+            return null;
         }
     }
-    private void stopSuite() {
-        monitoring = false;
-        LOG.info("STOP request received.");
-
-        // Notify Suite Life Cycle listeners
-        suite.getEventManager().fire(
-                new JefEvent.Builder(JefEvent.SUITE_STOPPING, suite).build());
-
-        // Notify Job Life Cycle listeners and stop them
-        suite.accept((final IJob job, final JobStatus jobStatus) -> {
-            suite.getEventManager().fire(
-                    new JefEvent.Builder(JefEvent.JOB_STOPPING, suite)
-                        .status(jobStatus)
-                        .build());
-            new Thread(() -> stopJob(job, jobStatus), "Stop Thread").start();
-        });
+    // Returns false if watching stopped working and polling is required.
+    private boolean watch(WatchService ws, Path stopFile) {
+        try {
+            // The file may have been created before watching started.
+            boolean stopping = checkStopFile(stopFile);
+            while (monitoring && !stopping) {
+                WatchKey key = ws.take();
+                boolean stopFileEvent = hasStopFileEvent(key, stopFile);
+                if (!key.reset()) {
+                    if (monitoring && !checkStopFile(stopFile)) {
+                        LOG.info("Stop file directory no longer watchable, "
+                                + "polling instead: {}",
+                                stopFile.getParent());
+                        return false;
+                    }
+                    return true;
+                }
+                stopping = stopFileEvent && checkStopFile(stopFile);
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // destroyed
+        }
+        return true;
     }
-    private void stopJob(final IJob job, final JobStatus status) {
-        status.setStopRequested(true);
-        job.stop(status, suite);
-        while (status.isRunning()) {
-            Sleeper.sleepSeconds(STOP_WAIT_DELAY);
+    // Other files (e.g., statuses) written in the same directory also
+    // wake up the watch service, but only the stop file is checked.
+    private boolean hasStopFileEvent(WatchKey key, Path stopFile) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || stopFile.getFileName().equals(event.context())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private void poll(Path stopFile) {
+        while (monitoring && !checkStopFile(stopFile)) {
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
         }
-        if (status.getState() == JobState.STOPPED) {
-            suite.getEventManager().fire(
-                    new JefEvent.Builder(JefEvent.JOB_STOPPED, suite)
-                        .status(status)
-                        .build());
-            if (job.getId().equals(suite.getRootJob().getId())) {
-                suite.getEventManager().fire(new JefEvent.Builder(
-                        JefEvent.SUITE_STOPPED, suite).build());
+    }
+    private void closeWatchService(WatchService ws) {
+        if (ws != null) {
+            try {
+                ws.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close stop file watch service.", e);
             }
         }
     }
+    // Returns true once the whole suite is stopping.
+    private boolean checkStopFile(Path stopFile) {
+        if (!monitoring || !stopFile.toFile().exists()) {
+            return false;
+        }
+        String jobId = consumeStopFile(stopFile);
+        if (StringUtils.isEmpty(jobId)) {
+            monitoring = false;
+            stopSuite(suite);
+            return true;
+        }
+        // Only one job is stopping, keep monitoring.
+        stopJob(suite, jobId);
+        return false;
+    }
 
+    // Deletes the stop file, returning the job id it holds, if any.
+    private synchronized String consumeStopFile(Path stopFile) {
+        try {
+            String jobId = new String(
+                    Files.readAllBytes(stopFile), StandardCharsets.UTF_8);
+            Files.deleteIfExists(stopFile);
+            return jobId;
+        } catch (IOException e) {
+            throw new JefException("Cannot consume stop file: "
+                    + stopFile, e);
+        }
+    }
     private Path getStopFile(Path indexFile) {
         return Paths.get(StringUtils.removeEnd(
                 indexFile.toString(), ".index") + ".stop");
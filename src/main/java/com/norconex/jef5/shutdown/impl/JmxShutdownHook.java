@@ -0,0 +1,270 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.shutdown.impl;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import javax.management.remote.JMXAuthenticator;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+import javax.management.remote.rmi.RMIConnectorServer;
+import javax.security.auth.Subject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.shutdown.AbstractShutdownHook;
+import com.norconex.jef5.shutdown.ShutdownException;
+import com.norconex.jef5.suite.JobSuite;
+
+/**
+ * Listens for STOP requests as a JMX operation.  A "stop" operation,
+ * and a "stopJob" operation to only stop one job and its child jobs, are
+ * registered on an MBean server of their own and exposed to other
+ * processes through a JMX connector bound to the loopback interface on an
+ * ephemeral port.  The connector only accepts clients presenting
+ * a random token as password.  The connector address, MBean name and
+ * token are recorded in the suite index.
+ *
+ * @author Pascal Essiembre
+ */
+public class JmxShutdownHook extends AbstractShutdownHook {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JmxShutdownHook.class);
+
+    public static final String ATTR_URL = "url";
+    public static final String ATTR_OBJECT_NAME = "objectName";
+    public static final String ATTR_TOKEN = "token";
+    public static final String DOMAIN = "com.norconex.jef5";
+
+    private static final String STOP_OPERATION = "stop";
+    private static final String STOP_JOB_OPERATION = "stopJob";
+    private static final String USER = "jef";
+
+    private MBeanServer mbeanServer;
+    private ObjectName objectName;
+    private JMXConnectorServer connectorServer;
+    private String token;
+
+    /**
+     * JMX management interface of a job suite shutdown hook.
+     */
+    public interface StopMBean {
+        /**
+         * Requests the job suite to stop.
+         */
+        void stop();
+        /**
+         * Requests a job and its child jobs to stop.
+         * @param jobId identifier of the job to stop
+         * @return <code>false</code> if there is no such job
+         */
+        boolean stopJob(String jobId);
+    }
+
+    @Override
+    public void setup(final JobSuite suite) {
+        // Not the platform MBean server: only our MBean is exposed.
+        mbeanServer = MBeanServerFactory.newMBeanServer();
+        token = UUID.randomUUID().toString();
+        try {
+            Hashtable<String, String> props = new Hashtable<>();
+            props.put("type", "JobSuite");
+            props.put("name", ObjectName.quote(suite.getId()));
+            objectName = new ObjectName(DOMAIN, props);
+            StopMBean mbean = new StopMBean() {
+                @Override
+                public void stop() {
+                    stopSuite(suite);
+                }
+                @Override
+                public boolean stopJob(String jobId) {
+                    return JmxShutdownHook.this.stopJob(suite, jobId);
+                }
+            };
+            mbeanServer.registerMBean(
+                    new StandardMBean(mbean, StopMBean.class), objectName);
+
+            Map<String, Object> env = new HashMap<>();
+            env.put(JMXConnectorServer.AUTHENTICATOR,
+                    new TokenAuthenticator(token));
+            LoopbackSocketFactory factory = new LoopbackSocketFactory();
+            env.put(RMIConnectorServer.RMI_SERVER_SOCKET_FACTORY_ATTRIBUTE,
+                    factory);
+            env.put(RMIConnectorServer.RMI_CLIENT_SOCKET_FACTORY_ATTRIBUTE,
+                    factory);
+            connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(
+                    new JMXServiceURL("service:jmx:rmi://"
+                            + InetAddress.getLoopbackAddress()
+                                    .getHostAddress()),
+                    env, mbeanServer);
+            connectorServer.start();
+        } catch (JMException | IOException e) {
+            destroy();
+            throw new JefException("Cannot setup JMX shutdown hook.", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (connectorServer != null) {
+            try {
+                connectorServer.stop();
+            } catch (IOException e) {
+                LOG.debug("Could not stop JMX connector server.", e);
+            }
+            connectorServer = null;
+        }
+        if (objectName != null) {
+            try {
+                mbeanServer.unregisterMBean(objectName);
+            } catch (JMException e) {
+                LOG.debug("Could not unregister {}.", objectName, e);
+            }
+            objectName = null;
+        }
+        mbeanServer = null;
+        token = null;
+    }
+
+    @Override
+    public Map<String, String> getIndexAttributes() {
+        Map<String, String> attribs = new HashMap<>();
+        if (connectorServer != null) {
+            attribs.put(ATTR_URL, connectorServer.getAddress().toString());
+            attribs.put(ATTR_OBJECT_NAME, objectName.toString());
+            attribs.put(ATTR_TOKEN, token);
+        }
+        return attribs;
+    }
+
+    @Override
+    public boolean shutdown(Path indexFile) throws ShutdownException {
+        return shutdown(indexFile, null);
+    }
+    @Override
+    public boolean shutdown(Path indexFile, String jobId)
+            throws ShutdownException {
+        String url = getIndexAttribute(indexFile, ATTR_URL);
+        String name = getIndexAttribute(indexFile, ATTR_OBJECT_NAME);
+        Map<String, Object> env = new HashMap<>();
+        env.put(JMXConnector.CREDENTIALS, new String[] {
+                USER, getIndexAttribute(indexFile, ATTR_TOKEN) });
+        JMXConnector connector;
+        try {
+            connector = JMXConnectorFactory.connect(
+                    new JMXServiceURL(url), env);
+        } catch (SecurityException e) {
+            throw new ShutdownException(
+                    "JMX stop request rejected by " + url, e);
+        } catch (IOException e) {
+            LOG.info("The job suite is not running.");
+            LOG.debug("Could not connect to {}.", url, e);
+            return false;
+        }
+        try {
+            MBeanServerConnection conn = connector.getMBeanServerConnection();
+            if (jobId == null) {
+                conn.invoke(new ObjectName(name), STOP_OPERATION, null, null);
+            } else if (!Boolean.TRUE.equals(conn.invoke(
+                    new ObjectName(name), STOP_JOB_OPERATION,
+                    new Object[] { jobId },
+                    new String[] { String.class.getName() }))) {
+                throw new ShutdownException(
+                        "No such job in running suite: " + jobId);
+            }
+            return true;
+        } catch (JMException | IOException e) {
+            throw new ShutdownException(
+                    "Could not invoke JMX stop operation on " + name, e);
+        } finally {
+            try {
+                connector.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close JMX connector.", e);
+            }
+        }
+    }
+
+    // Only lets in clients knowing the token of this run.
+    private static class TokenAuthenticator implements JMXAuthenticator {
+        private final byte[] expected;
+        public TokenAuthenticator(String token) {
+            expected = token.getBytes(StandardCharsets.UTF_8);
+        }
+        @Override
+        public Subject authenticate(Object credentials) {
+            if (credentials instanceof String[]) {
+                String[] userPass = (String[]) credentials;
+                if (userPass.length == 2 && USER.equals(userPass[0])
+                        && userPass[1] != null && MessageDigest.isEqual(
+                                expected, userPass[1].getBytes(
+                                        StandardCharsets.UTF_8))) {
+                    return new Subject();
+                }
+            }
+            throw new SecurityException("Invalid JMX stop credentials.");
+        }
+    }
+
+    // Only accepts and opens connections on the loopback interface.
+    private static class LoopbackSocketFactory implements
+            RMIServerSocketFactory, RMIClientSocketFactory, Serializable {
+        private static final long serialVersionUID = 1L;
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return new ServerSocket(
+                    port, 50, InetAddress.getLoopbackAddress());
+        }
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof LoopbackSocketFactory;
+        }
+        @Override
+        public int hashCode() {
+            return LoopbackSocketFactory.class.hashCode();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.shutdown.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.shutdown.AbstractShutdownHook;
+import com.norconex.jef5.shutdown.ShutdownException;
+import com.norconex.jef5.suite.JobSuite;
+
+/**
+ * Listens for STOP requests on a loopback socket bound to an ephemeral
+ * port.  The port and a random token that must accompany stop requests
+ * are recorded in the suite index.  Stop requests are received right
+ * away, without any file system polling.  A job id can follow the
+ * token to only stop that job and its child jobs.
+ *
+ * @author Pascal Essiembre
+ */
+public class SocketShutdownHook extends AbstractShutdownHook {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(SocketShutdownHook.class);
+
+    public static final String ATTR_PORT = "port";
+    public static final String ATTR_TOKEN = "token";
+
+    private static final String STOP_COMMAND = "STOP ";
+    private static final String REPLY_OK = "OK";
+    private static final String REPLY_DENIED = "DENIED";
+    private static final String REPLY_UNKNOWN_JOB = "UNKNOWN JOB";
+    private static final int TIMEOUT = 5000;
+
+    private ServerSocket serverSocket;
+    private String token;
+
+    @Override
+    public void setup(final JobSuite suite) {
+        token = UUID.randomUUID().toString();
+        try {
+            serverSocket = new ServerSocket(
+                    0, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            throw new JefException("Cannot open shutdown socket.", e);
+        }
+        final ServerSocket ss = serverSocket;
+        final String expected = STOP_COMMAND + token;
+        Thread t = new Thread(() -> {
+            while (!ss.isClosed()) {
+                try (Socket socket = ss.accept()) {
+                    accept(ss, socket, expected, suite);
+                } catch (IOException e) {
+                    if (!ss.isClosed()) {
+                        LOG.warn("Invalid shutdown socket request.", e);
+                    }
+                }
+            }
+        }, "ShutdownHook Thread");
+        t.setDaemon(true);
+        t.start();
+    }
+    private void accept(ServerSocket ss, Socket socket, String expected,
+            JobSuite suite) throws IOException {
+        socket.setSoTimeout(TIMEOUT);
+        socket.setTcpNoDelay(true);
+        String request = readLine(socket);
+        if (expected.equals(request)) {
+            writeLine(socket, REPLY_OK);
+            ss.close();
+            stopSuite(suite);
+        } else if (request != null && request.startsWith(expected + " ")) {
+            String jobId = request.substring(expected.length() + 1);
+            writeLine(socket,
+                    stopJob(suite, jobId) ? REPLY_OK : REPLY_UNKNOWN_JOB);
+        } else {
+            writeLine(socket, REPLY_DENIED);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close shutdown socket.", e);
+            }
+            serverSocket = null;
+        }
+    }
+
+    @Override
+    public Map<String, String> getIndexAttributes() {
+        Map<String, String> attribs = new HashMap<>();
+        if (serverSocket != null) {
+            attribs.put(ATTR_PORT,
+                    Integer.toString(serverSocket.getLocalPort()));
+            attribs.put(ATTR_TOKEN, token);
+        }
+        return attribs;
+    }
+
+    @Override
+    public boolean shutdown(Path indexFile) throws ShutdownException {
+        return shutdown(indexFile, null);
+    }
+    @Override
+    public boolean shutdown(Path indexFile, String jobId)
+            throws ShutdownException {
+        if (StringUtils.containsAny(jobId, '\r', '\n')) {
+            throw new ShutdownException(
+                    "Job id cannot contain line breaks: " + jobId);
+        }
+        int port;
+        try {
+            port = Integer.parseInt(getIndexAttribute(indexFile, ATTR_PORT));
+        } catch (NumberFormatException e) {
+            throw new ShutdownException(
+                    "Invalid shutdown port in index: " + indexFile, e);
+        }
+        String stopToken = getIndexAttribute(indexFile, ATTR_TOKEN);
+        try (Socket socket = new Socket()) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(TIMEOUT);
+            socket.connect(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), port), TIMEOUT);
+            writeLine(socket, STOP_COMMAND + stopToken
+                    + (jobId == null ? "" : " " + jobId));
+            String response = readLine(socket);
+            if (!REPLY_OK.equals(response)) {
+                throw new ShutdownException(
+                        "Stop request rejected: " + response);
+            }
+            return true;
+        } catch (ConnectException e) {
+            LOG.info("The job suite is not running.");
+            return false;
+        } catch (IOException e) {
+            throw new ShutdownException(
+                    "Could not send stop request on port " + port, e);
+        }
+    }
+
+    private String readLine(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+    }
+    private void writeLine(Socket socket, String line) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -0,0 +1,123 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import static com.norconex.jef5.status.JobStatusBinaryIO.readInstant;
+import static com.norconex.jef5.status.JobStatusBinaryIO.readString;
+import static com.norconex.jef5.status.JobStatusBinaryIO.writeInstant;
+import static com.norconex.jef5.status.JobStatusBinaryIO.writeString;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Encodes job statuses in a compact binary format, much faster to
+ * decode than text properties.  Encoded statuses start with a
+ * "magic" header followed by a format version number, which
+ * {@link #isBinary(InputStream)} relies on to tell them apart from
+ * other formats.
+ * </p>
+ * @author Pascal Essiembre
+ */
+public class BinaryJobStatusCodec
+        implements IJobStatusCodec, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte[] MAGIC = { (byte) 0x89, 'J', 'E', 'F' };
+    private static final byte VERSION = 1;
+
+    /**
+     * Whether the supplied stream starts with a binary-encoded status.
+     * The stream must support marks and is reset to where it was.
+     * @param in input stream
+     * @return <code>true</code> if binary
+     * @throws IOException could not read from stream
+     */
+    public static boolean isBinary(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            byte[] head = new byte[MAGIC.length];
+            int read = 0;
+            int n;
+            while (read < head.length
+                    && (n = in.read(head, read, head.length - read)) != -1) {
+                read += n;
+            }
+            return Arrays.equals(MAGIC, head);
+        } finally {
+            in.reset();
+        }
+    }
+
+    @Override
+    public void encode(String jobId, JobStatusData status, OutputStream out)
+            throws IOException {
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.write(MAGIC);
+        dout.writeByte(VERSION);
+        writeString(dout, jobId);
+        dout.writeDouble(status.getProgress());
+        writeString(dout, status.getNote());
+        writeInstant(dout, status.getStartTime());
+        writeInstant(dout, status.getEndTime());
+        dout.writeBoolean(status.isStopRequested());
+        JobStatusBinaryIO.writeProperties(dout, status.getProperties());
+        dout.flush();
+    }
+
+    @Override
+    public String decode(JobStatusData status, InputStream in)
+            throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC.length];
+        din.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not a binary job status.");
+        }
+        byte version = din.readByte();
+        if (version != VERSION) {
+            throw new IOException(
+                    "Unsupported binary job status version: " + version);
+        }
+        String jobId = readString(din);
+        status.setProgress(din.readDouble());
+        status.setNote(readString(din));
+        status.setStartTime(readInstant(din));
+        status.setEndTime(readInstant(din));
+        status.setStopRequested(din.readBoolean());
+        JobStatusBinaryIO.readProperties(din, status.getProperties());
+        return jobId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass();
+    }
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+}
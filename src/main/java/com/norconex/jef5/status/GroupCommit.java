@@ -0,0 +1,151 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Lets concurrent threads share a single, expensive commit operation,
+ * typically forcing data to disk.  The first thread invoking
+ * {@link #commit()} becomes the "leader" and runs the commit action
+ * once on behalf of every thread that invoked {@link #commit()} in
+ * the meantime.  Threads arriving while a commit is in progress wait
+ * for the next one, which is run by one of them.
+ * </p>
+ * <p>
+ * A small window can be set for the leader to wait before committing,
+ * so more threads join the same commit.  This trades a bit of latency
+ * for fewer commits.
+ * </p>
+ * @author Pascal Essiembre
+ */
+public class GroupCommit {
+
+    /**
+     * The commit action shared by concurrent threads.
+     */
+    @FunctionalInterface
+    public interface ICommitAction {
+        /**
+         * Commits all changes made before {@link GroupCommit#commit()}
+         * was invoked by any of the waiting threads.
+         * @throws IOException could not commit
+         */
+        void commit() throws IOException;
+    }
+
+    private final ICommitAction action;
+    private final long windowNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchDone = lock.newCondition();
+    // Batch joined by threads invoking commit.
+    private Batch current = new Batch();
+    private boolean leading;
+
+    /**
+     * Creates a group commit without a wait window.
+     * @param action commit action
+     */
+    public GroupCommit(ICommitAction action) {
+        this(action, null);
+    }
+    /**
+     * Creates a group commit.
+     * @param action commit action
+     * @param window how long a leader waits for more threads to join
+     *        before committing. <code>null</code> or zero to not wait.
+     */
+    public GroupCommit(ICommitAction action, Duration window) {
+        super();
+        this.action = Objects.requireNonNull(action, "action");
+        this.windowNanos = window == null ? 0 : Math.max(0, window.toNanos());
+    }
+
+    /**
+     * Returns once the commit action has run after this method was
+     * invoked, whether run by this thread or another one.
+     * @throws IOException the commit action failed
+     */
+    public void commit() throws IOException {
+        Batch batch;
+        lock.lock();
+        try {
+            batch = current;
+            while (!batch.done && leading) {
+                batchDone.awaitUninterruptibly();
+            }
+            if (batch.done) {
+                if (batch.error != null) {
+                    throw new IOException(
+                            "Group commit failed.", batch.error);
+                }
+                return;
+            }
+            leading = true;
+        } finally {
+            lock.unlock();
+        }
+
+        //--- Leader ---
+        Throwable error = null;
+        try {
+            if (windowNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(windowNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            // Late comers join the next batch.
+            current = new Batch();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            action.commit();
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        } finally {
+            lock.lock();
+            try {
+                batch.error = error;
+                batch.done = true;
+                leading = false;
+                batchDone.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error != null) {
+            throw (RuntimeException) error;
+        }
+    }
+
+    private static class Batch {
+        private boolean done;
+        private Throwable error;
+    }
+}
@@ -0,0 +1,48 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encodes and decodes the persisted fields of a job status (progress,
+ * note, start and end times, whether a stop was requested, and
+ * properties).  The last activity is not part of the encoded status.
+ * @author Pascal Essiembre
+ * @see JobSuiteStatusDAO#setCodec(IJobStatusCodec)
+ */
+public interface IJobStatusCodec {
+
+    /**
+     * Encodes a job status.
+     * @param jobId job id
+     * @param status job status data
+     * @param out where to write the encoded status (not closed)
+     * @throws IOException could not encode the status
+     */
+    void encode(String jobId, JobStatusData status, OutputStream out)
+            throws IOException;
+
+    /**
+     * Decodes a job status.
+     * @param status job status data receiving the decoded fields
+     * @param in encoded status (not closed)
+     * @return the job id encoded with the status, if any
+     * @throws IOException could not decode the status
+     */
+    String decode(JobStatusData status, InputStream in) throws IOException;
+}
@@ -0,0 +1,112 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Persists job statuses of a job suite. A store is created for a given
+ * suite and status directory, either by the job suite executing the
+ * jobs (see {@link IJobSuiteStatusStoreFactory}), or by
+ * {@link JobSuiteStatus} when reading the statuses of a suite from
+ * the suite index.
+ * </p>
+ * <p>
+ * The suite index records the class of the store used to write the
+ * statuses. For the statuses to be readable from the index,
+ * implementations must have a public constructor accepting the suite
+ * id and status directory, in that order.
+ * </p>
+ * <p>
+ * Stores are invoked concurrently from multiple job threads and must
+ * be thread-safe.
+ * </p>
+ * @author Pascal Essiembre
+ * @see JobSuiteStatusDAO
+ */
+public interface IJobSuiteStatusStore {
+
+    /**
+     * Persists the supplied job status, replacing any previous status
+     * for the same job.
+     * @param status job status
+     * @throws IOException could not write the status
+     */
+    void write(JobStatus status) throws IOException;
+
+    /**
+     * Reads the status of a job. A job with no status persisted yet
+     * returns a new, empty status.
+     * @param jobId job id
+     * @return job status, or <code>null</code> if the job id is
+     *         <code>null</code>
+     * @throws IOException could not read the status
+     */
+    JobStatus read(String jobId) throws IOException;
+
+    /**
+     * Reads the statuses of many jobs at once. Implementations should
+     * override it when they can do so more efficiently than reading
+     * jobs one by one, which is what the default implementation does.
+     * @param jobIds job ids
+     * @return job statuses, by job id, in the order of the supplied ids
+     * @throws IOException could not read the statuses
+     */
+    default Map<String, JobStatus> readAll(Collection<String> jobIds)
+            throws IOException {
+        Map<String, JobStatus> statuses = new LinkedHashMap<>();
+        for (String jobId : jobIds) {
+            statuses.put(jobId, read(jobId));
+        }
+        return statuses;
+    }
+
+    /**
+     * Records the job is still active without changing its status.
+     * @param jobId job id
+     * @return the recorded last activity
+     * @throws IOException could not record the activity
+     */
+    Instant touch(String jobId) throws IOException;
+
+    /**
+     * Deletes all persisted statuses of the suite.
+     * @throws IOException could not delete the statuses
+     */
+    void delete() throws IOException;
+
+    /**
+     * Moves all persisted statuses of the suite to the supplied
+     * backup directory.
+     * @param backupDir backup directory
+     * @throws IOException could not backup the statuses
+     */
+    void backup(Path backupDir) throws IOException;
+
+    /**
+     * Releases any resources held by this store.  Called by the job
+     * suite once its execution is over. Does nothing by default.
+     * @throws IOException problem releasing resources
+     */
+    default void close() throws IOException {
+        //NOOP
+    }
+}
@@ -0,0 +1,36 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.nio.file.Path;
+
+/**
+ * Creates the status store of a job suite. Store constructors
+ * accepting a suite id and status directory can be used directly
+ * (e.g., <code>JournalJobSuiteStatusStore::new</code>).
+ * @author Pascal Essiembre
+ * @see IJobSuiteStatusStore
+ */
+@FunctionalInterface
+public interface IJobSuiteStatusStoreFactory {
+
+    /**
+     * Creates a status store.
+     * @param suiteId job suite id
+     * @param statusDir job suite status directory
+     * @return status store
+     */
+    IJobSuiteStatusStore create(String suiteId, Path statusDir);
+}
@@ -0,0 +1,276 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Keeps track of the resumed attempts of every job of a suite, along
+ * with their summary fields (progress, start time, end time, last
+ * activity and whether a stop was requested), in a single
+ * "attempts.manifest" file of the status directory.  This saves probing
+ * for and parsing every attempt file of a job each time its status
+ * is read.
+ * </p>
+ * <p>
+ * The manifest is only read again when it changed on disk. Status
+ * directories without a manifest are scanned once for attempt files
+ * and a manifest is created from them.
+ * </p>
+ * @author Pascal Essiembre
+ */
+/*default*/ final class JobAttemptManifest {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobAttemptManifest.class);
+
+    /*default*/ static final String FILE_NAME = "attempts.manifest";
+
+    private static final Pattern ATTEMPT_FILE =
+            Pattern.compile("^(.*)\\.job\\.(\\d+)$");
+    private static final int FIELD_COUNT = 7;
+
+    /**
+     * Reads an attempt file, when creating the manifest from existing
+     * attempt files.
+     */
+    @FunctionalInterface
+    /*default*/ interface AttemptFileReader {
+        void read(JobStatusData data, Path file) throws IOException;
+    }
+
+    private final Path statusDir;
+    private final AttemptFileReader attemptFileReader;
+
+    // Attempts keyed by job file name, in attempt number order.
+    private Map<String, List<JobStatusData>> attempts;
+    // Size and modified time of the manifest last loaded or written.
+    private String loadedStamp;
+
+    /*default*/ JobAttemptManifest(
+            Path statusDir, AttemptFileReader attemptFileReader) {
+        super();
+        this.statusDir = Objects.requireNonNull(statusDir, "statusDir");
+        this.attemptFileReader = attemptFileReader;
+    }
+
+    /**
+     * Gets the summaries of a job resumed attempts.
+     * @param jobName safe job file name
+     * @return attempt summaries, oldest first (never <code>null</code>)
+     * @throws IOException could not read the manifest
+     */
+    /*default*/ synchronized List<JobStatusData> getAttempts(
+            String jobName) throws IOException {
+        List<JobStatusData> jobAttempts = refresh().get(jobName);
+        if (jobAttempts == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(jobAttempts));
+    }
+
+    /**
+     * Records a new resumed attempt for a job.
+     * @param jobName safe job file name
+     * @param attempt attempt status
+     * @return the attempt number, starting at 1
+     * @throws IOException could not update the manifest
+     */
+    /*default*/ synchronized int add(String jobName, JobStatusData attempt)
+            throws IOException {
+        List<JobStatusData> jobAttempts = refresh().computeIfAbsent(
+                jobName, k -> new ArrayList<>());
+        JobStatusData summary = summarize(attempt);
+        int attemptNo = jobAttempts.size() + 1;
+        Path file = statusDir.resolve(FILE_NAME);
+        Files.createDirectories(statusDir);
+        try (BufferedWriter w = Files.newBufferedWriter(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writeLine(w, jobName, attemptNo, summary);
+        }
+        jobAttempts.add(summary);
+        loadedStamp = stamp(file);
+        return attemptNo;
+    }
+
+    private Map<String, List<JobStatusData>> refresh() throws IOException {
+        Path file = statusDir.resolve(FILE_NAME);
+        String stamp = stamp(file);
+        if (attempts != null && Objects.equals(stamp, loadedStamp)) {
+            return attempts;
+        }
+        if (stamp != null) {
+            attempts = load(file);
+        } else {
+            attempts = scan(file);
+        }
+        loadedStamp = stamp(file);
+        return attempts;
+    }
+
+    private Map<String, List<JobStatusData>> load(Path file)
+            throws IOException {
+        LOG.trace("Reading attempt manifest: {}", file);
+        Map<String, List<JobStatusData>> loaded = new HashMap<>();
+        try (BufferedReader r = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] fields = StringUtils.splitPreserveAllTokens(
+                        line, '\t');
+                // Ignore anything cut short by a crash.
+                if (fields.length != FIELD_COUNT
+                        || !StringUtils.isNumeric(fields[1])) {
+                    continue;
+                }
+                JobStatusData summary = new JobStatusData();
+                summary.setProgress(Double.parseDouble(fields[2]));
+                summary.setStartTime(toInstant(fields[3]));
+                summary.setEndTime(toInstant(fields[4]));
+                summary.setLastActivity(toInstant(fields[5]));
+                summary.setStopRequested(Boolean.parseBoolean(fields[6]));
+                List<JobStatusData> jobAttempts = loaded.computeIfAbsent(
+                        fields[0], k -> new ArrayList<>());
+                int index = Integer.parseInt(fields[1]) - 1;
+                while (jobAttempts.size() <= index) {
+                    jobAttempts.add(null);
+                }
+                jobAttempts.set(index, summary);
+            }
+        }
+        for (List<JobStatusData> jobAttempts : loaded.values()) {
+            jobAttempts.removeIf(Objects::isNull);
+        }
+        return loaded;
+    }
+
+    // Creates the manifest from attempt files left by previous versions.
+    private Map<String, List<JobStatusData>> scan(Path file)
+            throws IOException {
+        Map<String, List<JobStatusData>> scanned = new HashMap<>();
+        if (!Files.isDirectory(statusDir)) {
+            return scanned;
+        }
+        Map<String, TreeMap<Integer, Path>> attemptFiles = new HashMap<>();
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(statusDir, "*.job.*")) {
+            for (Path attemptFile : stream) {
+                Matcher m = ATTEMPT_FILE.matcher(
+                        attemptFile.getFileName().toString());
+                if (m.matches()) {
+                    attemptFiles.computeIfAbsent(m.group(1),
+                            k -> new TreeMap<>()).put(
+                                    Integer.valueOf(m.group(2)), attemptFile);
+                }
+            }
+        }
+        if (attemptFiles.isEmpty()) {
+            return scanned;
+        }
+
+        LOG.debug("Creating attempt manifest from existing attempt files "
+                + "in: {}", statusDir);
+        for (Entry<String, TreeMap<Integer, Path>> en
+                : attemptFiles.entrySet()) {
+            List<JobStatusData> jobAttempts = new ArrayList<>();
+            // Attempts are numbered from 1, without gaps.
+            int attemptNo = 1;
+            Path attemptFile;
+            while ((attemptFile = en.getValue().get(attemptNo++)) != null) {
+                JobStatusData data = new JobStatusData();
+                attemptFileReader.read(data, attemptFile);
+                jobAttempts.add(summarize(data));
+            }
+            scanned.put(en.getKey(), jobAttempts);
+        }
+
+        Path tmpFile = file.resolveSibling(FILE_NAME + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmpFile)) {
+            for (Entry<String, List<JobStatusData>> en : scanned.entrySet()) {
+                int attemptNo = 1;
+                for (JobStatusData summary : en.getValue()) {
+                    writeLine(w, en.getKey(), attemptNo++, summary);
+                }
+            }
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return scanned;
+    }
+
+    private static void writeLine(BufferedWriter w, String jobName,
+            int attemptNo, JobStatusData summary) throws IOException {
+        w.write(StringUtils.join(new Object[] {
+                jobName,
+                attemptNo,
+                summary.getProgress(),
+                toString(summary.getStartTime()),
+                toString(summary.getEndTime()),
+                toString(summary.getLastActivity()),
+                summary.isStopRequested()
+        }, '\t'));
+        w.newLine();
+    }
+
+    private static JobStatusData summarize(JobStatusData data) {
+        JobStatusData summary = new JobStatusData();
+        summary.setProgress(data.getProgress());
+        summary.setStartTime(data.getStartTime());
+        summary.setEndTime(data.getEndTime());
+        summary.setLastActivity(data.getLastActivity());
+        summary.setStopRequested(data.isStopRequested());
+        return summary;
+    }
+
+    private static String stamp(Path file) throws IOException {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(
+                    file, BasicFileAttributes.class);
+            return attrs.size() + ":" + attrs.lastModifiedTime();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+    private static String toString(Instant instant) {
+        return instant == null ? StringUtils.EMPTY : instant.toString();
+    }
+    private static Instant toInstant(String value) {
+        return StringUtils.isEmpty(value) ? null : Instant.parse(value);
+    }
+}
@@ -0,0 +1,503 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Catalog of past executions of a job suite, with the start and end
+ * times, duration, state and attempt count of every job of every run.
+ * Runs are identified by the start time of the suite root job.
+ * </p>
+ * <p>
+ * The catalog is a single text file, only ever appended to, with one
+ * tab-separated line per job and run. When a job of a run is recorded
+ * more than once, the last record wins. It is read lazily, in chunks,
+ * and kept indexed in memory. Only lines appended since it was last
+ * read are read again, so queries do not depend on the size of the
+ * suite history on disk.
+ * </p>
+ * <p>
+ * The start times of recorded runs are also kept in a small run index
+ * file next to the catalog (same name with a <code>.runs</code>
+ * extension), so recording a run or checking whether it was recorded
+ * never requires reading the catalog itself.
+ * </p>
+ * <p>
+ * Call {@link #compact()} to drop superseded records from the file,
+ * or {@link #prune(Duration, int)} to also drop expired runs.
+ * </p>
+ * @author Pascal Essiembre
+ */
+public final class JobHistoryCatalog {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobHistoryCatalog.class);
+
+    private static final int FIELD_COUNT = 7;
+    private static final String NONE = "-";
+    private static final String RUN_INDEX_EXTENSION = ".runs";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final Path runIndexFile;
+    private final String suiteId;
+
+    // Records by job id, then by run start time.
+    private final Map<String, NavigableMap<Instant, JobHistoryRecord>>
+            records = new HashMap<>();
+    // Number of bytes of the catalog read so far.
+    private long loadedSize;
+    // Start times of recorded runs.
+    private final NavigableSet<Instant> runIndex = new TreeSet<>();
+    // Number of bytes of the run index read so far.
+    private long runIndexLoadedSize;
+
+    /**
+     * Creates a catalog.
+     * @param file catalog file
+     * @param suiteId id of the suite root job
+     */
+    public JobHistoryCatalog(Path file, String suiteId) {
+        super();
+        this.file = Objects.requireNonNull(file, "file");
+        this.runIndexFile = file.resolveSibling(
+                file.getFileName() + RUN_INDEX_EXTENSION);
+        this.suiteId = Objects.requireNonNull(suiteId, "suiteId");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+    public Path getRunIndexFile() {
+        return runIndexFile;
+    }
+    public String getSuiteId() {
+        return suiteId;
+    }
+
+    /**
+     * Records the current statuses of all jobs of a suite run.
+     * Runs never started are not recorded.
+     * @param suiteStatus suite status
+     * @throws IOException could not update the catalog
+     */
+    public synchronized void record(JobSuiteStatus suiteStatus)
+            throws IOException {
+        Instant runStart = suiteStatus.getRootStatus().getSessionStartTime();
+        if (runStart == null) {
+            return;
+        }
+        List<JobHistoryRecord> newRecords = new ArrayList<>();
+        for (JobStatus status : suiteStatus.getAllStatuses()) {
+            newRecords.add(new JobHistoryRecord(runStart, status.getJobId(),
+                    status.getSessionStartTime(), status.getEndTime(),
+                    status.getSessionEffectiveDuration(), status.getState(),
+                    status.getResumedAttemptCount() + 1));
+        }
+        append(newRecords);
+        // Catalog first: a run in the index is always in the catalog.
+        if (!isRecorded(runStart)) {
+            appendRun(runStart);
+        }
+    }
+
+    /**
+     * Whether a suite run was recorded.
+     * @param runStartTime run start time
+     * @return <code>true</code> if the run was recorded
+     * @throws IOException could not read the catalog
+     */
+    public synchronized boolean isRecorded(Instant runStartTime)
+            throws IOException {
+        refreshRunIndex();
+        // Times are recorded with millisecond precision.
+        return runIndex.contains(
+                runStartTime.truncatedTo(ChronoUnit.MILLIS));
+    }
+
+    /**
+     * Gets the most recent executions of a job, most recent first.
+     * @param jobId job id
+     * @param maxRecords maximum number of records
+     * @return job records (never <code>null</code>)
+     * @throws IOException could not read the catalog
+     */
+    public synchronized List<JobHistoryRecord> getJobHistory(
+            String jobId, int maxRecords) throws IOException {
+        refresh();
+        NavigableMap<Instant, JobHistoryRecord> jobRecords =
+                records.get(jobId);
+        List<JobHistoryRecord> list = new ArrayList<>();
+        if (jobRecords == null) {
+            return list;
+        }
+        for (JobHistoryRecord rec : jobRecords.descendingMap().values()) {
+            if (list.size() >= maxRecords) {
+                break;
+            }
+            list.add(rec);
+        }
+        return list;
+    }
+
+    /**
+     * Gets the most recent suite runs (i.e., root job records),
+     * most recent first.
+     * @param maxRuns maximum number of runs
+     * @return run records (never <code>null</code>)
+     * @throws IOException could not read the catalog
+     */
+    public List<JobHistoryRecord> getRuns(int maxRuns) throws IOException {
+        return getJobHistory(suiteId, maxRuns);
+    }
+
+    /**
+     * Gets suite runs (i.e., root job records) started within a time
+     * range and matching any of the given states, most recent first.
+     * @param from start of the time range (inclusive), or
+     *        <code>null</code> for no lower bound
+     * @param to end of the time range (exclusive), or <code>null</code>
+     *        for no upper bound
+     * @param states run states to match, or none to match all runs
+     * @return run records (never <code>null</code>)
+     * @throws IOException could not read the catalog
+     */
+    public synchronized List<JobHistoryRecord> getRuns(
+            Instant from, Instant to, JobState... states) throws IOException {
+        refresh();
+        NavigableMap<Instant, JobHistoryRecord> runs = records.get(suiteId);
+        List<JobHistoryRecord> list = new ArrayList<>();
+        if (runs == null) {
+            return list;
+        }
+        if (from != null) {
+            runs = runs.tailMap(from, true);
+        }
+        if (to != null) {
+            runs = runs.headMap(to, false);
+        }
+        List<JobState> stateList = Arrays.asList(states);
+        for (JobHistoryRecord rec : runs.descendingMap().values()) {
+            if (stateList.isEmpty() || stateList.contains(rec.getState())) {
+                list.add(rec);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Rewrites the catalog without superseded records.
+     * @throws IOException could not compact the catalog
+     */
+    public synchronized void compact() throws IOException {
+        refresh();
+        if (!Files.exists(file)) {
+            return;
+        }
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(
+                tmpFile, StandardCharsets.UTF_8)) {
+            for (NavigableMap<Instant, JobHistoryRecord> jobRecords
+                    : records.values()) {
+                for (JobHistoryRecord rec : jobRecords.values()) {
+                    w.write(toLine(rec));
+                }
+            }
+        }
+        replace(tmpFile, file);
+        loadedSize = Files.size(file);
+        writeRunIndex();
+    }
+
+    /**
+     * Drops from the catalog the runs exceeding the given retention,
+     * then compacts it. Runs are expired the same way as suite status
+     * backups: the most recent runs are kept, up to the maximum count,
+     * as long as they are not older than the maximum age.
+     * The catalog is only read if some runs expired.
+     * @param maxAge maximum age of runs, or <code>null</code>
+     * @param maxCount maximum number of runs, or zero
+     * @throws IOException could not prune the catalog
+     */
+    public synchronized void prune(Duration maxAge, int maxCount)
+            throws IOException {
+        if (maxAge == null && maxCount <= 0) {
+            return;
+        }
+        refreshRunIndex();
+        // Runs started before this one expired.
+        Instant oldestKept = maxAge == null
+                ? Instant.MIN : Instant.now().minus(maxAge);
+        if (maxCount > 0 && runIndex.size() > maxCount) {
+            Instant run = runIndex.descendingSet().stream()
+                    .skip(maxCount - 1L).findFirst().orElse(Instant.MIN);
+            if (run.isAfter(oldestKept)) {
+                oldestKept = run;
+            }
+        }
+        if (runIndex.isEmpty() || !runIndex.first().isBefore(oldestKept)) {
+            return;
+        }
+        refresh();
+        for (NavigableMap<Instant, JobHistoryRecord> jobRecords
+                : records.values()) {
+            jobRecords.headMap(oldestKept, false).clear();
+        }
+        records.values().removeIf(Map::isEmpty);
+        LOG.debug("Pruning suite history runs started before {}: {}",
+                oldestKept, file);
+        compact();
+    }
+
+    private void append(List<JobHistoryRecord> newRecords)
+            throws IOException {
+        StringBuilder b = new StringBuilder();
+        for (JobHistoryRecord rec : newRecords) {
+            b.append(toLine(rec));
+        }
+        // Records just written are read back on next refresh.
+        appendText(file, b.toString());
+    }
+
+    private void appendRun(Instant runStart) throws IOException {
+        appendText(runIndexFile, toField(runStart) + "\n");
+        // Read back on next refresh.
+    }
+
+    private static void appendText(Path target, String text)
+            throws IOException {
+        Files.createDirectories(target.getParent());
+        try (FileChannel channel = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.wrap(
+                    text.getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+    }
+
+    // Reads lines appended since last read.
+    private void refresh() throws IOException {
+        long size = Files.exists(file) ? Files.size(file) : 0;
+        if (size < loadedSize) {
+            // Rewritten (e.g., compacted by another instance).
+            records.clear();
+            loadedSize = 0;
+        }
+        if (size == loadedSize) {
+            return;
+        }
+        loadedSize = readLines(file, loadedSize, line -> {
+            JobHistoryRecord rec = parseLine(line);
+            if (rec != null) {
+                records.computeIfAbsent(rec.getJobId(),
+                        k -> new TreeMap<>()).put(rec.getRunStartTime(), rec);
+            }
+        });
+    }
+
+    // Reads run index lines appended since last read.
+    private void refreshRunIndex() throws IOException {
+        if (!Files.exists(runIndexFile)) {
+            runIndex.clear();
+            runIndexLoadedSize = 0;
+            if (Files.exists(file)) {
+                // Catalog without index (e.g., created by an older version)
+                refresh();
+                writeRunIndex();
+            }
+            return;
+        }
+        long size = Files.size(runIndexFile);
+        if (size < runIndexLoadedSize) {
+            // Rewritten (e.g., compacted by another instance).
+            runIndex.clear();
+            runIndexLoadedSize = 0;
+        }
+        if (size == runIndexLoadedSize) {
+            return;
+        }
+        runIndexLoadedSize = readLines(
+                runIndexFile, runIndexLoadedSize, line -> {
+            try {
+                runIndex.add(Instant.ofEpochMilli(Long.parseLong(line)));
+            } catch (NumberFormatException e) {
+                LOG.debug("Ignoring invalid run index line in {}: {}",
+                        runIndexFile, line);
+            }
+        });
+    }
+
+    // Rewrites the run index from the loaded catalog.
+    private void writeRunIndex() throws IOException {
+        runIndex.clear();
+        for (NavigableMap<Instant, JobHistoryRecord> jobRecords
+                : records.values()) {
+            runIndex.addAll(jobRecords.keySet());
+        }
+        Path tmpFile = runIndexFile.resolveSibling(
+                runIndexFile.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(
+                tmpFile, StandardCharsets.UTF_8)) {
+            for (Instant run : runIndex) {
+                w.write(toField(run) + "\n");
+            }
+        }
+        replace(tmpFile, runIndexFile);
+        runIndexLoadedSize = Files.size(runIndexFile);
+    }
+
+    private static void replace(Path source, Path target)
+            throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Reads complete lines from a position, in chunks so memory does not
+    // depend on file size, and returns the position after the last one.
+    // An incomplete last line is left for next time, in case it is
+    // being appended.
+    private static long readLines(Path source, long position,
+            Consumer<String> lineConsumer) throws IOException {
+        long end = position;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try (FileChannel channel =
+                FileChannel.open(source, StandardOpenOption.READ)) {
+            channel.position(position);
+            ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            while (channel.read(buf) > 0) {
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    byte b = buf.get();
+                    if (b == '\n') {
+                        end += line.size() + 1L;
+                        if (line.size() > 0) {
+                            lineConsumer.accept(new String(
+                                    line.toByteArray(),
+                                    StandardCharsets.UTF_8));
+                        }
+                        line.reset();
+                    } else {
+                        line.write(b);
+                    }
+                }
+                buf.clear();
+            }
+        }
+        return end;
+    }
+
+    private static String toLine(JobHistoryRecord rec) {
+        return StringUtils.join(new Object[] {
+                rec.getRunStartTime().toEpochMilli(),
+                escape(rec.getJobId()),
+                toField(rec.getStartTime()),
+                toField(rec.getEndTime()),
+                rec.getDuration().toMillis(),
+                rec.getState(),
+                rec.getAttemptCount()
+        }, '\t') + "\n";
+    }
+    private JobHistoryRecord parseLine(String line) {
+        String[] fields = StringUtils.splitPreserveAllTokens(line, '\t');
+        if (fields.length != FIELD_COUNT) {
+            LOG.debug("Ignoring invalid history line in {}: {}", file, line);
+            return null;
+        }
+        try {
+            return new JobHistoryRecord(
+                    Instant.ofEpochMilli(Long.parseLong(fields[0])),
+                    unescape(fields[1]),
+                    toInstant(fields[2]),
+                    toInstant(fields[3]),
+                    Duration.ofMillis(Long.parseLong(fields[4])),
+                    JobState.valueOf(fields[5]),
+                    Integer.parseInt(fields[6]));
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Ignoring invalid history line in {}: {}", file, line);
+            return null;
+        }
+    }
+
+    private static String toField(Instant instant) {
+        return instant == null ? NONE : Long.toString(instant.toEpochMilli());
+    }
+    private static Instant toInstant(String field) {
+        return NONE.equals(field)
+                ? null : Instant.ofEpochMilli(Long.parseLong(field));
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t")
+                .replace("\n", "\\n").replace("\r", "\\r");
+    }
+    private static String unescape(String value) {
+        if (value.indexOf('\\') == -1) {
+            return value;
+        }
+        StringBuilder b = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '\\' && i + 1 < value.length()) {
+                i++;
+                ch = value.charAt(i);
+                if (ch == 't') {
+                    ch = '\t';
+                } else if (ch == 'n') {
+                    ch = '\n';
+                } else if (ch == 'r') {
+                    ch = '\r';
+                }
+            }
+            b.append(ch);
+        }
+        return b.toString();
+    }
+}
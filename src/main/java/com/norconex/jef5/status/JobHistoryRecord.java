@@ -0,0 +1,144 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * Summary of a job execution in a given suite run, as kept by
+ * {@link JobHistoryCatalog}.
+ * @author Pascal Essiembre
+ */
+public final class JobHistoryRecord implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Instant runStartTime;
+    private final String jobId;
+    private final Instant startTime;
+    private final Instant endTime;
+    private final Duration duration;
+    private final JobState state;
+    private final int attemptCount;
+
+    public JobHistoryRecord(Instant runStartTime, String jobId,
+            Instant startTime, Instant endTime, Duration duration,
+            JobState state, int attemptCount) {
+        super();
+        this.runStartTime = runStartTime;
+        this.jobId = jobId;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.duration = duration;
+        this.state = state;
+        this.attemptCount = attemptCount;
+    }
+
+    /**
+     * Gets the start time of the suite run, which identifies the run.
+     * @return run start time
+     */
+    public Instant getRunStartTime() {
+        return runStartTime;
+    }
+    public String getJobId() {
+        return jobId;
+    }
+    /**
+     * Gets the job start time, or <code>null</code> if never started.
+     * @return start time
+     */
+    public Instant getStartTime() {
+        return startTime;
+    }
+    /**
+     * Gets the job end time, or <code>null</code> if it did not end.
+     * @return end time
+     */
+    public Instant getEndTime() {
+        return endTime;
+    }
+    /**
+     * Gets the time the job has been running, cumulated over all its
+     * attempts.
+     * @return duration
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+    /**
+     * Gets the job state when recorded.
+     * @return job state
+     */
+    public JobState getState() {
+        return state;
+    }
+    /**
+     * Gets the number of times the job was executed in the run
+     * (more than one if resumed).
+     * @return attempt count
+     */
+    public int getAttemptCount() {
+        return attemptCount;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof JobHistoryRecord)) {
+            return false;
+        }
+        JobHistoryRecord castOther = (JobHistoryRecord) other;
+        return new EqualsBuilder()
+                .append(runStartTime, castOther.runStartTime)
+                .append(jobId, castOther.jobId)
+                .append(startTime, castOther.startTime)
+                .append(endTime, castOther.endTime)
+                .append(duration, castOther.duration)
+                .append(state, castOther.state)
+                .append(attemptCount, castOther.attemptCount)
+                .isEquals();
+    }
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(runStartTime)
+                .append(jobId)
+                .append(startTime)
+                .append(endTime)
+                .append(duration)
+                .append(state)
+                .append(attemptCount)
+                .toHashCode();
+    }
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("runStartTime", runStartTime)
+                .append("jobId", jobId)
+                .append("startTime", startTime)
+                .append("endTime", endTime)
+                .append("duration", duration)
+                .append("state", state)
+                .append("attemptCount", attemptCount)
+                .toString();
+    }
+}
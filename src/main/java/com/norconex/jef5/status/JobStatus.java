@@ -16,10 +16,13 @@ package com.norconex.jef5.status;
 
 import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -45,6 +48,15 @@ public class JobStatus extends JobStatusData {
     @HashCodeExclude
     @EqualsExclude
     private final Set<JobStatusData> resumedAttempts = new TreeSet<>();
+    // Resumed attempts not loaded yet, if any.
+    @ToStringExclude
+    @HashCodeExclude
+    @EqualsExclude
+    private transient Supplier<Set<JobStatusData>> resumedAttemptsLoader;
+    @ToStringExclude
+    @HashCodeExclude
+    @EqualsExclude
+    private transient int unloadedAttemptCount;
 
     public JobStatus(String jobId, Set<JobStatusData> resumedAttempts) {
         this.jobId = jobId;
@@ -52,21 +64,58 @@ public class JobStatus extends JobStatusData {
             this.resumedAttempts.addAll(resumedAttempts);
         }
     }
+    /**
+     * Creates a job status whose resumed attempts are only loaded the
+     * first time they are needed.
+     * @param jobId job id
+     * @param resumedAttemptCount number of resumed attempts
+     * @param resumedAttemptsLoader loads resumed attempts
+     */
+    public JobStatus(String jobId, int resumedAttemptCount,
+            Supplier<Set<JobStatusData>> resumedAttemptsLoader) {
+        this.jobId = jobId;
+        if (resumedAttemptCount > 0 && resumedAttemptsLoader != null) {
+            this.unloadedAttemptCount = resumedAttemptCount;
+            this.resumedAttemptsLoader = resumedAttemptsLoader;
+        }
+    }
 
     public String getJobId() {
         return jobId;
     }
     public Set<JobStatusData> getResumedAttempts() {
-        return resumedAttempts;
+        synchronized (resumedAttempts) {
+            if (resumedAttemptsLoader != null) {
+                Set<JobStatusData> attempts = resumedAttemptsLoader.get();
+                if (attempts != null) {
+                    resumedAttempts.addAll(attempts);
+                }
+                resumedAttemptsLoader = null;
+                unloadedAttemptCount = 0;
+            }
+            return resumedAttempts;
+        }
+    }
+
+    /**
+     * Gets the number of resumed attempts, without loading them.
+     * @return number of resumed attempts
+     */
+    public int getResumedAttemptCount() {
+        synchronized (resumedAttempts) {
+            return unloadedAttemptCount + resumedAttempts.size();
+        }
     }
 
     /**
      * Whether this status resumed from a previously
-     * failed or stopped job.
+     * failed or stopped job.  Does not load resumed attempts.
      * @return <code>true</code> if the current job was resumed
      */
     public boolean isResumed() {
-        return !resumedAttempts.isEmpty();
+        synchronized (resumedAttempts) {
+            return unloadedAttemptCount > 0 || !resumedAttempts.isEmpty();
+        }
     }
 
     /**
@@ -75,10 +124,10 @@ public class JobStatus extends JobStatusData {
      * @return status start time or <code>null</code> if never started
      */
     public Instant getSessionStartTime() {
-        if (resumedAttempts.isEmpty()) {
+        if (!isResumed()) {
             return getStartTime();
         }
-        return resumedAttempts.iterator().next().getStartTime();
+        return getResumedAttempts().iterator().next().getStartTime();
     }
     //TODO have sessionEndTime? will always be same as endTime.
 
@@ -99,15 +148,21 @@ public class JobStatus extends JobStatusData {
     // the cumulated time jobs have run as opposed to calendar-duration.
     public Duration getSessionEffectiveDuration() {
         Duration duration = getDuration();
-        if (resumedAttempts.isEmpty()) {
+        if (!isResumed()) {
             return duration;
         }
-        for (JobStatusData js : resumedAttempts) {
+        for (JobStatusData js : getResumedAttempts()) {
             duration = duration.plus(js.getDuration());
         }
         return duration;
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // Loader is not serializable
+        getResumedAttempts();
+        out.defaultWriteObject();
+    }
+
     @Override
     public boolean equals(final Object other) {
         return EqualsBuilder.reflectionEquals(this, other);
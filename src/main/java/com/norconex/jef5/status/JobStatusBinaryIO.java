@@ -0,0 +1,179 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+import com.norconex.commons.lang.map.Properties;
+
+/**
+ * <p>
+ * Binary encoding of job status values shared by the binary status
+ * formats (codec, deltas, journal), so they all encode strings,
+ * instants and properties the same way.
+ * </p>
+ * <p>
+ * Records appended to a file are framed with their length and
+ * a checksum of their content (see {@link #frame(byte[])}), so that
+ * a record cut short by a crash can be detected and ignored.
+ * </p>
+ * @author Pascal Essiembre
+ */
+public final class JobStatusBinaryIO {
+
+    /** Size in bytes of a record frame header (length and checksum). */
+    public static final int RECORD_HEADER_SIZE = 8;
+
+    private JobStatusBinaryIO() {
+        super();
+    }
+
+    /**
+     * Writes a UTF-8 string preceded by its length in bytes, or -1 if
+     * <code>null</code>.
+     * @param out data output
+     * @param value string value, possibly <code>null</code>
+     * @throws IOException could not write value
+     */
+    public static void writeString(DataOutput out, String value)
+            throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    /**
+     * Reads a string written with {@link #writeString(DataOutput, String)}.
+     * @param in data input
+     * @return string value, possibly <code>null</code>
+     * @throws IOException could not read value
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes an instant with nanosecond precision.
+     * @param out data output
+     * @param value instant, possibly <code>null</code>
+     * @throws IOException could not write value
+     */
+    public static void writeInstant(DataOutput out, Instant value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.getEpochSecond());
+            out.writeInt(value.getNano());
+        }
+    }
+    /**
+     * Reads an instant written with
+     * {@link #writeInstant(DataOutput, Instant)}.
+     * @param in data input
+     * @return instant, possibly <code>null</code>
+     * @throws IOException could not read value
+     */
+    public static Instant readInstant(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return Instant.ofEpochSecond(in.readLong(), in.readInt());
+    }
+
+    /**
+     * Writes all keys and values of the supplied properties.
+     * @param out data output
+     * @param props properties
+     * @throws IOException could not write properties
+     */
+    public static void writeProperties(DataOutput out, Properties props)
+            throws IOException {
+        out.writeInt(props.size());
+        for (Entry<String, List<String>> en : props.entrySet()) {
+            writeString(out, en.getKey());
+            List<String> values = en.getValue();
+            out.writeInt(values.size());
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+    /**
+     * Reads properties written with
+     * {@link #writeProperties(DataOutput, Properties)} into the supplied
+     * properties, replacing values of existing keys.
+     * @param in data input
+     * @param props properties receiving those read
+     * @throws IOException could not read properties
+     */
+    public static void readProperties(DataInput in, Properties props)
+            throws IOException {
+        int keyCount = in.readInt();
+        for (int i = 0; i < keyCount; i++) {
+            String key = readString(in);
+            int valueCount = in.readInt();
+            List<String> values = new ArrayList<>(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                values.add(readString(in));
+            }
+            props.put(key, values);
+        }
+    }
+
+    /**
+     * Frames a record with a header made of its length and checksum.
+     * @param payload record content
+     * @return header followed by record content
+     */
+    public static byte[] frame(byte[] payload) {
+        ByteBuffer buf = ByteBuffer.allocate(
+                RECORD_HEADER_SIZE + payload.length);
+        buf.putInt(payload.length);
+        buf.putInt(checksum(payload, 0, payload.length));
+        buf.put(payload);
+        return buf.array();
+    }
+    /**
+     * Computes the checksum of a record content, to compare with the one
+     * from its frame header.
+     * @param bytes bytes holding the record content
+     * @param offset record content offset
+     * @param length record content length
+     * @return checksum
+     */
+    public static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
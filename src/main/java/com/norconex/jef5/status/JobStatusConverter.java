@@ -0,0 +1,150 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts job status files from one format to another (e.g., from
+ * text properties to binary and back).
+ * @author Pascal Essiembre
+ * @see IJobStatusCodec
+ */
+public final class JobStatusConverter {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobStatusConverter.class);
+
+    private static final Pattern STATUS_FILE =
+            Pattern.compile("^[^.].*\\.job(\\.\\d+)?$");
+
+    private JobStatusConverter() {
+        super();
+    }
+
+    /**
+     * Converts all job status files found in a status directory, in
+     * whichever format they are, to the format of the given codec.
+     * Sharded status files are converted as well.
+     * Files already in the target format are left untouched. Status
+     * files modification times (used as job last activity) are kept.
+     * The job suite owning the statuses should not be running.
+     * @param statusDir status directory
+     * @param targetCodec codec of the target format
+     * @return number of files converted
+     * @throws IOException could not convert status files
+     */
+    public static int convert(Path statusDir, IJobStatusCodec targetCodec)
+            throws IOException {
+        Objects.requireNonNull(statusDir, "statusDir");
+        Objects.requireNonNull(targetCodec, "targetCodec");
+        if (!Files.isDirectory(statusDir)) {
+            return 0;
+        }
+        int count = convertDir(statusDir, targetCodec);
+        // Sharded status files
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(statusDir, Files::isDirectory)) {
+            for (Path dir : stream) {
+                if (JobSuiteStatusDAO.SHARD_DIR.matcher(
+                        dir.getFileName().toString()).matches()) {
+                    count += convertDir(dir, targetCodec);
+                }
+            }
+        }
+        LOG.info("Converted {} status files to {} in: {}",
+                count, targetCodec, statusDir);
+        return count;
+    }
+
+    private static int convertDir(Path dir, IJobStatusCodec targetCodec)
+            throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(dir, "*.job*")) {
+            for (Path file : stream) {
+                if (STATUS_FILE.matcher(
+                        file.getFileName().toString()).matches()
+                        && convertFile(file, targetCodec)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Converts an encoded job status, in whichever format it is, to
+     * the format of the given codec.
+     * @param in encoded status (not closed)
+     * @param out where to write the converted status (not closed)
+     * @param targetCodec codec of the target format
+     * @throws IOException could not convert the status
+     */
+    public static void convert(InputStream in, OutputStream out,
+            IJobStatusCodec targetCodec) throws IOException {
+        InputStream is = in.markSupported() ? in : new BufferedInputStream(in);
+        JobStatusData status = new JobStatusData();
+        String jobId = JobSuiteStatusDAO.detectCodec(is).decode(status, is);
+        targetCodec.encode(jobId, status, out);
+    }
+
+    private static boolean convertFile(
+            Path file, IJobStatusCodec targetCodec) throws IOException {
+        if (Files.size(file) == 0) {
+            return false;
+        }
+        try (InputStream in = new BufferedInputStream(
+                Files.newInputStream(file))) {
+            if (JobSuiteStatusDAO.detectCodec(in).getClass()
+                    == targetCodec.getClass()) {
+                return false;
+            }
+        }
+        FileTime lastModified = Files.getLastModifiedTime(file);
+        Path tmpFile = file.resolveSibling("." + file.getFileName() + ".tmp");
+        try {
+            try (InputStream in = Files.newInputStream(file);
+                    OutputStream out = Files.newOutputStream(tmpFile)) {
+                convert(in, out, targetCodec);
+            }
+            Files.setLastModifiedTime(tmpFile, lastModified);
+            try {
+                Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+        LOG.debug("Converted status file: {}", file);
+        return true;
+    }
+}
@@ -19,7 +19,6 @@ import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
 import java.io.Serializable;
 import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -40,10 +39,6 @@ public class JobStatusData
 
     private static final long serialVersionUID = 1L;
 
-    //TODO have this timeout here?  make it global and configurable? JobContext class?
-    /** Activity timeout. */
-    private static final long ACTIVITY_TIMEOUT = 10 * 1000;
-
     private double progress;
     private String note;
     private final Properties properties = new Properties();
@@ -52,6 +47,14 @@ public class JobStatusData
     @EqualsExclude
     private Instant lastActivity;
     private boolean stopRequested;
+    @ToStringExclude
+    @HashCodeExclude
+    @EqualsExclude
+    private JobStatusLease lease;
+    @ToStringExclude
+    @HashCodeExclude
+    @EqualsExclude
+    private JobState recordedState;
 
     private Instant startTime;
     //TODO is endTime required/useful, since lastActivity does it?
@@ -92,17 +95,41 @@ public class JobStatusData
      * @return execution state
      */
     public JobState getState() {
+        // Lease is checked once so all conditions agree.
+        boolean running = isRunning();
 
         // The order is important to establish state
-        if (isAborted())   { return JobState.ABORTED;   }
-        if (isStopped())   { return JobState.STOPPED;   }
-        if (isStopping())   { return JobState.STOPPING;   }
+        if (isStarted() && !running && getEndTime() == null
+                && !isCompleted()) {
+            return JobState.ABORTED;
+        }
+        if (stopRequested) {
+            return running ? JobState.STOPPING : JobState.STOPPED;
+        }
         if (isCompleted()) { return JobState.COMPLETED; }
         if (isPrematurlyEnded())  { return JobState.UNCOMPLETED;  }
-        if (isRunning())   { return JobState.RUNNING;   }
+        if (running)   { return JobState.RUNNING;   }
         return JobState.UNKNOWN;
     }
 
+    /**
+     * Gets the job execution state as it was when this status was
+     * recorded, if known.  Unlike {@link #getState()}, it is not
+     * re-evaluated against the current time.
+     * @return recorded execution state or <code>null</code> if unknown
+     */
+    public JobState getRecordedState() {
+        return recordedState;
+    }
+    /**
+     * Sets the job execution state as it was when this status was
+     * recorded.
+     * @param recordedState recorded execution state
+     */
+    public void setRecordedState(JobState recordedState) {
+        this.recordedState = recordedState;
+    }
+
     public boolean isStopped() {
         return stopRequested && !isRunning();
     }
@@ -167,12 +194,25 @@ public class JobStatusData
      */
 
     public boolean isRunning() {
-        Instant date = lastActivity;
-        if (date == null) {
-            return false;
-        }
-        return ChronoUnit.MILLIS.between(
-                date, Instant.now()) < ACTIVITY_TIMEOUT;
+        // An ended job is no longer running, whatever its lease.
+        return endTime == null && getLease().isHeld(lastActivity);
+    }
+
+    /**
+     * Gets the liveness lease used to establish whether the job is
+     * running from its last activity.
+     * @return lease (never <code>null</code>)
+     */
+    public JobStatusLease getLease() {
+        return ObjectUtils.defaultIfNull(lease, JobStatusLease.DEFAULT);
+    }
+    /**
+     * Sets the liveness lease used to establish whether the job is
+     * running from its last activity.
+     * @param lease lease, or <code>null</code> for the default one
+     */
+    public void setLease(JobStatusLease lease) {
+        this.lease = lease;
     }
 
     /**
@@ -242,6 +282,23 @@ public class JobStatusData
         this.lastActivity = lastActivity;
     }
 
+    /**
+     * Copies this status data into the supplied instance.
+     * @param target status data receiving a copy of this one
+     */
+    /*default*/ void copyTo(JobStatusData target) {
+        target.progress = progress;
+        target.note = note;
+        target.lastActivity = lastActivity;
+        target.stopRequested = stopRequested;
+        target.lease = lease;
+        target.recordedState = recordedState;
+        target.startTime = startTime;
+        target.endTime = endTime;
+        target.properties.clear();
+        target.properties.putAll(properties);
+    }
+
     @Override
     public int compareTo(JobStatusData o) {
         if (startTime == null && o.startTime == null) {
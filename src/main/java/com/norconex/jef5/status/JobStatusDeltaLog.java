@@ -0,0 +1,215 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import static com.norconex.jef5.status.JobStatusBinaryIO.RECORD_HEADER_SIZE;
+import static com.norconex.jef5.status.JobStatusBinaryIO.readInstant;
+import static com.norconex.jef5.status.JobStatusBinaryIO.readString;
+import static com.norconex.jef5.status.JobStatusBinaryIO.writeInstant;
+import static com.norconex.jef5.status.JobStatusBinaryIO.writeString;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.commons.lang.map.Properties;
+
+/**
+ * <p>
+ * Appends job status changes to a job ".delta" file, next to the job
+ * status file.  Each delta record holds the job status fields and only
+ * the properties that changed (or were removed) since the previous
+ * record.  Applying all records in order on top of the status file
+ * gives the latest status.
+ * </p>
+ * <p>
+ * Records are framed with their length and checksum, so a record cut
+ * short by a crash is ignored.
+ * </p>
+ * @author Pascal Essiembre
+ */
+/*default*/ final class JobStatusDeltaLog {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobStatusDeltaLog.class);
+
+    /*default*/ static final String EXTENSION = ".delta";
+    private static final String ASIDE_EXTENSION = ".old";
+
+    private JobStatusDeltaLog() {
+        super();
+    }
+
+    /*default*/ static Path resolveDeltaFile(Path jobFile) {
+        return jobFile.resolveSibling(jobFile.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Moves a delta file out of the way before rewriting the complete
+     * status it applies to.  Its records are then never applied to
+     * the rewritten status, even if the rewrite is interrupted before
+     * the moved file is deleted.
+     * @param deltaFile delta file
+     * @return moved file, or <code>null</code> if there was no delta file
+     * @throws IOException could not move the delta file
+     */
+    /*default*/ static Path setAside(Path deltaFile) throws IOException {
+        Path asideFile = deltaFile.resolveSibling(
+                deltaFile.getFileName() + ASIDE_EXTENSION);
+        try {
+            return Files.move(deltaFile, asideFile,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Appends a delta record.
+     * @param deltaFile delta file
+     * @param status job status
+     * @param changed properties changed since the last record
+     * @param removed properties removed since the last record
+     * @param sync whether to force the record to disk
+     * @throws IOException could not append the record
+     */
+    /*default*/ static void append(Path deltaFile, JobStatusData status,
+            Map<String, List<String>> changed, Collection<String> removed,
+            boolean sync) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(JobStatusBinaryIO.frame(
+                encode(status, changed, removed)));
+        try (FileChannel channel = FileChannel.open(deltaFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Applies all records of a delta file on the supplied status.
+     * @param deltaFile delta file
+     * @param status job status
+     * @return number of records applied
+     * @throws IOException could not read the delta file
+     */
+    /*default*/ static int apply(Path deltaFile, JobStatusData status)
+            throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(deltaFile);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int count = 0;
+        while (buf.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buf.getInt();
+            int checksum = buf.getInt();
+            if (length < 0 || length > buf.remaining()) {
+                break;
+            }
+            if (JobStatusBinaryIO.checksum(
+                    bytes, buf.position(), length) != checksum) {
+                LOG.warn("Corrupted status delta record ignored in {} "
+                        + "at position {}.", deltaFile,
+                        buf.position() - RECORD_HEADER_SIZE);
+                break;
+            }
+            decode(status, bytes, buf.position(), length);
+            buf.position(buf.position() + length);
+            count++;
+        }
+        return count;
+    }
+
+    private static byte[] encode(JobStatusData status,
+            Map<String, List<String>> changed, Collection<String> removed)
+                    throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeDouble(status.getProgress());
+            writeString(out, status.getNote());
+            writeInstant(out, status.getStartTime());
+            writeInstant(out, status.getEndTime());
+            out.writeBoolean(status.isStopRequested());
+            out.writeInt(changed.size() + removed.size());
+            for (Entry<String, List<String>> en : changed.entrySet()) {
+                writeString(out, en.getKey());
+                out.writeInt(en.getValue().size());
+                for (String value : en.getValue()) {
+                    writeString(out, value);
+                }
+            }
+            for (String key : removed) {
+                writeString(out, key);
+                out.writeInt(-1);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void decode(JobStatusData status,
+            byte[] bytes, int offset, int length) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes, offset, length))) {
+            status.setProgress(in.readDouble());
+            status.setNote(readString(in));
+            status.setStartTime(readInstant(in));
+            status.setEndTime(readInstant(in));
+            status.setStopRequested(in.readBoolean());
+            Properties props = status.getProperties();
+            int keyCount = in.readInt();
+            for (int i = 0; i < keyCount; i++) {
+                String key = readString(in);
+                int valueCount = in.readInt();
+                if (valueCount < 0) {
+                    props.remove(key);
+                    continue;
+                }
+                List<String> values = new ArrayList<>(valueCount);
+                for (int j = 0; j < valueCount; j++) {
+                    values.add(readString(in));
+                }
+                props.put(key, values);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Invalid status delta record.", e);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.Serializable;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * <p>
+ * Liveness lease of running jobs. A running job renews its lease at
+ * every renewal interval, either by writing its status or through the
+ * suite heartbeat. A job is considered running for as long as its last
+ * activity is more recent than the renewal interval plus the grace
+ * period, which absorbs slow or delayed writes (e.g., on network
+ * file systems).
+ * </p>
+ * <p>
+ * A heartbeat renewal is skipped when a job status was written recently
+ * enough for the lease to still have at least half its grace period
+ * left at the next renewal.
+ * </p>
+ * <p>
+ * A lease is revoked when its holder is known to no longer run (e.g.,
+ * its process no longer holds the suite lock), in which case it is never
+ * held, whatever the last activity.
+ * </p>
+ * @author Pascal Essiembre
+ */
+public final class JobStatusLease implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(5);
+    public static final Duration DEFAULT_GRACE = Duration.ofSeconds(5);
+    public static final JobStatusLease DEFAULT =
+            new JobStatusLease(DEFAULT_INTERVAL, DEFAULT_GRACE);
+
+    private final Duration interval;
+    private final Duration grace;
+    private final boolean revoked;
+    private transient Clock clock;
+
+    /**
+     * Creates a lease using the system clock.
+     * @param interval renewal interval (greater than zero)
+     * @param grace grace period (zero or more)
+     */
+    public JobStatusLease(Duration interval, Duration grace) {
+        this(interval, grace, null);
+    }
+    /**
+     * Creates a lease.
+     * @param interval renewal interval (greater than zero)
+     * @param grace grace period (zero or more)
+     * @param clock clock source, or <code>null</code> for the
+     *        system clock
+     */
+    public JobStatusLease(Duration interval, Duration grace, Clock clock) {
+        this(interval, grace, clock, false);
+    }
+    private JobStatusLease(
+            Duration interval, Duration grace, Clock clock, boolean revoked) {
+        super();
+        Objects.requireNonNull(interval, "interval");
+        Objects.requireNonNull(grace, "grace");
+        if (interval.isZero() || interval.isNegative()) {
+            throw new IllegalArgumentException(
+                    "Lease interval must be greater than zero.");
+        }
+        if (grace.isNegative()) {
+            throw new IllegalArgumentException(
+                    "Lease grace period cannot be negative.");
+        }
+        this.interval = interval;
+        this.grace = grace;
+        this.clock = clock;
+        this.revoked = revoked;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+    public Duration getGrace() {
+        return grace;
+    }
+    /**
+     * Gets how long a lease remains held after its last renewal
+     * (renewal interval plus grace period).
+     * @return lease timeout
+     */
+    public Duration getTimeout() {
+        return interval.plus(grace);
+    }
+    public Clock getClock() {
+        if (clock == null) {
+            clock = Clock.systemUTC();
+        }
+        return clock;
+    }
+    /**
+     * Gets the current time according to this lease clock.
+     * @return current time
+     */
+    public Instant now() {
+        return getClock().instant();
+    }
+
+    /**
+     * Gets a revoked copy of this lease.
+     * @return revoked lease
+     */
+    public JobStatusLease revoke() {
+        return new JobStatusLease(interval, grace, clock, true);
+    }
+    public boolean isRevoked() {
+        return revoked;
+    }
+
+    /**
+     * Whether a lease last renewed at the given time is still held.
+     * @param lastRenewal last renewal (i.e., last activity)
+     * @return <code>true</code> if the lease is held
+     */
+    public boolean isHeld(Instant lastRenewal) {
+        return !revoked && lastRenewal != null
+                && now().isBefore(lastRenewal.plus(getTimeout()));
+    }
+    /**
+     * Whether a lease last renewed at the given time must be renewed
+     * by the next heartbeat.
+     * @param lastRenewal last renewal, or <code>null</code>
+     * @return <code>true</code> if renewal is due
+     */
+    public boolean isRenewalDue(Instant lastRenewal) {
+        return lastRenewal == null || !now().isBefore(
+                lastRenewal.plus(grace.dividedBy(2)));
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof JobStatusLease)) {
+            return false;
+        }
+        JobStatusLease castOther = (JobStatusLease) other;
+        return new EqualsBuilder()
+                .append(interval, castOther.interval)
+                .append(grace, castOther.grace)
+                .append(revoked, castOther.revoked)
+                .isEquals();
+    }
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(interval)
+                .append(grace)
+                .append(revoked)
+                .toHashCode();
+    }
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("interval", interval)
+                .append("grace", grace)
+                .append("revoked", revoked)
+                .toString();
+    }
+}
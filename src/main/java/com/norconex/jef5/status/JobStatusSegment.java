@@ -0,0 +1,374 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Memory-mapped table of job status summaries, with one fixed-size slot
+ * per job. The process executing a job suite updates it on every status
+ * change and other processes (e.g., monitoring tools) map it read-only
+ * to poll the progress of thousands of jobs without parsing any file.
+ * </p>
+ * <p>
+ * Slots are updated with a sequence lock: the slot sequence number is
+ * odd while the slot is being written, and readers retry when it is odd
+ * or changed while they read. There is a single writer per segment.
+ * A segment is recreated every time its suite is started, so readers
+ * should reopen it when {@link #getCreated()} changes.
+ * </p>
+ * <h3>Layout</h3>
+ * <p>
+ * All values are big-endian. Times are epoch milliseconds, or -1 when
+ * not set.
+ * </p>
+ * <pre>
+ * Header (32 bytes):
+ *   0  int    magic ("JEFS")
+ *   4  int    format version (1)
+ *   8  int    slot size (256)
+ *   12 int    slot count
+ *   16 long   segment creation time
+ * Slot:
+ *   0  long   sequence number (odd while being written)
+ *   8  double progress
+ *   16 long   start time
+ *   24 long   end time
+ *   32 long   last activity (heartbeat)
+ *   40 byte   state ({@link JobState} ordinal plus one, 0 if unknown)
+ *   41 byte   stop requested (1 or 0)
+ *   42 short  job id length in bytes (0 for an unused slot)
+ *   44 byte[] job id (UTF-8)
+ * </pre>
+ * @author Pascal Essiembre
+ */
+public final class JobStatusSegment implements Closeable {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobStatusSegment.class);
+
+    private static final int MAGIC = 0x4A454653;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 256;
+
+    private static final int SEQ = 0;
+    private static final int PROGRESS = 8;
+    private static final int START_TIME = 16;
+    private static final int END_TIME = 24;
+    private static final int LAST_ACTIVITY = 32;
+    private static final int STATE = 40;
+    private static final int STOP_REQUESTED = 41;
+    private static final int ID_LENGTH = 42;
+    private static final int ID = 44;
+    /** Maximum length in bytes of a job id (UTF-8). */
+    public static final int MAX_JOB_ID_LENGTH = SLOT_SIZE - ID;
+
+    private static final int MAX_READ_RETRIES = 1000;
+    private static final JobState[] STATES = JobState.values();
+
+    // Volatile accesses to this field order the plain buffer accesses
+    // around them.
+    private static volatile int fence;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final boolean writable;
+    // Slot of every job known so far.
+    private final Map<String, Integer> slots = new HashMap<>();
+    private int nextSlot;
+    private boolean fullLogged;
+
+    private JobStatusSegment(Path file, MappedByteBuffer buffer,
+            int slotCount, boolean writable) {
+        super();
+        this.file = file;
+        this.buffer = buffer;
+        this.slotCount = slotCount;
+        this.writable = writable;
+    }
+
+    /**
+     * Creates a new segment, replacing any existing one.
+     * @param file segment file
+     * @param slotCount maximum number of jobs
+     * @return writable segment
+     * @throws IOException could not create the segment
+     */
+    public static JobStatusSegment create(Path file, int slotCount)
+            throws IOException {
+        Objects.requireNonNull(file, "file");
+        if (slotCount <= 0) {
+            throw new IllegalArgumentException(
+                    "Slot count must be greater than zero.");
+        }
+        Files.createDirectories(file.getParent());
+        // Existing readers keep their mapping of the previous segment.
+        Files.deleteIfExists(file);
+        long size = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            buffer = channel.map(MapMode.READ_WRITE, 0, size);
+        }
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, SLOT_SIZE);
+        buffer.putInt(12, slotCount);
+        buffer.putLong(16, System.currentTimeMillis());
+        fence();
+        // Written last so readers never see a partial header.
+        buffer.putInt(0, MAGIC);
+        return new JobStatusSegment(file, buffer, slotCount, true);
+    }
+
+    /**
+     * Opens an existing segment for reading.
+     * @param file segment file
+     * @return read-only segment
+     * @throws IOException could not open the segment or it is not a
+     *         valid segment
+     */
+    public static JobStatusSegment open(Path file) throws IOException {
+        Objects.requireNonNull(file, "file");
+        MappedByteBuffer buffer;
+        try (FileChannel channel =
+                FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a job status segment: " + file);
+            }
+            buffer = channel.map(MapMode.READ_ONLY, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a job status segment: " + file);
+        }
+        fence();
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported job status segment version "
+                    + version + ": " + file);
+        }
+        int slotSize = buffer.getInt(8);
+        int slotCount = buffer.getInt(12);
+        if (slotSize != SLOT_SIZE || buffer.capacity()
+                < HEADER_SIZE + (long) slotCount * SLOT_SIZE) {
+            throw new IOException("Corrupted job status segment: " + file);
+        }
+        return new JobStatusSegment(file, buffer, slotCount, false);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+    public int getSlotCount() {
+        return slotCount;
+    }
+    /**
+     * Gets when this segment was created.
+     * @return creation time
+     */
+    public Instant getCreated() {
+        return Instant.ofEpochMilli(buffer.getLong(16));
+    }
+
+    /**
+     * Writes a job status summary to its slot, assigning a slot to the
+     * job the first time. Statuses of jobs with too long an id or
+     * exceeding the slot count are not written.
+     * @param status job status
+     */
+    public synchronized void update(JobStatus status) {
+        if (!writable) {
+            throw new IllegalStateException(
+                    "Job status segment is read-only: " + file);
+        }
+        int base = slotOffset(status.getJobId());
+        if (base < 0) {
+            return;
+        }
+        long seq = buffer.getLong(base + SEQ);
+        buffer.putLong(base + SEQ, seq + 1);
+        fence();
+        buffer.putDouble(base + PROGRESS, status.getProgress());
+        buffer.putLong(base + START_TIME, toMillis(status.getStartTime()));
+        buffer.putLong(base + END_TIME, toMillis(status.getEndTime()));
+        buffer.putLong(base + LAST_ACTIVITY,
+                toMillis(status.getLastActivity()));
+        JobState state = status.getState();
+        buffer.put(base + STATE,
+                (byte) (state == null ? 0 : state.ordinal() + 1));
+        buffer.put(base + STOP_REQUESTED,
+                (byte) (status.isStopRequested() ? 1 : 0));
+        fence();
+        buffer.putLong(base + SEQ, seq + 2);
+    }
+
+    /**
+     * Reads the status summary of a job.
+     * @param jobId job id
+     * @return status summary or <code>null</code> if the job has no slot
+     */
+    public synchronized JobStatusData read(String jobId) {
+        Integer slot = slots.get(jobId);
+        if (slot == null) {
+            // Slots are never reassigned, only new ones are discovered.
+            readAll();
+            slot = slots.get(jobId);
+        }
+        if (slot == null || slot < 0) {
+            return null;
+        }
+        return readSlot(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    /**
+     * Reads the status summaries of all jobs.
+     * @return status summaries, by job id, in slot order
+     */
+    public synchronized Map<String, JobStatusData> readAll() {
+        Map<String, JobStatusData> statuses = new LinkedHashMap<>();
+        for (int i = 0; i < slotCount; i++) {
+            int base = HEADER_SIZE + i * SLOT_SIZE;
+            String jobId = readJobId(base);
+            if (jobId == null) {
+                // Slots are assigned in order.
+                break;
+            }
+            slots.putIfAbsent(jobId, i);
+            JobStatusData data = readSlot(base);
+            if (data != null) {
+                statuses.put(jobId, data);
+            }
+        }
+        return Collections.unmodifiableMap(statuses);
+    }
+
+    /**
+     * Flushes this segment to disk if writable. The file mapping is
+     * released once this segment is garbage collected.
+     */
+    @Override
+    public void close() {
+        if (writable) {
+            buffer.force();
+        }
+    }
+
+    private JobStatusData readSlot(int base) {
+        for (int i = 0; i < MAX_READ_RETRIES; i++) {
+            long seq = buffer.getLong(base + SEQ);
+            fence();
+            if ((seq & 1) == 0) {
+                JobStatusData data = new JobStatusData();
+                data.setProgress(buffer.getDouble(base + PROGRESS));
+                data.setStartTime(toInstant(buffer.getLong(
+                        base + START_TIME)));
+                data.setEndTime(toInstant(buffer.getLong(base + END_TIME)));
+                data.setLastActivity(toInstant(buffer.getLong(
+                        base + LAST_ACTIVITY)));
+                data.setStopRequested(buffer.get(base + STOP_REQUESTED) == 1);
+                int state = buffer.get(base + STATE);
+                data.setRecordedState(state > 0 && state <= STATES.length
+                        ? STATES[state - 1] : null);
+                fence();
+                if (buffer.getLong(base + SEQ) == seq) {
+                    return data;
+                }
+            }
+            Thread.yield();
+        }
+        LOG.debug("Could not get a consistent read of slot at {} in: {}",
+                base, file);
+        return null;
+    }
+
+    private String readJobId(int base) {
+        int length = buffer.getShort(base + ID_LENGTH);
+        if (length <= 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(base + ID);
+        dup.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int slotOffset(String jobId) {
+        Integer slot = slots.get(jobId);
+        if (slot != null) {
+            return slot < 0 ? -1 : HEADER_SIZE + slot * SLOT_SIZE;
+        }
+        byte[] id = jobId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_JOB_ID_LENGTH) {
+            LOG.warn("Job id too long for status segment, "
+                    + "it will not be updated: {}", jobId);
+            slots.put(jobId, -1);
+            return -1;
+        }
+        if (nextSlot >= slotCount) {
+            if (!fullLogged) {
+                LOG.warn("Status segment is full ({} slots). Additional "
+                        + "jobs will not be updated in: {}", slotCount, file);
+                fullLogged = true;
+            }
+            return -1;
+        }
+        int base = HEADER_SIZE + nextSlot * SLOT_SIZE;
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(base + ID);
+        dup.put(id);
+        fence();
+        // Written last so readers never see a partial id.
+        buffer.putShort(base + ID_LENGTH, (short) id.length);
+        slots.put(jobId, nextSlot);
+        nextSlot++;
+        return base;
+    }
+
+    private static long toMillis(Instant instant) {
+        return instant == null ? -1 : instant.toEpochMilli();
+    }
+    private static Instant toInstant(long millis) {
+        return millis < 0 ? null : Instant.ofEpochMilli(millis);
+    }
+
+    // A volatile read and write: a full memory barrier on HotSpot, so
+    // other processes see slot writes in the order they were made.
+    private static void fence() {
+        fence++;
+    }
+}
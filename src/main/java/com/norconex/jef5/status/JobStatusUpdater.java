@@ -15,21 +15,53 @@
 package com.norconex.jef5.status;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
 
+import com.norconex.commons.lang.map.IMapChangeListener;
 import com.norconex.commons.lang.map.Properties;
 
+/**
+ * <p>
+ * Updates a job status, notifying a change listener (which persists the
+ * status, fires events, updates parent groups, etc.) after each change.
+ * </p>
+ * <p>
+ * To apply several changes with a single notification, wrap them in a
+ * batch, either with {@link #batch(Consumer)} or between
+ * {@link #beginBatch()} and {@link #commitBatch()} calls. Batches can be
+ * nested, in which case listeners are only notified when the outermost
+ * one is committed, and only if something changed.
+ * </p>
+ * <p>
+ * Status property changes are listened to until {@link #detach()}
+ * is invoked.
+ * </p>
+ * @author Pascal Essiembre
+ */
 public class JobStatusUpdater {
 
     private final JobStatus status;
     private final Consumer<JobStatus> changeListener; 
+    private final IMapChangeListener<String, List<String>> propertiesListener;
+    private int batchDepth;
+    private boolean batchChanged;
     
     public JobStatusUpdater(
             JobStatus status, Consumer<JobStatus> changeListener) {
         this.status = status;
         this.changeListener = changeListener;
-        status.getProperties().addMapChangeListener(
-                event -> statusUpdated(status));
+        this.propertiesListener = event -> statusUpdated(status);
+        status.getProperties().addMapChangeListener(propertiesListener);
+    }
+
+    /**
+     * Stops notifying changes to the status properties. Invoked when
+     * the job execution ends, so a status updated by more than one
+     * execution (e.g., a requeued job) is only notified once per change.
+     */
+    public void detach() {
+        status.getProperties().removeMapChangeListener(propertiesListener);
     }
 
     public String getJobId() {
@@ -61,7 +93,63 @@ public class JobStatusUpdater {
         status.setNote(note);
         statusUpdated(status);
     }    
+
+    /**
+     * Applies several property changes with a single change notification.
+     * @param updates property updates
+     */
+    public void updateProperties(Consumer<Properties> updates) {
+        batch(u -> updates.accept(status.getProperties()));
+    }
+
+    /**
+     * Applies several status changes with a single change notification.
+     * @param updates status updates, applied on this updater
+     */
+    public void batch(Consumer<JobStatusUpdater> updates) {
+        beginBatch();
+        try {
+            updates.accept(this);
+        } finally {
+            commitBatch();
+        }
+    }
+    /**
+     * Starts a batch of status changes. Listeners are not notified of
+     * changes until the batch is committed. Every call must be followed
+     * by a call to {@link #commitBatch()}.
+     */
+    public synchronized void beginBatch() {
+        batchDepth++;
+    }
+    /**
+     * Commits a batch of status changes, notifying listeners once
+     * if anything changed since the outermost batch began.
+     */
+    public void commitBatch() {
+        boolean notify;
+        synchronized (this) {
+            if (batchDepth == 0) {
+                throw new IllegalStateException("No batch to commit.");
+            }
+            batchDepth--;
+            notify = batchDepth == 0 && batchChanged;
+            if (batchDepth == 0) {
+                batchChanged = false;
+            }
+        }
+        if (notify) {
+            changeListener.accept(status);
+        }
+    }
+
     private void statusUpdated(JobStatus status) {
+        synchronized (this) {
+            if (batchDepth > 0) {
+                batchChanged = true;
+                return;
+            }
+        }
         changeListener.accept(status);
     }
 }
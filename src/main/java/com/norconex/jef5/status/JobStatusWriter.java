@@ -0,0 +1,326 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Persists job status updates to a {@link IJobSuiteStatusStore}, either
+ * synchronously or in "write-behind" mode.
+ * </p>
+ * <p>
+ * In write-behind mode, each update replaces a per-job "latest dirty
+ * snapshot" and returns right away. A single background thread writes
+ * the newest snapshot of every dirty job at the configured interval,
+ * or sooner when a job progress changed by at least the configured
+ * minimum since it was last written. Intermediate snapshots are never
+ * written, so a job reporting progress on every item only costs one
+ * write per interval.
+ * </p>
+ * <p>
+ * Write-behind is disabled when the interval is <code>null</code>,
+ * zero or negative, in which case every update is written right away
+ * on the calling thread.
+ * </p>
+ * <p>
+ * When a {@link JobStatusSegment} is set, every update is also
+ * reflected in it right away, whether in write-behind mode or not.
+ * </p>
+ * @author Pascal Essiembre
+ */
+public class JobStatusWriter {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobStatusWriter.class);
+
+    private final IJobSuiteStatusStore store;
+    private final long writeIntervalNanos;
+    private final double minProgressDelta;
+
+    // Latest unwritten snapshot for each job.
+    private final Map<String, JobStatus> dirtySnapshots =
+            new ConcurrentHashMap<>();
+    // Progress value last written for each job. Like write times and
+    // locks, only kept for jobs that have not ended.
+    private final Map<String, Double> writtenProgress =
+            new ConcurrentHashMap<>();
+    // When each job status was last written.
+    private final Map<String, Instant> writeTimes = new ConcurrentHashMap<>();
+    // Ensures an older snapshot never overwrites a newer write.
+    // Locks rather than monitors since held during I/O, which would
+    // otherwise pin virtual threads to their carrier thread.
+    private final Map<String, ReentrantLock> jobLocks =
+            new ConcurrentHashMap<>();
+
+    private final ReentrantLock flusherLock = new ReentrantLock();
+    private final Condition flushRequested = flusherLock.newCondition();
+    private boolean flushNow;
+    private volatile Thread flusher;
+    private volatile boolean terminate;
+    private volatile JobStatusSegment statusSegment;
+    private volatile Clock clock = Clock.systemUTC();
+
+    /**
+     * Creates a status writer writing every update synchronously.
+     * @param store status store
+     */
+    public JobStatusWriter(IJobSuiteStatusStore store) {
+        this(store, null, 0);
+    }
+    /**
+     * Creates a status writer.
+     * @param store status store
+     * @param writeInterval maximum time a status update can wait before
+     *        being written. <code>null</code> or zero to write every
+     *        update synchronously.
+     * @param minProgressDelta minimum progress change since the last
+     *        write that triggers a write before the interval elapses.
+     *        Zero or negative to only rely on the interval.
+     */
+    public JobStatusWriter(IJobSuiteStatusStore store,
+            Duration writeInterval, double minProgressDelta) {
+        super();
+        this.store = Objects.requireNonNull(store, "store");
+        this.writeIntervalNanos = writeInterval == null
+                ? 0 : Math.max(0, writeInterval.toNanos());
+        this.minProgressDelta = minProgressDelta;
+    }
+
+    /**
+     * Whether updates are written in background.
+     * @return <code>true</code> if in write-behind mode
+     */
+    public boolean isWriteBehind() {
+        return writeIntervalNanos > 0;
+    }
+
+    /**
+     * Gets the memory-mapped status segment updated along with the store.
+     * @return status segment or <code>null</code>
+     */
+    public JobStatusSegment getStatusSegment() {
+        return statusSegment;
+    }
+    /**
+     * Sets a memory-mapped status segment to update along with the store.
+     * @param statusSegment status segment or <code>null</code>
+     */
+    public void setStatusSegment(JobStatusSegment statusSegment) {
+        this.statusSegment = statusSegment;
+    }
+
+    /**
+     * Gets the clock used to record write times.
+     * @return clock
+     */
+    public Clock getClock() {
+        return clock;
+    }
+    /**
+     * Sets the clock used to record write times.
+     * @param clock clock, or <code>null</code> for the system clock
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock == null ? Clock.systemUTC() : clock;
+    }
+
+    /**
+     * Gets when a job status was last written to the store, which
+     * renews the job lease as much as a heartbeat does.
+     * @param jobId job id
+     * @return last write time or <code>null</code> if never written
+     *         or if the job has ended
+     */
+    public Instant getLastWriteTime(String jobId) {
+        return writeTimes.get(jobId);
+    }
+
+    /**
+     * Starts the background writer thread, if in write-behind mode.
+     */
+    public synchronized void start() {
+        if (!isWriteBehind() || flusher != null) {
+            return;
+        }
+        terminate = false;
+        flusher = new Thread(this::flushLoop, "JobStatusWriter Thread");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Stops the background writer thread, after writing any pending
+     * updates.
+     */
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            t = flusher;
+            flusher = null;
+        }
+        if (t != null) {
+            terminate = true;
+            signalFlusher();
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushAll();
+    }
+
+    /**
+     * Writes the supplied job status, or records a snapshot of it to be
+     * written in background when in write-behind mode.
+     * @param status job status
+     * @throws IOException problem writing the status synchronously
+     */
+    public void write(JobStatus status) throws IOException {
+        updateSegment(status);
+        if (!isWriteBehind() || flusher == null) {
+            flush(status);
+            return;
+        }
+        String jobId = status.getJobId();
+        JobStatus snapshot = new JobStatus(jobId, null);
+        status.copyTo(snapshot);
+        dirtySnapshots.put(jobId, snapshot);
+
+        if (minProgressDelta > 0) {
+            Double lastProgress = writtenProgress.get(jobId);
+            if (lastProgress == null || Math.abs(
+                    snapshot.getProgress() - lastProgress)
+                            >= minProgressDelta) {
+                signalFlusher();
+            }
+        }
+    }
+
+    /**
+     * Writes the supplied job status right away, discarding any pending
+     * snapshot for the same job.
+     * @param status job status
+     * @throws IOException problem writing the status
+     */
+    public void flush(JobStatus status) throws IOException {
+        updateSegment(status);
+        String jobId = status.getJobId();
+        ReentrantLock lock = lockFor(jobId);
+        lock.lock();
+        try {
+            dirtySnapshots.remove(jobId);
+            store.write(status);
+            written(jobId, status, lock);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes all pending snapshots right away.
+     */
+    public void flushAll() {
+        for (String jobId : dirtySnapshots.keySet()) {
+            flushSnapshot(jobId);
+        }
+    }
+
+    private void flushSnapshot(String jobId) {
+        ReentrantLock lock = lockFor(jobId);
+        lock.lock();
+        try {
+            JobStatus snapshot = dirtySnapshots.remove(jobId);
+            if (snapshot == null) {
+                return;
+            }
+            try {
+                store.write(snapshot);
+                written(jobId, snapshot, lock);
+            } catch (IOException e) {
+                LOG.error("Cannot persist status update for job: {}",
+                        jobId, e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Invoked with the job lock held.
+    private void written(String jobId, JobStatus status, ReentrantLock lock) {
+        if (status.getEndTime() == null) {
+            writtenProgress.put(jobId, status.getProgress());
+            writeTimes.put(jobId, clock.instant());
+        } else {
+            // Nothing left to track unless the job runs again.
+            writtenProgress.remove(jobId);
+            writeTimes.remove(jobId);
+            jobLocks.remove(jobId, lock);
+        }
+    }
+
+    private void updateSegment(JobStatus status) {
+        JobStatusSegment segment = statusSegment;
+        if (segment != null) {
+            segment.update(status);
+        }
+    }
+
+    private ReentrantLock lockFor(String jobId) {
+        return jobLocks.computeIfAbsent(jobId, k -> new ReentrantLock());
+    }
+
+    private void signalFlusher() {
+        flusherLock.lock();
+        try {
+            flushNow = true;
+            flushRequested.signal();
+        } finally {
+            flusherLock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (!terminate) {
+            flusherLock.lock();
+            try {
+                if (!flushNow) {
+                    flushRequested.await(
+                            writeIntervalNanos, TimeUnit.NANOSECONDS);
+                }
+                flushNow = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                terminate = true;
+            } finally {
+                flusherLock.unlock();
+            }
+            flushAll();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * <p>
+ * Single heartbeat record of a job suite, listing the jobs active at
+ * a given time. Written by the executing suite at every heartbeat
+ * interval in place of touching every active job status
+ * (see {@link com.norconex.jef5.suite.JobSuiteConfig#setSuiteHeartbeat(
+ * boolean)}), so heartbeat I/O does not grow with the number of
+ * concurrent jobs.
+ * </p>
+ * <p>
+ * {@link JobSuiteStatus} applies the record time as the last activity of
+ * listed jobs read from the status store.
+ * </p>
+ * @author Pascal Essiembre
+ */
+public final class JobSuiteHeartbeat {
+
+    public static final String FILE_NAME = "suite.heartbeat";
+
+    private final Instant time;
+    private final Set<String> jobIds;
+
+    public JobSuiteHeartbeat(Instant time, Collection<String> jobIds) {
+        super();
+        this.time = Objects.requireNonNull(time, "time");
+        this.jobIds = Collections.unmodifiableSet(new HashSet<>(jobIds));
+    }
+
+    public Instant getTime() {
+        return time;
+    }
+    public Set<String> getJobIds() {
+        return jobIds;
+    }
+
+    /**
+     * Sets the heartbeat time as the last activity of the given status
+     * if the job is listed and the heartbeat is more recent.
+     * @param status job status
+     */
+    public void applyTo(JobStatus status) {
+        if (status != null && jobIds.contains(status.getJobId())
+                && (status.getLastActivity() == null
+                        || time.isAfter(status.getLastActivity()))) {
+            status.setLastActivity(time);
+        }
+    }
+
+    /**
+     * Writes this heartbeat to a status directory, replacing the
+     * previous one.
+     * @param statusDir status directory
+     * @throws IOException could not write the heartbeat
+     */
+    public void write(Path statusDir) throws IOException {
+        StringBuilder b = new StringBuilder();
+        b.append(time.toEpochMilli()).append('\n');
+        for (String jobId : jobIds) {
+            b.append(escape(jobId)).append('\n');
+        }
+        Files.createDirectories(statusDir);
+        Path file = statusDir.resolve(FILE_NAME);
+        Path tmpFile = statusDir.resolve(FILE_NAME + ".tmp");
+        Files.write(tmpFile, b.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the heartbeat of a status directory.
+     * @param statusDir status directory
+     * @return heartbeat, or <code>null</code> if there are none
+     * @throws IOException could not read the heartbeat
+     */
+    public static JobSuiteHeartbeat read(Path statusDir) throws IOException {
+        String content;
+        try {
+            content = new String(Files.readAllBytes(
+                    statusDir.resolve(FILE_NAME)), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try (BufferedReader r = new BufferedReader(
+                new StringReader(content))) {
+            String line = r.readLine();
+            if (line == null) {
+                return null;
+            }
+            Instant time;
+            try {
+                time = Instant.ofEpochMilli(Long.parseLong(line));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid heartbeat file in: "
+                        + statusDir, e);
+            }
+            Set<String> ids = new HashSet<>();
+            while ((line = r.readLine()) != null) {
+                ids.add(unescape(line));
+            }
+            return new JobSuiteHeartbeat(time, ids);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("\n", "\\n").replace("\r", "\\r");
+    }
+    private static String unescape(String value) {
+        if (value.indexOf('\\') == -1) {
+            return value;
+        }
+        StringBuilder b = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '\\' && i + 1 < value.length()) {
+                i++;
+                ch = value.charAt(i);
+                if (ch == 'n') {
+                    ch = '\n';
+                } else if (ch == 'r') {
+                    ch = '\r';
+                }
+            }
+            b.append(ch);
+        }
+        return b.toString();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("time", time)
+                .append("jobIds", jobIds)
+                .toString();
+    }
+}
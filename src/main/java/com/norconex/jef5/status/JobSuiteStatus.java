@@ -20,16 +20,26 @@ import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.collections4.map.ListOrderedMap;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -40,10 +50,27 @@ import com.norconex.commons.lang.xml.XML;
 import com.norconex.jef5.JefException;
 import com.norconex.jef5.job.IJob;
 import com.norconex.jef5.job.group.IJobGroup;
+import com.norconex.jef5.shutdown.IShutdownHook;
 import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobSuiteLock;
 
 /**
+ * <p>
  * Class responsible for a job suite index file.
+ * </p>
+ * <p>
+ * When obtained for an executing job suite (see
+ * {@link #getInstance(JobSuite)}), job statuses are read from the status
+ * store only once and the same live {@link JobStatus} instances are
+ * returned afterwards, reflecting their latest in-memory state.
+ * Otherwise, statuses are read from the status store every time.
+ * </p>
+ * <p>
+ * Methods returning or visiting all statuses read them from the status
+ * store in one bulk operation (see
+ * {@link IJobSuiteStatusStore#readAll(java.util.Collection)}) and work
+ * from that single snapshot.
+ * </p>
  * @author Pascal Essiembre
  */
 
@@ -65,7 +92,16 @@ public class JobSuiteStatus implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private final JobSuiteStatusDAO dao;
+    private final IJobSuiteStatusStore store;
+    // Live statuses of the executing suite. Null for external readers.
+    private final transient Map<String, JobStatus> liveStatuses;
+    // Where external readers look for the suite heartbeat and lock.
+    // Null when live.
+    private final File statusDir;
+    private final JobStatusLease lease;
+    private volatile boolean leaseRevoked;
+    // Shutdown hook of the executing suite. Null for external readers.
+    private final transient IShutdownHook shutdownHook;
 
 //    private JobSuiteStatus(JobSuiteStatusDAO dao) {
 //        super();
@@ -81,10 +117,18 @@ public class JobSuiteStatus implements Serializable {
             /*String suiteName, */
             TreeNode rootNode,
 //            Map<String, TreeNode> flattenNodes,
-            JobSuiteStatusDAO dao) {
+            IJobSuiteStatusStore store,
+            Path statusDir,
+            JobStatusLease lease,
+            IShutdownHook shutdownHook) {
 //        this.suiteName = suiteName;
         this.rootNode = rootNode;
-        this.dao = dao;
+        this.store = store;
+        this.liveStatuses = statusDir == null
+                ? new ConcurrentHashMap<>() : null;
+        this.statusDir = statusDir == null ? null : statusDir.toFile();
+        this.lease = lease;
+        this.shutdownHook = shutdownHook;
 //        this.flatNodes.putAll(flattenNodes);
 
         flattenNodes(rootNode, flatNodes);
@@ -96,7 +140,8 @@ public class JobSuiteStatus implements Serializable {
         }
         return new JobSuiteStatus(
                 loadJobTree(null, jobSuite.getRootJob()),
-                jobSuite.getJobSuiteStatusDAO());
+                jobSuite.getJobSuiteStatusStore(), null,
+                jobSuite.getStatusLease(), jobSuite.getShutdownHook());
     }
 
 //  //TODO move these writeXX methods to JobSessionFacade??
@@ -184,14 +229,13 @@ public class JobSuiteStatus implements Serializable {
 
         if (file.exists()) {
             XML xml = new XML(file);
-            JobSuiteStatusDAO dao = null;
-
             TreeNode tree = loadJobTree(null, xml.getXML("job"));
             if (tree == null) {
                 return null;
             }
-            dao = new JobSuiteStatusDAO(tree.jobId, suiteIndex.getParent());
-            return new JobSuiteStatus(tree, dao);
+            return new JobSuiteStatus(tree,
+                    newStore(xml, tree.jobId, suiteIndex.getParent()),
+                    suiteIndex.getParent(), loadLease(xml), null);
         }
         return null;
     }
@@ -208,12 +252,50 @@ public class JobSuiteStatus implements Serializable {
             if (tree == null) {
                 return null;
             }
+            return new JobSuiteStatus(
+                    tree, newStore(xml, tree.jobId, statusDir), statusDir,
+                    loadLease(xml), null);
+        }
+    }
+
+    // Creates the same type of status store used to write the statuses.
+    private static IJobSuiteStatusStore newStore(
+            XML xml, String suiteId, Path statusDir) throws IOException {
+        String storeClass = xml.getString("statusStore/@class", null);
+        if (StringUtils.isBlank(storeClass) || JobSuiteStatusDAO.class
+                .getName().equals(storeClass)) {
             JobSuiteStatusDAO dao =
-                    new JobSuiteStatusDAO(tree.jobId, statusDir);
-            return new JobSuiteStatus(tree, dao);
+                    new JobSuiteStatusDAO(suiteId, statusDir);
+            dao.setMaxPropertyDeltas(
+                    xml.getInteger("statusStore/@maxPropertyDeltas", 0));
+            return dao;
+        }
+        try {
+            // Type checked before anything gets instantiated.
+            return Class.forName(storeClass)
+                    .asSubclass(IJobSuiteStatusStore.class)
+                    .getDeclaredConstructor(String.class, Path.class)
+                    .newInstance(suiteId, statusDir);
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IOException(
+                    "Cannot create status store: " + storeClass, e);
         }
     }
 
+    // Lease of the suite that wrote the index, or null if not recorded.
+    private static JobStatusLease loadLease(XML xml) throws IOException {
+        String interval = xml.getString("statusLease/@interval", null);
+        String grace = xml.getString("statusLease/@grace", null);
+        if (StringUtils.isAnyBlank(interval, grace)) {
+            return null;
+        }
+        try {
+            return new JobStatusLease(
+                    Duration.parse(interval), Duration.parse(grace));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new IOException("Invalid status lease in suite index.", e);
+        }
+    }
 
 //    public String toXML() {
 //        return null;
@@ -228,15 +310,47 @@ public class JobSuiteStatus implements Serializable {
     }
     public void toXML(Path path) throws IOException {
         Files.createDirectories(path.getParent());
-        try (Writer w = Files.newBufferedWriter(path)) {
+        // Replaced atomically as it can be read by other processes.
+        Path tmpFile = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmpFile)) {
             toXML(w);
         }
+        try {
+            Files.move(tmpFile, path, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile, path, StandardCopyOption.REPLACE_EXISTING);
+        }
     }
     public void toXML(Writer writer) throws IOException {
         try {
             EnhancedXMLStreamWriter w = new EnhancedXMLStreamWriter(writer);
             w.writeStartDocument("UTF-8", "1.0");
             w.writeStartElement("suite-index");
+            w.writeStartElement("statusStore");
+            w.writeAttributeString("class", store.getClass().getName());
+            if (store instanceof JobSuiteStatusDAO) {
+                w.writeAttributeInteger("maxPropertyDeltas",
+                        ((JobSuiteStatusDAO) store).getMaxPropertyDeltas());
+            }
+            w.writeEndElement();
+            if (lease != null) {
+                w.writeStartElement("statusLease");
+                w.writeAttributeString(
+                        "interval", lease.getInterval().toString());
+                w.writeAttributeString("grace", lease.getGrace().toString());
+                w.writeEndElement();
+            }
+            if (shutdownHook != null) {
+                w.writeStartElement("shutdownHook");
+                w.writeAttributeString(
+                        "class", shutdownHook.getClass().getName());
+                for (Entry<String, String> en : shutdownHook
+                        .getIndexAttributes().entrySet()) {
+                    w.writeAttributeString(en.getKey(), en.getValue());
+                }
+                w.writeEndElement();
+            }
             writeSuiteIndexJob(w, getRootId());
             w.writeEndElement();
             w.writeEndDocument();
@@ -334,8 +448,30 @@ public class JobSuiteStatus implements Serializable {
         return read(jobId);
     }
     private JobStatus read(String jobId) {
+        if (jobId == null) {
+            return null;
+        }
+        if (liveStatuses != null) {
+            JobStatus status = liveStatuses.get(jobId);
+            if (status != null) {
+                return status;
+            }
+        }
         try {
-            return dao.read(jobId);
+            JobStatus status = store.read(jobId);
+            applyLease(status, readLease());
+            if (liveStatuses == null) {
+                JobSuiteHeartbeat heartbeat = readHeartbeat();
+                if (heartbeat != null) {
+                    heartbeat.applyTo(status);
+                }
+            } else if (status != null) {
+                JobStatus existing = liveStatuses.putIfAbsent(jobId, status);
+                if (existing != null) {
+                    return existing;
+                }
+            }
+            return status;
         } catch (IOException e) {
             throw new JefException("Cannot read status information for job: "
                     + jobId, e);
@@ -343,12 +479,91 @@ public class JobSuiteStatus implements Serializable {
     }
 
     public List<JobStatus> getAllStatuses() {
-        List<JobStatus> list = new ArrayList<>(flatNodes.size());
-        for (TreeNode treeNode : flatNodes.values()) {
-            list.add(read(treeNode.jobId));
+        return new ArrayList<>(readAll().values());
+    }
+    // Statuses of all jobs, in tree order, obtained with a single read.
+    private Map<String, JobStatus> readAll() {
+        List<String> ids = getAllIds();
+        List<String> idsToRead = ids;
+        if (liveStatuses != null) {
+            idsToRead = new ArrayList<>();
+            for (String id : ids) {
+                if (!liveStatuses.containsKey(id)) {
+                    idsToRead.add(id);
+                }
+            }
+        }
+        Map<String, JobStatus> readStatuses;
+        JobSuiteHeartbeat heartbeat;
+        JobStatusLease readLease;
+        try {
+            readStatuses = idsToRead.isEmpty()
+                    ? Collections.emptyMap() : store.readAll(idsToRead);
+            heartbeat = liveStatuses == null ? readHeartbeat() : null;
+            readLease = readLease();
+        } catch (IOException e) {
+            throw new JefException(
+                    "Cannot read status information for suite: "
+                            + rootNode.jobId, e);
+        }
+        Map<String, JobStatus> statuses = new LinkedHashMap<>();
+        for (String id : ids) {
+            JobStatus status = readStatuses.get(id);
+            applyLease(status, readLease);
+            if (heartbeat != null) {
+                heartbeat.applyTo(status);
+            }
+            if (liveStatuses != null) {
+                if (status != null) {
+                    liveStatuses.putIfAbsent(id, status);
+                }
+                status = liveStatuses.get(id);
+            }
+            statuses.put(id, status);
+        }
+        return statuses;
+    }
+    /**
+     * Revokes the lease of all statuses read from the status store,
+     * so none of them is considered running anymore whatever their last
+     * activity. Meant for when the process that wrote them is known to
+     * be gone (e.g., its suite lock was acquired by another execution).
+     * Has no effect on live statuses.
+     */
+    public void revokeLease() {
+        leaseRevoked = true;
+    }
+
+    private void applyLease(JobStatus status, JobStatusLease readLease) {
+        if (status != null && readLease != null) {
+            status.setLease(readLease);
         }
-        return list;
     }
+    // Revoked for external readers when the suite lock exists but is
+    // no longer held, meaning the suite process is gone.
+    private JobStatusLease readLease() throws IOException {
+        if (statusDir == null) {
+            return lease;
+        }
+        if (leaseRevoked) {
+            return ObjectUtils.defaultIfNull(
+                    lease, JobStatusLease.DEFAULT).revoke();
+        }
+        Path lockFile = JobSuite.getLockFile(statusDir.toPath());
+        if (Files.exists(lockFile) && !JobSuiteLock.isLocked(lockFile)) {
+            return ObjectUtils.defaultIfNull(
+                    lease, JobStatusLease.DEFAULT).revoke();
+        }
+        return lease;
+    }
+    // Only jobs of a suite writing a single heartbeat are listed in one.
+    private JobSuiteHeartbeat readHeartbeat() throws IOException {
+        if (statusDir == null) {
+            return null;
+        }
+        return JobSuiteHeartbeat.read(statusDir.toPath());
+    }
+
     public List<String> getAllIds() {
         List<String> list = new ArrayList<>(flatNodes.size());
         for (TreeNode treeNode : flatNodes.values()) {
@@ -410,14 +625,15 @@ public class JobSuiteStatus implements Serializable {
     }
 
     public void accept(IJobStatusVisitor visitor) {
-        accept(visitor, getRootStatus().getJobId());
-    }
-    private void accept(IJobStatusVisitor visitor, String jobId) {
         if (visitor != null) {
-            visitor.visitJobStatus(getStatus(jobId));
-            for (JobStatus child : getChildStatuses(jobId)) {
-                accept(visitor, child.getJobId());
-            }
+            accept(visitor, rootNode, readAll());
+        }
+    }
+    private void accept(IJobStatusVisitor visitor,
+            TreeNode node, Map<String, JobStatus> statuses) {
+        visitor.visitJobStatus(statuses.get(node.jobId));
+        for (TreeNode child : node.children) {
+            accept(visitor, child, statuses);
         }
     }
 
@@ -500,14 +716,14 @@ public class JobSuiteStatus implements Serializable {
         }
         JobSuiteStatus castOther = (JobSuiteStatus) other;
         return new EqualsBuilder()
-                .append(dao, castOther.dao)
+                .append(store, castOther.store)
                 .append(flatNodes, castOther.flatNodes)
                 .isEquals();
     }
     @Override
     public int hashCode() {
         return new HashCodeBuilder()
-                .append(dao)
+                .append(store)
                 .append(flatNodes)
                 .toHashCode();
     }
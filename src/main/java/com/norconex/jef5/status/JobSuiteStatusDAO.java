@@ -14,25 +14,47 @@
  */
 package com.norconex.jef5.status;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
-import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.time.Clock;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileExistsException;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -45,11 +67,39 @@ import com.norconex.commons.lang.map.Properties;
 
 /**
  * <p>
- * File-based status store. The created
+ * File-based status store, used by default. The created
  * file name matches the job id, plus the ".job" extension. If no
  * status directory is explicitly set, it defaults to:
  * <code>&lt;user.home&gt;/Norconex/jef/workdir</code>
  * </p>
+ * <p>
+ * How safely status files are written is controlled with
+ * {@link #setDurability(StatusDurability)}. Default is
+ * {@link StatusDurability#NONE}.
+ * </p>
+ * <p>
+ * Statuses are written with the codec set with
+ * {@link #setCodec(IJobStatusCodec)}, as text properties by default
+ * ({@link PropertiesJobStatusCodec}).  Statuses are always read
+ * with the codec they were written with, so changing codec does
+ * not prevent reading existing status files.
+ * Use {@link JobStatusConverter} to convert existing status files.
+ * </p>
+ * <p>
+ * When {@link #setMaxPropertyDeltas(int)} is greater than zero, a status
+ * write only appends the status fields and the properties that changed
+ * since the previous write to a job ".delta" file. Once the maximum
+ * number of deltas is reached, the complete status is written again
+ * and the deltas are discarded. This keeps writes small for jobs
+ * holding many properties but changing only a few at a time.
+ * </p>
+ * <p>
+ * Suites with a very large number of jobs can have their status files
+ * spread under 256 subdirectories of the status directory (named after
+ * a hash of the job file name) with {@link #setSharded(boolean)}.
+ * Status files are always found regardless of the layout they were
+ * written with, and existing files are updated where they are.
+ * </p>
  *
  * <h3>XML configuration usage:</h3>
  * <pre>
@@ -71,7 +121,7 @@ import com.norconex.commons.lang.map.Properties;
  *
  * @author Pascal Essiembre
  */
-//TODO consider making an interface???  Events could be used if
+//TODO Events could be used if
 // progress needs to be stored elsewhere as well.
 
 
@@ -82,8 +132,8 @@ import com.norconex.commons.lang.map.Properties;
 
 //TODO read/write index file from here??
 
-public class JobSuiteStatusDAO
-        implements Serializable {// IJefEventListener, IXMLConfigurable {
+public class JobSuiteStatusDAO implements IJobSuiteStatusStore,
+        Serializable {// IJefEventListener, IXMLConfigurable {
 
     private static final long serialVersionUID = 1L;
 
@@ -91,6 +141,10 @@ public class JobSuiteStatusDAO
     private static final Logger LOG =
             LoggerFactory.getLogger(JobSuiteStatusDAO.class);
 
+    // Name of hashed subdirectories holding sharded status files.
+    /*default*/ static final Pattern SHARD_DIR =
+            Pattern.compile("^[0-9a-f]{2}$");
+
     //TODO make all static?
 
 
@@ -100,6 +154,18 @@ public class JobSuiteStatusDAO
     private final File statusDir;
 //    private final Path workdir;
     private final String suiteId;
+    private StatusDurability durability = StatusDurability.NONE;
+    private IJobStatusCodec codec = new PropertiesJobStatusCodec();
+    private int maxPropertyDeltas;
+    private boolean sharded;
+    private transient Map<String, DeltaState> deltaStates;
+    // Resolved status file of every job known to exist.
+    private transient Map<String, Path> jobFiles;
+    private transient JobAttemptManifest attemptManifest;
+    // Directories with renamed status files not yet forced to disk.
+    private transient Set<Path> unsyncedDirs;
+    private transient GroupCommit dirSync;
+    private transient Clock clock;
 
 //    public JobSuiteStatusDAO(/*Path workdir,*/ String suiteId) {
     public JobSuiteStatusDAO(String suiteId, Path statusDir) {
@@ -120,6 +186,99 @@ public class JobSuiteStatusDAO
     public Path getStatusDir() {
         return statusDir.toPath();
     }
+
+    /**
+     * Gets how safely status files are written.
+     * @return status durability
+     */
+    public StatusDurability getDurability() {
+        return durability;
+    }
+    /**
+     * Sets how safely status files are written.
+     * @param durability status durability
+     */
+    public void setDurability(StatusDurability durability) {
+        this.durability = ObjectUtils.defaultIfNull(
+                durability, StatusDurability.NONE);
+    }
+
+    /**
+     * Gets the clock used to time heartbeats ({@link #touch(String)}).
+     * @return clock
+     */
+    public Clock getClock() {
+        if (clock == null) {
+            clock = Clock.systemUTC();
+        }
+        return clock;
+    }
+    /**
+     * Sets the clock used to time heartbeats ({@link #touch(String)}).
+     * It should be the clock of the status lease.
+     * @param clock clock, or <code>null</code> for the system clock
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the codec used to write status files.
+     * @return status codec
+     */
+    public IJobStatusCodec getCodec() {
+        return codec;
+    }
+    /**
+     * Sets the codec used to write status files.
+     * @param codec status codec, or <code>null</code> for the default
+     *        text properties codec
+     */
+    public void setCodec(IJobStatusCodec codec) {
+        this.codec = ObjectUtils.defaultIfNull(
+                codec, new PropertiesJobStatusCodec());
+    }
+
+    /**
+     * Gets the maximum number of property deltas appended for a job
+     * before its complete status is written again.
+     * @return maximum number of property deltas
+     */
+    public int getMaxPropertyDeltas() {
+        return maxPropertyDeltas;
+    }
+    /**
+     * Sets the maximum number of property deltas appended for a job
+     * before its complete status is written again. Default is zero,
+     * which disables property deltas (the complete status is always
+     * written and existing ".delta" files are not read).
+     * @param maxPropertyDeltas maximum number of property deltas
+     */
+    public void setMaxPropertyDeltas(int maxPropertyDeltas) {
+        this.maxPropertyDeltas = maxPropertyDeltas;
+    }
+
+    /**
+     * Gets whether new status files are spread under hashed
+     * subdirectories.
+     * @return <code>true</code> if sharded
+     */
+    public boolean isSharded() {
+        return sharded;
+    }
+    /**
+     * Sets whether new status files are spread under hashed
+     * subdirectories instead of all being in the status directory.
+     * Recommended for suites with tens of thousands of jobs or more.
+     * Default is <code>false</code>.
+     * @param sharded <code>true</code> to shard status files
+     */
+    public void setSharded(boolean sharded) {
+        this.sharded = sharded;
+        if (jobFiles != null) {
+            jobFiles.clear();
+        }
+    }
 //    public Path getSessionDir() {
 //        return getSessionDir(workdir, suiteId);
 //    }
@@ -153,57 +312,294 @@ public class JobSuiteStatusDAO
 
 
 
+    @Override
     public final void write(final JobStatus js) throws IOException {
+        Path file = resolveJobFile(js.getJobId());
+        if (maxPropertyDeltas > 0) {
+            writeDelta(js, file);
+        } else {
+            write(js.getJobId(), js, file);
+            if (!getJobFiles().containsKey(js.getJobId())) {
+                // Deltas left by a previous run no longer apply.
+                Files.deleteIfExists(
+                        JobStatusDeltaLog.resolveDeltaFile(file));
+            }
+        }
+        getJobFiles().putIfAbsent(js.getJobId(), file);
+    }
 
-        //The JobStatusData should not be written/read here??? so rename arg to JobStatus?
-
-        Properties config = new Properties();
-        config.set("jobId", js.getJobId());
-        config.set("progress", js.getProgress());
-        config.set("note", js.getNote());
-        config.set("startTime", js.getStartTime());
-        config.set("endTime", js.getEndTime());
+    private void writeDelta(final JobStatus js, final Path file)
+            throws IOException {
+        DeltaState state = getDeltaStates().computeIfAbsent(
+                js.getJobId(), k -> new DeltaState());
+        // Not a monitor, held during I/O (see JobStatusWriter).
+        state.lock.lock();
+        try {
+            Path deltaFile = JobStatusDeltaLog.resolveDeltaFile(file);
+            Properties props = js.getProperties();
+            boolean ended = js.getEndTime() != null;
+            if (state.written == null || ended
+                    || state.deltaCount >= maxPropertyDeltas) {
+                // Consolidate. Deltas are set aside first so that
+                // a crash cannot leave them to be applied over the
+                // newer complete status.
+                Path asideFile = JobStatusDeltaLog.setAside(deltaFile);
+                write(js.getJobId(), js, file);
+                if (asideFile != null) {
+                    Files.deleteIfExists(asideFile);
+                }
+                if (ended) {
+                    // Nothing left to track unless the job runs again.
+                    // Writers already holding this state consolidate.
+                    state.written = null;
+                    getDeltaStates().remove(js.getJobId(), state);
+                    return;
+                }
+                state.written = new HashMap<>();
+                for (Entry<String, List<String>> en : props.entrySet()) {
+                    state.written.put(
+                            en.getKey(), new ArrayList<>(en.getValue()));
+                }
+                state.deltaCount = 0;
+                return;
+            }
 
-        //TODO store different status for stopping and stopped?
-        if (js.isStopping() || js.isStopped()) {
-            config.set("stopRequested", true);
+            Map<String, List<String>> changed = new HashMap<>();
+            for (Entry<String, List<String>> en : props.entrySet()) {
+                if (!Objects.equals(
+                        state.written.get(en.getKey()), en.getValue())) {
+                    changed.put(en.getKey(), new ArrayList<>(en.getValue()));
+                }
+            }
+            List<String> removed = new ArrayList<>();
+            for (String key : state.written.keySet()) {
+                if (!props.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+            LOG.trace("Appending status delta ({} changed, {} removed "
+                    + "properties): {}", changed.size(), removed.size(),
+                    deltaFile);
+            Files.createDirectories(file.getParent());
+            JobStatusDeltaLog.append(deltaFile, js, changed, removed,
+                    durability == StatusDurability.SYNCED);
+            state.written.putAll(changed);
+            state.written.keySet().removeAll(removed);
+            state.deltaCount++;
+        } finally {
+            state.lock.unlock();
         }
-        Properties props = js.getProperties();
-        for (Entry<String, List<String>> entry : props.entrySet()) {
-            config.put("." + entry.getKey(), entry.getValue());
+    }
+
+    private synchronized Map<String, DeltaState> getDeltaStates() {
+        if (deltaStates == null) {
+            deltaStates = new ConcurrentHashMap<>();
         }
-        Path file = resolveJobFile(js.getJobId());
-        LOG.trace("Writing status file: {}", file);
+        return deltaStates;
+    }
+    // Number of jobs with property deltas tracked.
+    /*default*/ int getDeltaStateCount() {
+        return getDeltaStates().size();
+    }
 
+    /**
+     * Records a resumed attempt of a job. The attempt is written to its
+     * own file and added to the suite attempt manifest.
+     * @param jobId job id
+     * @param attempt status of the resumed attempt
+     * @throws IOException could not write the attempt
+     */
+    public final void writeAttempt(final String jobId,
+            final JobStatusData attempt) throws IOException {
+        String jobName = FileUtil.toSafeFileName(jobId);
+        int attemptNo = getAttemptManifest().add(jobName, attempt);
+        write(jobId, attempt, resolveJobFile(jobId, attemptNo));
+    }
+
+    private void write(final String jobId, final JobStatusData js,
+            final Path file) throws IOException {
+
+        //The JobStatusData should not be written/read here??? so rename arg to JobStatus?
 
-        StringWriter sw = new StringWriter();
-        config.storeToProperties(sw);
+        LOG.trace("Writing status file: {}", file);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(jobId, js, out);
 
         Files.createDirectories(file.getParent());
-        try (BufferedWriter w = Files.newBufferedWriter(file)) {
-            w.write(sw.toString());
+        if (durability == StatusDurability.NONE) {
+            Files.write(file, out.toByteArray());
+        } else {
+            writeAtomically(file, out.toByteArray());
         }
     }
 
+    private void writeAtomically(Path file, byte[] content)
+            throws IOException {
+        Path tmpFile = file.resolveSibling("." + file.getFileName() + "-"
+                + Long.toHexString(ThreadLocalRandom.current().nextLong())
+                + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmpFile,
+                    StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer buf = ByteBuffer.wrap(content);
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                if (durability == StatusDurability.SYNCED) {
+                    channel.force(false);
+                }
+            }
+            try {
+                Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+        if (durability == StatusDurability.SYNCED) {
+            // The renamed file is only durable once its directory is,
+            // which concurrent writes synchronize only once.
+            GroupCommit commit = getDirSync();
+            unsyncedDirs.add(file.getParent());
+            commit.commit();
+        }
+    }
+
+    private synchronized GroupCommit getDirSync() {
+        if (dirSync == null) {
+            unsyncedDirs = ConcurrentHashMap.newKeySet();
+            dirSync = new GroupCommit(this::syncDirs);
+        }
+        return dirSync;
+    }
+    private void syncDirs() {
+        Iterator<Path> it = unsyncedDirs.iterator();
+        while (it.hasNext()) {
+            Path dir = it.next();
+            it.remove();
+            try (FileChannel channel =
+                    FileChannel.open(dir, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // Not supported on some platforms (e.g., Windows).
+                LOG.trace("Could not sync directory: {}", dir, e);
+            }
+        }
+    }
+
+    @Override
     public final JobStatus read(final String jobId) throws IOException {
 
         if (jobId == null) {
             return null;
         }
+        return read(jobId, resolveJobFile(jobId), null);
+    }
+
+    /**
+     * Reads the statuses of many jobs at once. The status directory is
+     * listed only once and status files are parsed in parallel.
+     * @param jobIds job ids
+     * @return job statuses, by job id, in the order of the supplied ids
+     * @throws IOException could not read the statuses
+     */
+    @Override
+    public Map<String, JobStatus> readAll(Collection<String> jobIds)
+            throws IOException {
+        Set<Path> files = listStatusFiles();
+        Map<String, JobStatus> statuses = new ConcurrentHashMap<>();
+        try {
+            jobIds.parallelStream().filter(Objects::nonNull).forEach(id -> {
+                try {
+                    statuses.put(id, read(id,
+                            resolveJobFile(id, files::contains), files));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Map<String, JobStatus> ordered = new LinkedHashMap<>();
+        for (String jobId : jobIds) {
+            ordered.put(jobId, statuses.get(jobId));
+        }
+        return ordered;
+    }
 
-        Set<JobStatusData> attempts = new TreeSet<>();
-        Path file = null;
-        int attemptNo = 1;
-        while ((file = resolveJobFile(jobId, attemptNo++)).toFile().exists()) {
-            JobStatusData data = new JobStatusData();
-            read(data, file);
-            attempts.add(data);
+    // Existing files are those listed, or probed when not listed.
+    private JobStatus read(final String jobId, final Path file,
+            final Set<Path> listedFiles) throws IOException {
+        // Attempts are listed in the attempt manifest and only
+        // materialized when requested.
+        List<JobStatusData> attempts = getAttemptManifest().getAttempts(
+                FileUtil.toSafeFileName(jobId));
+        JobStatus jobStatus = new JobStatus(jobId, attempts.size(),
+                () -> new TreeSet<>(attempts));
+        if (listedFiles == null || listedFiles.contains(file)) {
+            read(jobStatus, file);
+        }
+        if (maxPropertyDeltas > 0 && (listedFiles == null
+                || listedFiles.contains(
+                        JobStatusDeltaLog.resolveDeltaFile(file)))) {
+            readDeltas(jobStatus, file);
         }
-        JobStatus jobStatus = new JobStatus(jobId, attempts);
-        read(jobStatus, resolveJobFile(jobId));
         return jobStatus;
     }
 
+    // Lists status directory files, including sharded ones.
+    private Set<Path> listStatusFiles() throws IOException {
+        Set<Path> files = new HashSet<>();
+        if (!statusDir.isDirectory()) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(statusDir.toPath())) {
+            for (Path path : stream) {
+                if (SHARD_DIR.matcher(
+                        path.getFileName().toString()).matches()
+                        && Files.isDirectory(path)) {
+                    try (DirectoryStream<Path> shardStream =
+                            Files.newDirectoryStream(path)) {
+                        shardStream.forEach(files::add);
+                    }
+                } else {
+                    files.add(path);
+                }
+            }
+        }
+        return files;
+    }
+
+    private void readDeltas(final JobStatus jobStatus, final Path file)
+            throws IOException {
+        Path deltaFile = JobStatusDeltaLog.resolveDeltaFile(file);
+        if (JobStatusDeltaLog.apply(deltaFile, jobStatus) == 0) {
+            return;
+        }
+        try {
+            Instant lastModified =
+                    Files.getLastModifiedTime(deltaFile).toInstant();
+            if (jobStatus.getLastActivity() == null
+                    || lastModified.isAfter(jobStatus.getLastActivity())) {
+                jobStatus.setLastActivity(lastModified);
+            }
+        } catch (NoSuchFileException e) {
+            // Consolidated since read: keep status file last activity.
+        }
+    }
+
+    private synchronized JobAttemptManifest getAttemptManifest() {
+        if (attemptManifest == null) {
+            attemptManifest = new JobAttemptManifest(
+                    statusDir.toPath(), this::read);
+        }
+        return attemptManifest;
+    }
+
     private final void read(final JobStatusData jsd, final Path file)
             throws IOException {
 
@@ -215,44 +611,52 @@ public class JobSuiteStatusDAO
             System.out.println("XXXX: " + jsd);
         }
 
-        if (!file.toFile().exists() || Files.size(file) == 0) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        if (attrs.size() == 0) {
             return;
         }
 
-        Properties config = new Properties();
-
-        try (BufferedReader r = Files.newBufferedReader(file)) {
-            config.loadFromProperties(r);
+        try (InputStream in = new BufferedInputStream(
+                Files.newInputStream(file))) {
+            detectCodec(in).decode(jsd, in);
         }
 
-        Instant lastModified = Files.getLastModifiedTime(file).toInstant();
+        Instant lastModified = attrs.lastModifiedTime().toInstant();
 //        LocalDateTime lastModified = LocalDateTime.from(
 //                Files.getLastModifiedTime(file).toInstant().atZone(ZoneId.of("UTC")));
 
         LOG.trace("{} last activity: {}", file.toAbsolutePath(), lastModified);
 
         jsd.setLastActivity(lastModified);
-        jsd.setProgress(config.getDouble("progress", 0d));
-        jsd.setNote(config.getString("note", null));
-        jsd.setStartTime(config.getInstant("startTime"));
-        jsd.setEndTime(config.getInstant("endTime"));
-        jsd.setStopRequested(config.getBoolean("stopRequested", false));
-        Properties props = jsd.getProperties();
-        for (String key : config.keySet()) {
-            if (key.startsWith(".")) {
-                props.put(StringUtils.removeStart(key, "."), config.get(key));
-            }
+    }
+
+    // Stream must support marks.
+    /*default*/ static IJobStatusCodec detectCodec(InputStream in)
+            throws IOException {
+        if (BinaryJobStatusCodec.isBinary(in)) {
+            return new BinaryJobStatusCodec();
         }
+        return new PropertiesJobStatusCodec();
     }
 
+    @Override
     public final void delete() throws IOException {
+        getJobFiles().clear();
         FileUtils.deleteDirectory(statusDir);
     }
 
-    //TODO have built-in methods to load backed-up sessions?
+    //TODO have built-in methods to load backed-up sessions? Execution
+    // summaries of past runs are available from JobHistoryCatalog.
+    @Override
     public final void backup(Path backupDir) throws IOException {
         Objects.requireNonNull(backupDir, "backupDir");
         LOG.debug("Moving {} to {}", statusDir, backupDir);
+        getJobFiles().clear();
         try {
             FileUtils.moveDirectory(statusDir, backupDir.toFile());
         } catch (FileExistsException e) {
@@ -261,30 +665,73 @@ public class JobSuiteStatusDAO
         }
     }
 
+    @Override
     public Instant touch(String jobId) throws IOException {
         Path file = resolveJobFile(jobId);
 
         if (!file.toFile().exists()) {
             Files.createDirectories(file.getParent());
             Files.createFile(file);
+            getJobFiles().putIfAbsent(jobId, file);
         }
-        Instant now = Instant.now();
+        Instant now = getClock().instant();
         Files.setLastModifiedTime(file, FileTime.from(now));
         return now;
     }
 
 
     private Path resolveJobFile(final String jobId) {
-        return resolveJobFile(jobId, 0);
+        return resolveJobFile(jobId, p -> p.toFile().exists());
+    }
+    private Path resolveJobFile(
+            final String jobId, final Predicate<Path> fileExists) {
+        Map<String, Path> files = getJobFiles();
+        Path file = files.get(jobId);
+        if (file != null) {
+            return file;
+        }
+        String fileName = FileUtil.toSafeFileName(jobId) + ".job";
+        Path flatFile = statusDir.toPath().resolve(fileName);
+        Path shardFile = statusDir.toPath().resolve(
+                toShardDirName(fileName)).resolve(fileName);
+        // Existing files are kept where they are, whatever the layout.
+        Path preferred = sharded ? shardFile : flatFile;
+        Path other = sharded ? flatFile : shardFile;
+        if (fileExists.test(preferred)) {
+            file = preferred;
+        } else if (fileExists.test(other)) {
+            file = other;
+        } else {
+            // Only cache existing files, since another instance may
+            // create it with a different layout.
+            return preferred;
+        }
+        files.put(jobId, file);
+        return file;
     }
     private Path resolveJobFile(final String jobId, final int attemptNo) {
-        //TODO cache path for job ID to avoid recreate each time?
-        String suffix = StringUtils.EMPTY;
+        Path file = resolveJobFile(jobId);
         if (attemptNo > 0) {
-            suffix = "." + Integer.toString(attemptNo);
+            file = file.resolveSibling(
+                    file.getFileName() + "." + Integer.toString(attemptNo));
         }
-        return statusDir.toPath().resolve(
-                FileUtil.toSafeFileName(jobId) + ".job" + suffix);
+        return file;
+    }
+    private synchronized Map<String, Path> getJobFiles() {
+        if (jobFiles == null) {
+            jobFiles = new ConcurrentHashMap<>();
+        }
+        return jobFiles;
+    }
+
+    /**
+     * Gets the name of the hashed subdirectory a sharded status file
+     * is stored in.
+     * @param fileName job status file name, without attempt number
+     * @return two-character hexadecimal directory name
+     */
+    /*default*/ static String toShardDirName(String fileName) {
+        return String.format("%02x", fileName.hashCode() & 0xff);
     }
 //    private Path resolveDataDir() {
 //        return storeDir.resolve(Paths.get(FileUtil.toSafeFileName(suiteId)));
@@ -340,6 +787,13 @@ public class JobSuiteStatusDAO
 //        }
 //    }
 
+    private static class DeltaState {
+        private final ReentrantLock lock = new ReentrantLock();
+        // Properties as of the last write, or null if never written.
+        private Map<String, List<String>> written;
+        private int deltaCount;
+    }
+
     @Override
     public boolean equals(final Object other) {
         if (!(other instanceof JobSuiteStatusDAO)) {
@@ -349,6 +803,10 @@ public class JobSuiteStatusDAO
         return new EqualsBuilder()
                 .append(statusDir, castOther.statusDir)
                 .append(suiteId, castOther.suiteId)
+                .append(durability, castOther.durability)
+                .append(codec, castOther.codec)
+                .append(maxPropertyDeltas, castOther.maxPropertyDeltas)
+                .append(sharded, castOther.sharded)
                 .isEquals();
     }
 
@@ -357,6 +815,10 @@ public class JobSuiteStatusDAO
         return new HashCodeBuilder()
                 .append(statusDir)
                 .append(suiteId)
+                .append(durability)
+                .append(codec)
+                .append(maxPropertyDeltas)
+                .append(sharded)
                 .toHashCode();
     }
 
@@ -365,6 +827,10 @@ public class JobSuiteStatusDAO
         return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
                 .append("statusDir", statusDir)
                 .append("suiteId", suiteId)
+                .append("durability", durability)
+                .append("codec", codec)
+                .append("maxPropertyDeltas", maxPropertyDeltas)
+                .append("sharded", sharded)
                 .toString();
     }
 
@@ -0,0 +1,91 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.norconex.commons.lang.map.Properties;
+
+/**
+ * Encodes job statuses as text properties. Status properties are stored
+ * with their keys prefixed with a dot. This is the default codec.
+ * @author Pascal Essiembre
+ */
+public class PropertiesJobStatusCodec
+        implements IJobStatusCodec, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void encode(String jobId, JobStatusData status, OutputStream out)
+            throws IOException {
+        Properties config = new Properties();
+        config.set("jobId", jobId);
+        config.set("progress", status.getProgress());
+        config.set("note", status.getNote());
+        config.set("startTime", status.getStartTime());
+        config.set("endTime", status.getEndTime());
+
+        //TODO store different status for stopping and stopped?
+        if (status.isStopRequested()) {
+            config.set("stopRequested", true);
+        }
+        Properties props = status.getProperties();
+        for (Entry<String, List<String>> entry : props.entrySet()) {
+            config.put("." + entry.getKey(), entry.getValue());
+        }
+        config.storeToProperties(out);
+    }
+
+    @Override
+    public String decode(JobStatusData status, InputStream in)
+            throws IOException {
+        Properties config = new Properties();
+        config.loadFromProperties(in);
+
+        status.setProgress(config.getDouble("progress", 0d));
+        status.setNote(config.getString("note", null));
+        status.setStartTime(config.getInstant("startTime"));
+        status.setEndTime(config.getInstant("endTime"));
+        status.setStopRequested(config.getBoolean("stopRequested", false));
+        Properties props = status.getProperties();
+        for (String key : config.keySet()) {
+            if (key.startsWith(".")) {
+                props.put(StringUtils.removeStart(key, "."), config.get(key));
+            }
+        }
+        return config.getString("jobId", null);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass();
+    }
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,44 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+/**
+ * How safely job statuses are persisted by status stores supporting it,
+ * from the fastest to the safest.
+ * @author Pascal Essiembre
+ * @see JobSuiteStatusDAO#setDurability(StatusDurability)
+ */
+public enum StatusDurability {
+
+    /**
+     * Statuses are written in place and left to the operating system
+     * to flush to disk.  A crash or a concurrent read while a status
+     * is being written can see a partially written status.
+     */
+    NONE,
+    /**
+     * Statuses are written to a temporary file which then atomically
+     * replaces the previous one.  Readers always see a complete status,
+     * but the latest statuses can be lost on a system crash.
+     */
+    ATOMIC,
+    /**
+     * Like {@link #ATOMIC}, but statuses are also forced to disk before
+     * a write returns.  Concurrent writes share the synchronization of
+     * their directory (group commit), so the cost is not paid once
+     * per job.
+     */
+    SYNCED
+}
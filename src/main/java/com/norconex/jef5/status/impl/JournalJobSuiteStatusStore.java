@@ -0,0 +1,551 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.impl;
+
+import static com.norconex.jef5.status.JobStatusBinaryIO.RECORD_HEADER_SIZE;
+import static com.norconex.jef5.status.JobStatusBinaryIO.readInstant;
+import static com.norconex.jef5.status.JobStatusBinaryIO.readString;
+import static com.norconex.jef5.status.JobStatusBinaryIO.writeInstant;
+import static com.norconex.jef5.status.JobStatusBinaryIO.writeString;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusBinaryIO;
+import com.norconex.jef5.status.StatusDurability;
+import com.norconex.jef5.status.GroupCommit;
+import com.norconex.jef5.status.IJobSuiteStatusStore;
+
+/**
+ * <p>
+ * Status store appending compact binary status records for all jobs
+ * of a suite to a single journal, instead of rewriting one
+ * properties file per job.
+ * </p>
+ * <p>
+ * The journal is made of numbered segment files in the status
+ * directory. The in-memory state is rebuilt by replaying all segments
+ * in order. Once the active segment grows beyond
+ * {@link #getMaxSegmentSize()}, and to at least twice its size when last
+ * compacted, the journal is compacted: the latest
+ * record of every job is written to a new segment which becomes
+ * the active one, and older segments are deleted. Compacting many large
+ * statuses thus only happens after about as many bytes were appended.
+ * </p>
+ * <p>
+ * Readers from other JVMs only read records appended since their
+ * last read. A record cut short by a crash is detected with
+ * a checksum and ignored.
+ * </p>
+ * <p>
+ * Records are always appended atomically, so {@link StatusDurability#NONE}
+ * and {@link StatusDurability#ATOMIC} behave the same. With
+ * {@link StatusDurability#SYNCED}, status writes return once forced to
+ * disk, with concurrent writes sharing the same force.
+ * Heartbeats (touch) are never forced.
+ * </p>
+ * <p>
+ * Resumed attempts are not kept by this store.
+ * </p>
+ * @author Pascal Essiembre
+ */
+public class JournalJobSuiteStatusStore
+        implements IJobSuiteStatusStore, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JournalJobSuiteStatusStore.class);
+
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 8L * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "status-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private static final byte TYPE_WRITE = 1;
+    private static final byte TYPE_TOUCH = 2;
+
+    private final String suiteId;
+    private final File statusDir;
+    private long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+    private StatusDurability durability = StatusDurability.NONE;
+
+    // Latest known status of each job.
+    private transient Map<String, JobStatus> statuses = new HashMap<>();
+    // Segment currently read from or appended to, and read offset.
+    private transient long segmentNo;
+    private transient long segmentOffset;
+    // Only set when this instance writes to the journal.
+    private transient FileChannel channel;
+    // Active segment size right after this instance last compacted it.
+    private transient long compactedSize;
+    private transient GroupCommit channelSync;
+
+    public JournalJobSuiteStatusStore(String suiteId, Path statusDir) {
+        super();
+        this.suiteId = Objects.requireNonNull(suiteId, "suiteId");
+        this.statusDir =
+                Objects.requireNonNull(statusDir, "statusDir").toFile();
+    }
+
+    public String getSuiteId() {
+        return suiteId;
+    }
+    public Path getStatusDir() {
+        return statusDir.toPath();
+    }
+
+    /**
+     * Gets the size in bytes the active journal segment can reach before
+     * the journal is compacted. When the latest records of all jobs
+     * take more than half of it, the segment can grow to twice their
+     * size instead.
+     * @return maximum segment size
+     */
+    public long getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+    /**
+     * Sets the size in bytes the active journal segment can reach before
+     * the journal is compacted.
+     * @param maxSegmentSize maximum segment size
+     */
+    public void setMaxSegmentSize(long maxSegmentSize) {
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * Gets how safely status records are written.
+     * @return status durability
+     */
+    public StatusDurability getDurability() {
+        return durability;
+    }
+    /**
+     * Sets how safely status records are written.
+     * @param durability status durability
+     */
+    public void setDurability(StatusDurability durability) {
+        this.durability = ObjectUtils.defaultIfNull(
+                durability, StatusDurability.NONE);
+    }
+
+    @Override
+    public void write(JobStatus js) throws IOException {
+        JobStatus status = copy(js);
+        status.setLastActivity(Instant.now());
+        synchronized (this) {
+            openForAppend();
+            // Kept first so a compaction triggered by this append has it.
+            statuses.put(status.getJobId(), status);
+            append(encodeWrite(status));
+        }
+        if (durability == StatusDurability.SYNCED) {
+            getChannelSync().commit();
+        }
+    }
+
+    @Override
+    public synchronized JobStatus read(String jobId) throws IOException {
+        if (jobId == null) {
+            return null;
+        }
+        if (channel == null) {
+            replay();
+        }
+        JobStatus status = statuses.get(jobId);
+        if (status == null) {
+            return new JobStatus(jobId, null);
+        }
+        return copy(status);
+    }
+
+    @Override
+    public synchronized Map<String, JobStatus> readAll(
+            Collection<String> jobIds) throws IOException {
+        if (channel == null) {
+            replay();
+        }
+        Map<String, JobStatus> all = new LinkedHashMap<>();
+        for (String jobId : jobIds) {
+            JobStatus status = statuses.get(jobId);
+            all.put(jobId, status == null
+                    ? new JobStatus(jobId, null) : copy(status));
+        }
+        return all;
+    }
+
+    @Override
+    public synchronized Instant touch(String jobId) throws IOException {
+        Instant now = Instant.now();
+        openForAppend();
+        statuses.computeIfAbsent(jobId,
+                k -> new JobStatus(k, null)).setLastActivity(now);
+        append(encodeTouch(jobId, now));
+        return now;
+    }
+
+    @Override
+    public synchronized void delete() throws IOException {
+        close();
+        FileUtils.deleteDirectory(statusDir);
+        reset();
+    }
+
+    @Override
+    public synchronized void backup(Path backupDir) throws IOException {
+        Objects.requireNonNull(backupDir, "backupDir");
+        close();
+        LOG.debug("Moving {} to {}", statusDir, backupDir);
+        FileUtils.moveDirectory(statusDir, backupDir.toFile());
+        reset();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Writes the latest record of every job to a new segment and deletes
+     * older segments.
+     * @throws IOException could not compact the journal
+     */
+    public synchronized void compact() throws IOException {
+        openForAppend();
+        long newSegmentNo = segmentNo + 1;
+        Path tmpFile = resolveSegment(newSegmentNo).resolveSibling(
+                resolveSegment(newSegmentNo).getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmpFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (JobStatus status : statuses.values()) {
+                out.write(ByteBuffer.wrap(
+                        JobStatusBinaryIO.frame(encodeWrite(status))));
+            }
+            out.force(true);
+        }
+        Files.move(tmpFile, resolveSegment(newSegmentNo),
+                StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        for (long no : listSegments()) {
+            if (no < newSegmentNo) {
+                Files.deleteIfExists(resolveSegment(no));
+            }
+        }
+        segmentNo = newSegmentNo;
+        channel = FileChannel.open(resolveSegment(segmentNo),
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentOffset = channel.size();
+        compactedSize = segmentOffset;
+        LOG.debug("Compacted status journal into segment {} "
+                + "({} statuses).", segmentNo, statuses.size());
+    }
+
+    //--- Write ----------------------------------------------------------------
+
+    private synchronized GroupCommit getChannelSync() {
+        if (channelSync == null) {
+            channelSync = new GroupCommit(this::forceChannel);
+        }
+        return channelSync;
+    }
+    private synchronized void forceChannel() throws IOException {
+        // A compaction since the write already forced it to disk.
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    private void append(byte[] payload) throws IOException {
+        openForAppend();
+        ByteBuffer buf = ByteBuffer.wrap(JobStatusBinaryIO.frame(payload));
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        // Our own records need not be replayed after reopening.
+        segmentOffset = channel.position();
+        // Relative to what compacting leaves, so writes do not all
+        // compact when the latest records alone exceed the maximum.
+        if (channel.size() > Math.max(maxSegmentSize, 2 * compactedSize)) {
+            compact();
+        }
+    }
+
+    private void openForAppend() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        replay();
+        Files.createDirectories(getStatusDir());
+        if (segmentNo == 0) {
+            segmentNo = 1;
+        }
+        channel = FileChannel.open(resolveSegment(segmentNo),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Drop any partial record left by a crash before appending.
+        channel.truncate(segmentOffset);
+        channel.position(segmentOffset);
+    }
+
+    private static byte[] encodeWrite(JobStatus status) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TYPE_WRITE);
+            writeString(out, status.getJobId());
+            writeInstant(out, status.getLastActivity());
+            out.writeDouble(status.getProgress());
+            writeString(out, status.getNote());
+            writeInstant(out, status.getStartTime());
+            writeInstant(out, status.getEndTime());
+            out.writeBoolean(status.isStopRequested());
+            JobStatusBinaryIO.writeProperties(out, status.getProperties());
+        }
+        return bytes.toByteArray();
+    }
+    private static byte[] encodeTouch(String jobId, Instant time)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TYPE_TOUCH);
+            writeString(out, jobId);
+            writeInstant(out, time);
+        }
+        return bytes.toByteArray();
+    }
+
+    //--- Read -----------------------------------------------------------------
+
+    // Reads records appended since last replay, starting over if
+    // the journal was compacted in the meantime.
+    private void replay() throws IOException {
+        if (segmentNo > 0 && !Files.exists(resolveSegment(segmentNo))) {
+            reset();
+        }
+        if (segmentNo == 0) {
+            List<Long> segments = listSegments();
+            if (segments.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < segments.size() - 1; i++) {
+                segmentNo = segments.get(i);
+                segmentOffset = 0;
+                replaySegment();
+            }
+            segmentNo = segments.get(segments.size() - 1);
+            segmentOffset = 0;
+        }
+        replaySegment();
+        // A newer segment means the journal was compacted after
+        // we last looked: start over.
+        if (Files.exists(resolveSegment(segmentNo + 1))) {
+            reset();
+            replay();
+        }
+    }
+
+    private void replaySegment() throws IOException {
+        Path file = resolveSegment(segmentNo);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            in.position(segmentOffset);
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            while (true) {
+                header.clear();
+                if (!readFully(in, header)) {
+                    break;
+                }
+                int length = header.getInt(0);
+                int checksum = header.getInt(4);
+                if (length < 0 || length > in.size() - in.position()) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                if (!readFully(in, payload)) {
+                    break;
+                }
+                if (JobStatusBinaryIO.checksum(
+                        payload.array(), 0, length) != checksum) {
+                    LOG.warn("Corrupted status journal record ignored "
+                            + "in {} at position {}.", file, segmentOffset);
+                    break;
+                }
+                decode(payload.array());
+                segmentOffset = in.position();
+            }
+        } catch (NoSuchFileException e) {
+            LOG.debug("Status journal segment gone: {}", file);
+        }
+    }
+
+    private static boolean readFully(FileChannel in, ByteBuffer buf)
+            throws IOException {
+        while (buf.hasRemaining()) {
+            if (in.read(buf) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(payload))) {
+            byte type = in.readByte();
+            String jobId = readString(in);
+            Instant time = readInstant(in);
+            JobStatus status = statuses.computeIfAbsent(
+                    jobId, k -> new JobStatus(k, null));
+            status.setLastActivity(time);
+            if (type != TYPE_WRITE) {
+                return;
+            }
+            status.setProgress(in.readDouble());
+            status.setNote(readString(in));
+            status.setStartTime(readInstant(in));
+            status.setEndTime(readInstant(in));
+            status.setStopRequested(in.readBoolean());
+            status.getProperties().clear();
+            JobStatusBinaryIO.readProperties(in, status.getProperties());
+        } catch (EOFException e) {
+            throw new IOException("Invalid status journal record.", e);
+        }
+    }
+
+    //--- Misc. ----------------------------------------------------------------
+
+    private void reset() {
+        statuses = new HashMap<>();
+        segmentNo = 0;
+        segmentOffset = 0;
+        compactedSize = 0;
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        if (!Files.isDirectory(getStatusDir())) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                getStatusDir(), SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                String no = StringUtils.removeEnd(StringUtils.removeStart(
+                        file.getFileName().toString(), SEGMENT_PREFIX),
+                        SEGMENT_SUFFIX);
+                if (StringUtils.isNumeric(no)) {
+                    segments.add(Long.parseLong(no));
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private Path resolveSegment(long no) {
+        return getStatusDir().resolve(SEGMENT_PREFIX
+                + StringUtils.leftPad(Long.toString(no), 10, '0')
+                + SEGMENT_SUFFIX);
+    }
+
+    private static JobStatus copy(JobStatus source) {
+        JobStatus target = new JobStatus(source.getJobId(), null);
+        target.setProgress(source.getProgress());
+        target.setNote(source.getNote());
+        target.setStartTime(source.getStartTime());
+        target.setEndTime(source.getEndTime());
+        target.setStopRequested(source.isStopRequested());
+        target.setLastActivity(source.getLastActivity());
+        target.getProperties().putAll(source.getProperties());
+        return target;
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        reset();
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof JournalJobSuiteStatusStore)) {
+            return false;
+        }
+        JournalJobSuiteStatusStore castOther =
+                (JournalJobSuiteStatusStore) other;
+        return new EqualsBuilder()
+                .append(statusDir, castOther.statusDir)
+                .append(suiteId, castOther.suiteId)
+                .append(maxSegmentSize, castOther.maxSegmentSize)
+                .append(durability, castOther.durability)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(statusDir)
+                .append(suiteId)
+                .append(maxSegmentSize)
+                .append(durability)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("statusDir", statusDir)
+                .append("suiteId", suiteId)
+                .append("maxSegmentSize", maxSegmentSize)
+                .append("durability", durability)
+                .toString();
+    }
+}
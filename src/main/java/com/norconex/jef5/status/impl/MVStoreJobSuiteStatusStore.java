@@ -0,0 +1,436 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.MVStoreException;
+import org.h2.mvstore.MVStoreTool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.status.BinaryJobStatusCodec;
+import com.norconex.jef5.status.IJobSuiteStatusStore;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusData;
+import com.norconex.jef5.status.StatusDurability;
+
+/**
+ * <p>
+ * Status store keeping the statuses of all jobs of a suite in a single
+ * embedded H2 MVStore database file, instead of one file per job.
+ * Requires the <code>com.h2database:h2</code> library
+ * (an optional dependency) to be on the classpath.
+ * </p>
+ * <p>
+ * Besides look-ups by job id, it indexes jobs by their state as of their
+ * last write ({@link #getJobIds(JobState)}) and reads many statuses
+ * in one pass. Backing up statuses creates a
+ * compacted snapshot of the database.
+ * </p>
+ * <p>
+ * The database is only opened for writing once a status is written, so
+ * statuses can be read until then. Only one process can have the
+ * database opened for writing, and it is locked while it is.
+ * Statuses of a running suite are then read from a copy of the database,
+ * made again whenever the database changes. Consider
+ * a {@link com.norconex.jef5.status.JobStatusSegment} to frequently
+ * monitor large running suites.
+ * </p>
+ * <p>
+ * Changes are committed in the background within about a second with
+ * {@link StatusDurability#NONE}, and on every status write otherwise.
+ * {@link StatusDurability#SYNCED} also forces them to disk.
+ * Heartbeats (touch) are never committed right away.
+ * Resumed attempts are not kept by this store.
+ * </p>
+ * @author Pascal Essiembre
+ */
+public class MVStoreJobSuiteStatusStore
+        implements IJobSuiteStatusStore, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(MVStoreJobSuiteStatusStore.class);
+
+    public static final String DB_FILENAME = "status.mv.db";
+
+    private static final String MAP_STATUSES = "statuses";
+    private static final String MAP_ACTIVITIES = "activities";
+    private static final String MAP_STATES = "states";
+    private static final String MAP_STATE_INDEX = "stateIndex";
+    // Separates state from job id in state index keys.
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final String suiteId;
+    private final File statusDir;
+    private StatusDurability durability = StatusDurability.NONE;
+
+    private transient MVStore store;
+    // Encoded statuses, by job id.
+    private transient MVMap<String, byte[]> statuses;
+    // Last activity epoch milliseconds, by job id.
+    private transient MVMap<String, Long> activities;
+    // State as of last write, by job id.
+    private transient MVMap<String, String> states;
+    // "<state>\0<jobId>" keys, for look-ups by state.
+    private transient MVMap<String, String> stateIndex;
+    // Copy of a database locked by its writer, opened instead of it.
+    private transient Path snapshotFile;
+    // Database last modified time and size when copied, null when
+    // the opened store is not the copy.
+    private transient FileTime snapshotModified;
+    private transient long snapshotSize;
+
+    public MVStoreJobSuiteStatusStore(String suiteId, Path statusDir) {
+        super();
+        this.suiteId = Objects.requireNonNull(suiteId, "suiteId");
+        this.statusDir =
+                Objects.requireNonNull(statusDir, "statusDir").toFile();
+    }
+
+    public String getSuiteId() {
+        return suiteId;
+    }
+    public Path getStatusDir() {
+        return statusDir.toPath();
+    }
+    public Path getDatabaseFile() {
+        return statusDir.toPath().resolve(DB_FILENAME);
+    }
+
+    /**
+     * Gets how safely status changes are committed.
+     * @return status durability
+     */
+    public StatusDurability getDurability() {
+        return durability;
+    }
+    /**
+     * Sets how safely status changes are committed.
+     * @param durability status durability
+     */
+    public void setDurability(StatusDurability durability) {
+        this.durability = ObjectUtils.defaultIfNull(
+                durability, StatusDurability.NONE);
+    }
+
+    @Override
+    public synchronized void write(JobStatus js) throws IOException {
+        String jobId = js.getJobId();
+        Instant now = Instant.now();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryJobStatusCodec().encode(jobId, js, out);
+
+        openStore(false);
+        statuses.put(jobId, out.toByteArray());
+        activities.put(jobId, now.toEpochMilli());
+        JobStatusData written = new JobStatusData();
+        written.setProgress(js.getProgress());
+        written.setStartTime(js.getStartTime());
+        written.setEndTime(js.getEndTime());
+        written.setStopRequested(js.isStopRequested());
+        written.setLastActivity(now);
+        String state = written.getState().name();
+        String oldState = states.put(jobId, state);
+        if (!state.equals(oldState)) {
+            if (oldState != null) {
+                stateIndex.remove(toIndexKey(oldState, jobId));
+            }
+            stateIndex.put(toIndexKey(state, jobId), jobId);
+        }
+        if (durability != StatusDurability.NONE) {
+            store.commit();
+            if (durability == StatusDurability.SYNCED) {
+                store.sync();
+            }
+        }
+    }
+
+    @Override
+    public synchronized JobStatus read(String jobId) throws IOException {
+        if (jobId == null) {
+            return null;
+        }
+        if (!openStore(true)) {
+            return new JobStatus(jobId, null);
+        }
+        return toJobStatus(jobId, statuses.get(jobId));
+    }
+
+    @Override
+    public synchronized Map<String, JobStatus> readAll(
+            Collection<String> jobIds) throws IOException {
+        Map<String, JobStatus> all = new LinkedHashMap<>();
+        boolean exists = openStore(true);
+        for (String jobId : jobIds) {
+            all.put(jobId, exists ? toJobStatus(jobId, statuses.get(jobId))
+                    : new JobStatus(jobId, null));
+        }
+        return all;
+    }
+
+    /**
+     * Gets the ids of jobs that were in the given state when their status
+     * was last written. Running jobs are recorded as running even if
+     * they stopped reporting activity since.
+     * @param state job state
+     * @return job ids, sorted (never <code>null</code>)
+     * @throws IOException could not read statuses
+     */
+    public synchronized Set<String> getJobIds(JobState state)
+            throws IOException {
+        Objects.requireNonNull(state, "state");
+        Set<String> ids = new TreeSet<>();
+        if (!openStore(true)) {
+            return ids;
+        }
+        String prefix = state.name() + KEY_SEPARATOR;
+        Iterator<String> it = stateIndex.keyIterator(prefix);
+        while (it.hasNext()) {
+            String key = it.next();
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            ids.add(key.substring(prefix.length()));
+        }
+        return ids;
+    }
+
+    @Override
+    public synchronized Instant touch(String jobId) throws IOException {
+        Instant now = Instant.now();
+        openStore(false);
+        activities.put(jobId, now.toEpochMilli());
+        return now;
+    }
+
+    @Override
+    public synchronized void delete() throws IOException {
+        close();
+        FileUtils.deleteDirectory(statusDir);
+    }
+
+    /**
+     * Writes a compacted snapshot of the status database and moves
+     * other status files (e.g., the suite index) to the backup directory,
+     * then deletes the status directory.
+     * @param backupDir backup directory
+     * @throws IOException could not backup statuses
+     */
+    @Override
+    public synchronized void backup(Path backupDir) throws IOException {
+        Objects.requireNonNull(backupDir, "backupDir");
+        close();
+        LOG.debug("Backing up {} to {}", statusDir, backupDir);
+        Files.createDirectories(backupDir);
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(statusDir.toPath())) {
+            for (Path file : stream) {
+                Path target = backupDir.resolve(file.getFileName());
+                if (file.getFileName().toString().equals(DB_FILENAME)) {
+                    try {
+                        MVStoreTool.compact(file.toString(),
+                                target.toString(), true);
+                    } catch (MVStoreException e) {
+                        throw new IOException(
+                                "Cannot backup status database: " + file, e);
+                    }
+                } else if (Files.isDirectory(file)) {
+                    FileUtils.moveDirectory(file.toFile(), target.toFile());
+                } else {
+                    Files.move(file, target);
+                }
+            }
+        }
+        FileUtils.deleteDirectory(statusDir);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            closeStore();
+        } finally {
+            if (snapshotFile != null) {
+                Files.deleteIfExists(snapshotFile);
+                snapshotFile = null;
+            }
+        }
+    }
+    private void closeStore() throws IOException {
+        try {
+            if (store != null) {
+                store.close();
+            }
+        } catch (MVStoreException e) {
+            throw new IOException("Cannot close status database: "
+                    + getDatabaseFile(), e);
+        } finally {
+            store = null;
+            snapshotModified = null;
+        }
+    }
+
+    // Returns false when reading a database not yet created.
+    private boolean openStore(boolean readOnly) throws IOException {
+        Path dbFile = getDatabaseFile();
+        if (snapshotModified != null && isSnapshotStale(dbFile)) {
+            closeStore();
+        }
+        if (store != null && (readOnly || !store.isReadOnly())) {
+            return true;
+        }
+        if (readOnly && !dbFile.toFile().exists()) {
+            return false;
+        }
+        closeStore();
+        if (!readOnly) {
+            Files.createDirectories(statusDir.toPath());
+        }
+        LOG.debug("Opening status database ({}): {}",
+                readOnly ? "read-only" : "read-write", dbFile);
+        try {
+            store = newStore(dbFile, readOnly);
+        } catch (MVStoreException e) {
+            if (!readOnly
+                    || e.getErrorCode() != DataUtils.ERROR_FILE_LOCKED) {
+                throw new IOException("Cannot open status database "
+                        + "(is it in use by another process?): "
+                        + dbFile, e);
+            }
+            // Opened for writing by its running suite.
+            store = openSnapshot(dbFile);
+        }
+        statuses = store.openMap(MAP_STATUSES);
+        activities = store.openMap(MAP_ACTIVITIES);
+        states = store.openMap(MAP_STATES);
+        stateIndex = store.openMap(MAP_STATE_INDEX);
+        return true;
+    }
+
+    private MVStore newStore(Path dbFile, boolean readOnly) {
+        MVStore.Builder builder =
+                new MVStore.Builder().fileName(dbFile.toString());
+        if (readOnly) {
+            builder.readOnly();
+        }
+        return builder.open();
+    }
+    // The copy holds what was committed when copied. A commit being
+    // written while copying is ignored when opening it, like after
+    // a crash.
+    private MVStore openSnapshot(Path dbFile) throws IOException {
+        LOG.debug("Status database is locked, reading a copy: {}", dbFile);
+        if (snapshotFile == null) {
+            // Reused by every copy made by this instance.
+            snapshotFile = Files.createTempFile("jef-status-", ".mv.db");
+            snapshotFile.toFile().deleteOnExit();
+        }
+        FileTime modified = Files.getLastModifiedTime(dbFile);
+        long size = Files.size(dbFile);
+        try {
+            Files.copy(dbFile, snapshotFile,
+                    StandardCopyOption.REPLACE_EXISTING);
+            MVStore snapshot = newStore(snapshotFile, true);
+            snapshotModified = modified;
+            snapshotSize = size;
+            return snapshot;
+        } catch (IOException | MVStoreException e) {
+            throw new IOException(
+                    "Cannot read copy of status database: " + dbFile, e);
+        }
+    }
+    private boolean isSnapshotStale(Path dbFile) throws IOException {
+        return !dbFile.toFile().exists()
+                || !Files.getLastModifiedTime(dbFile).equals(snapshotModified)
+                || Files.size(dbFile) != snapshotSize;
+    }
+
+    private JobStatus toJobStatus(String jobId, byte[] data)
+            throws IOException {
+        JobStatus status = new JobStatus(jobId, null);
+        if (data != null) {
+            new BinaryJobStatusCodec().decode(
+                    status, new ByteArrayInputStream(data));
+        }
+        Long lastActivity = activities.get(jobId);
+        if (lastActivity != null) {
+            status.setLastActivity(Instant.ofEpochMilli(lastActivity));
+        }
+        return status;
+    }
+
+    private static String toIndexKey(String state, String jobId) {
+        return state + KEY_SEPARATOR + jobId;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof MVStoreJobSuiteStatusStore)) {
+            return false;
+        }
+        MVStoreJobSuiteStatusStore castOther =
+                (MVStoreJobSuiteStatusStore) other;
+        return new EqualsBuilder()
+                .append(statusDir, castOther.statusDir)
+                .append(suiteId, castOther.suiteId)
+                .append(durability, castOther.durability)
+                .isEquals();
+    }
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(statusDir)
+                .append(suiteId)
+                .append(durability)
+                .toHashCode();
+    }
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("statusDir", statusDir)
+                .append("suiteId", suiteId)
+                .append("durability", durability)
+                .toString();
+    }
+}
@@ -0,0 +1,264 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Executes the jobs of a job suite, shared by all its job groups.
+ * Jobs run on a work-stealing {@link ForkJoinPool}, or each on its own
+ * virtual thread when requested and supported (see {@link JobThreads}),
+ * never more at once than the maximum number of job threads.
+ * Other jobs wait in submission order.
+ * </p>
+ * <p>
+ * A job waiting for its child jobs to end (e.g., a nested job group)
+ * should do so with {@link #block(ManagedBlocker)}.  It then lets other
+ * jobs run in its place until it is done waiting, so parent jobs
+ * never prevent child jobs from running.
+ * </p>
+ * @author Pascal Essiembre
+ * @see JobSuiteConfig#setMaxJobThreads(int)
+ */
+public final class JobExecutor implements Executor {
+
+    // Highest parallelism supported by ForkJoinPool.
+    private static final int MAX_POOL_THREADS = 0x7fff;
+
+    private final int maxThreads;
+    // Null when using virtual threads.
+    private final ForkJoinPool pool;
+    private final ThreadFactory virtualThreadFactory;
+    // Threads currently running a job.
+    private final Set<Thread> jobThreads = ConcurrentHashMap.newKeySet();
+
+    // A lock rather than a monitor so waiting does not pin virtual
+    // threads to their carrier thread.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition jobEnded = lock.newCondition();
+    // Guarded by lock
+    private final Queue<Runnable> pendingJobs = new ArrayDeque<>();
+    private int runningJobs;
+    // Jobs done waiting, about to run again (have precedence).
+    private int resumingJobs;
+    private boolean shutdown;
+
+    /**
+     * Creates a job executor running jobs on a thread pool.
+     * @param name prefix of the executor thread names
+     * @param maxThreads maximum number of jobs running at once
+     *        (zero or less for no limit)
+     */
+    public JobExecutor(String name, int maxThreads) {
+        this(name, maxThreads, false);
+    }
+    /**
+     * Creates a job executor.
+     * @param name prefix of the executor thread names
+     * @param maxThreads maximum number of jobs running at once
+     *        (zero or less for no limit)
+     * @param virtualThreads <code>true</code> to run each job on a new
+     *        virtual thread, if supported
+     */
+    public JobExecutor(String name, int maxThreads, boolean virtualThreads) {
+        super();
+        this.maxThreads = maxThreads > 0 ? maxThreads : Integer.MAX_VALUE;
+        if (virtualThreads && JobThreads.isVirtualThreadSupported()) {
+            this.pool = null;
+            this.virtualThreadFactory =
+                    JobThreads.newThreadFactory(name + " Worker", true);
+            return;
+        }
+        this.virtualThreadFactory = null;
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ForkJoinPool(
+                Math.min(this.maxThreads, MAX_POOL_THREADS), p -> {
+            ForkJoinWorkerThread t = ForkJoinPool
+                    .defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName(name + " Worker " + count.incrementAndGet());
+            return t;
+        }, null, true);
+    }
+
+    /**
+     * Gets the maximum number of jobs running at once.
+     * @return maximum number of job threads
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Whether jobs are executed on virtual threads.
+     * @return <code>true</code> if using virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreadFactory != null;
+    }
+
+    /**
+     * Executes a job as soon as the maximum number of job threads allows
+     * it.
+     * @param job the job to execute
+     * @throws RejectedExecutionException executor was shut down
+     */
+    @Override
+    public void execute(Runnable job) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException(
+                        "Job executor was shut down.");
+            }
+            pendingJobs.add(job);
+        } finally {
+            lock.unlock();
+        }
+        executePending();
+    }
+
+    /**
+     * Blocks the current thread with the supplied blocker.  When invoked
+     * from a job run by this executor, another job can run until this
+     * one is done waiting.
+     * @param blocker the blocker
+     * @throws InterruptedException if interrupted while blocked
+     */
+    public void block(ManagedBlocker blocker) throws InterruptedException {
+        boolean jobThread = jobThreads.contains(Thread.currentThread());
+        if (jobThread) {
+            jobEnded();
+        }
+        try {
+            ForkJoinPool.managedBlock(blocker);
+        } finally {
+            if (jobThread) {
+                ForkJoinPool.managedBlock(new ResumeBlocker());
+            }
+        }
+    }
+
+    /**
+     * Stops accepting new jobs.  Jobs already submitted are still
+     * executed.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+        } finally {
+            lock.unlock();
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private void executePending() {
+        List<Runnable> jobs = new ArrayList<>();
+        lock.lock();
+        try {
+            while (runningJobs + resumingJobs < maxThreads
+                    && !pendingJobs.isEmpty()) {
+                runningJobs++;
+                jobs.add(pendingJobs.remove());
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Runnable job : jobs) {
+            if (pool != null) {
+                pool.execute(() -> run(job));
+            } else {
+                virtualThreadFactory.newThread(() -> run(job)).start();
+            }
+        }
+    }
+
+    private void run(Runnable job) {
+        Thread thread = Thread.currentThread();
+        jobThreads.add(thread);
+        try {
+            job.run();
+        } finally {
+            jobThreads.remove(thread);
+            jobEnded();
+        }
+    }
+
+    private void jobEnded() {
+        lock.lock();
+        try {
+            runningJobs--;
+            jobEnded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        executePending();
+    }
+
+    // Waits for a job thread to be available again, uninterruptibly
+    // so job thread counts stay accurate.
+    private class ResumeBlocker implements ManagedBlocker {
+        private boolean resumed;
+        @Override
+        public boolean isReleasable() {
+            lock.lock();
+            try {
+                if (!resumed && runningJobs < maxThreads) {
+                    runningJobs++;
+                    resumed = true;
+                }
+                return resumed;
+            } finally {
+                lock.unlock();
+            }
+        }
+        @Override
+        public boolean block() {
+            lock.lock();
+            try {
+                if (resumed) {
+                    return true;
+                }
+                resumingJobs++;
+                while (runningJobs >= maxThreads) {
+                    jobEnded.awaitUninterruptibly();
+                }
+                resumingJobs--;
+                runningJobs++;
+                resumed = true;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
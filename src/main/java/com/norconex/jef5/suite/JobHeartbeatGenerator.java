@@ -15,41 +15,168 @@
 package com.norconex.jef5.suite;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.norconex.commons.lang.Sleeper;
-import com.norconex.jef5.JefException;
 import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusLease;
+import com.norconex.jef5.status.JobStatusSegment;
+import com.norconex.jef5.status.JobStatusWriter;
+import com.norconex.jef5.status.JobSuiteHeartbeat;
+
+/**
+ * Renews the lease of running jobs at every lease interval
+ * (see {@link JobStatusLease}). Renewals of all job suites are
+ * scheduled on a shared scheduler unless one is supplied.
+ * @author Pascal Essiembre
+ */
+public class JobHeartbeatGenerator {
 
-public class JobHeartbeatGenerator extends Thread {
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobHeartbeatGenerator.class);
+
+    /**
+     * Default heartbeat interval in milliseconds.
+     * @deprecated Use {@link JobStatusLease#getInterval()}
+     */
+    @Deprecated
+    public static final long HEARTBEAT_INTERVAL =
+            JobStatusLease.DEFAULT_INTERVAL.toMillis();
+
+    private static final ScheduledExecutorService SHARED_SCHEDULER =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "JobHeartbeatGenerator Thread");
+                t.setDaemon(true);
+                return t;
+            });
 
-    //TODO have a isRunning method on JobSessionFacade instead?
-    public static final long HEARTBEAT_INTERVAL = 5000;
-    
     private final Queue<JobStatus> statuses = 
             new ConcurrentLinkedQueue<>();
+    // When the heartbeat last renewed each job lease.
+    private final Map<String, Instant> renewals = new ConcurrentHashMap<>();
     private final JobSuite suite;
-    
-    private boolean terminate = false;
+    private final boolean suiteHeartbeat;
+    private final ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> heartbeat;
     
     public JobHeartbeatGenerator(JobSuite suite) {
+        this(suite, false);
+    }
+    /**
+     * Creates a heartbeat generator.
+     * @param suite job suite
+     * @param suiteHeartbeat <code>true</code> to write a single
+     *        {@link JobSuiteHeartbeat} per interval instead of touching
+     *        every registered job status
+     */
+    public JobHeartbeatGenerator(JobSuite suite, boolean suiteHeartbeat) {
+        this(suite, suiteHeartbeat, null);
+    }
+    /**
+     * Creates a heartbeat generator.
+     * @param suite job suite
+     * @param suiteHeartbeat <code>true</code> to write a single
+     *        {@link JobSuiteHeartbeat} per interval instead of touching
+     *        every registered job status
+     * @param scheduler scheduler running heartbeats, or <code>null</code>
+     *        for the shared one
+     */
+    public JobHeartbeatGenerator(JobSuite suite, boolean suiteHeartbeat,
+            ScheduledExecutorService scheduler) {
         super();
         this.suite = suite;
+        this.suiteHeartbeat = suiteHeartbeat;
+        this.scheduler = scheduler == null ? SHARED_SCHEDULER : scheduler;
+    }
+
+    /**
+     * Gets the scheduler shared by heartbeats running on virtual
+     * threads.  Created on first use.
+     * @return shared virtual thread scheduler
+     */
+    /*default*/ static ScheduledExecutorService getVirtualScheduler() {
+        return VirtualSchedulerHolder.SCHEDULER;
+    }
+    private static final class VirtualSchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER =
+                Executors.newSingleThreadScheduledExecutor(
+                        JobThreads.newThreadFactory(
+                                "JobHeartbeatGenerator Thread", true));
     }
 
-    @Override
-    public void run() {
+    private void beat() {
         try {
-            while(!terminate) {
-                for (JobStatus status : statuses) {
-                    status.setLastActivity(suite.getJobSuiteStatusDAO().touch(
-                            status.getJobId()));
-                }
-                Sleeper.sleepMillis(HEARTBEAT_INTERVAL);
+            if (suiteHeartbeat) {
+                beatSuite();
+            } else {
+                beatJobs();
             }
-        } catch (IOException e) {
-            throw new JefException("Cannot update status heartbeat.", e);
+        } catch (IOException | RuntimeException e) {
+            // Keep beating: a failed renewal may succeed next time.
+            LOG.error("Cannot update status heartbeat.", e);
+        }
+    }
+    private void beatJobs() throws IOException {
+        JobStatusLease lease = suite.getStatusLease();
+        for (JobStatus status : statuses) {
+            String jobId = status.getJobId();
+            if (!lease.isRenewalDue(getLastRenewal(jobId))) {
+                continue;
+            }
+            status.setLastActivity(
+                    suite.getJobSuiteStatusStore().touch(jobId));
+            renewals.put(jobId, lease.now());
+            updateSegment(status);
+        }
+    }
+    // One write per interval, whatever the number of active jobs.
+    private void beatSuite() throws IOException {
+        JobStatusLease lease = suite.getStatusLease();
+        List<String> jobIds = new ArrayList<>();
+        boolean due = false;
+        for (JobStatus status : statuses) {
+            jobIds.add(status.getJobId());
+            due |= lease.isRenewalDue(getLastRenewal(status.getJobId()));
+        }
+        if (!due) {
+            return;
+        }
+        Instant now = lease.now();
+        for (JobStatus status : statuses) {
+            status.setLastActivity(now);
+            renewals.put(status.getJobId(), now);
+            updateSegment(status);
+        }
+        new JobSuiteHeartbeat(now, jobIds).write(suite.getStatusDir());
+    }
+    // A status write renews a lease as much as a heartbeat does.
+    private Instant getLastRenewal(String jobId) {
+        Instant renewal = renewals.get(jobId);
+        JobStatusWriter writer = suite.getStatusWriter();
+        Instant written = writer == null
+                ? null : writer.getLastWriteTime(jobId);
+        if (renewal == null || written != null && written.isAfter(renewal)) {
+            return written;
+        }
+        return renewal;
+    }
+    private void updateSegment(JobStatus status) {
+        JobStatusSegment segment = suite.getStatusSegment();
+        if (segment != null) {
+            segment.update(status);
         }
     }
 
@@ -58,15 +185,21 @@ public class JobHeartbeatGenerator extends Thread {
     }
     public void unregister(JobStatus status) {
         statuses.remove(status);
+        renewals.remove(status.getJobId());
     }
     
-    @Override
     public synchronized void start() {
-        terminate = false;
-        super.start();
+        if (heartbeat == null) {
+            heartbeat = scheduler.scheduleAtFixedRate(this::beat, 0,
+                    suite.getStatusLease().getInterval().toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
     }
     
-    public void terminate() {
-        terminate = true;
+    public synchronized void terminate() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
     }
 }
@@ -0,0 +1,352 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.event.JefEvent;
+import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.job.group.IJobGroup;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+
+/**
+ * <p>
+ * Stops the jobs of an executing job suite.  All jobs are flagged as
+ * stop requested right away, then each job is asked to stop only once
+ * all of its child jobs have ended (leaves first).  Stop requests are
+ * issued from a bounded pool of threads and the coordinator is notified
+ * as soon as a job execution ends, without polling.
+ * </p>
+ * <p>
+ * When a deadline is set and jobs are still running once it is reached,
+ * the threads executing them are interrupted.  Only jobs that are not
+ * job groups are interrupted, groups ending once their jobs have.
+ * Jobs still running after waiting for the deadline again are no longer
+ * waited for.  How long each running
+ * job took to end after being asked to stop is logged and available
+ * from {@link #getStopLatencies()}.
+ * </p>
+ * <p>
+ * A single job can also be stopped along with its child jobs
+ * (see {@link #stopJob(String)}), leaving other jobs running.
+ * Once stopped, it can be queued for execution again in the same run
+ * with {@link JobSuite#requeueJob(String)}.
+ * </p>
+ * @author Pascal Essiembre
+ */
+public class JobStopCoordinator {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobStopCoordinator.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 5;
+
+    private final JobSuite suite;
+    private final int maxThreads;
+    private final Duration deadline;
+
+    private final Map<String, RunningJob> runningJobs =
+            new ConcurrentHashMap<>();
+    private final Map<String, Duration> stopLatencies =
+            Collections.synchronizedMap(new LinkedHashMap<>());
+    private final ThreadFactory threadFactory;
+    private CompletableFuture<Void> stopped;
+
+    /**
+     * Creates a stop coordinator.
+     * @param suite job suite
+     * @param maxThreads maximum number of threads issuing stop requests
+     *        (zero or less for the number of available processors)
+     * @param deadline how long to wait for jobs to end before
+     *        interrupting them (<code>null</code> to wait indefinitely)
+     */
+    public JobStopCoordinator(
+            JobSuite suite, int maxThreads, Duration deadline) {
+        this(suite, maxThreads, deadline, false);
+    }
+    /**
+     * Creates a stop coordinator.
+     * @param suite job suite
+     * @param maxThreads maximum number of threads issuing stop requests
+     *        (zero or less for the number of available processors)
+     * @param deadline how long to wait for jobs to end before
+     *        interrupting them (<code>null</code> to wait indefinitely)
+     * @param virtualThreads <code>true</code> to issue stop requests
+     *        from virtual threads, if supported
+     */
+    public JobStopCoordinator(JobSuite suite, int maxThreads,
+            Duration deadline, boolean virtualThreads) {
+        super();
+        this.suite = suite;
+        this.maxThreads = maxThreads > 0
+                ? maxThreads : Runtime.getRuntime().availableProcessors();
+        this.deadline = deadline;
+        this.threadFactory = JobThreads.newThreadFactory(
+                "JobStopCoordinator Thread", virtualThreads);
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Whether stopping the suite was requested.
+     * @return <code>true</code> if stopping or stopped
+     */
+    public synchronized boolean isStopRequested() {
+        return stopped != null;
+    }
+
+    /**
+     * Gets how long each job took to end after it was asked to stop,
+     * in the order they ended.  Only jobs that were running are reported.
+     * @return stop latencies per job id
+     */
+    public Map<String, Duration> getStopLatencies() {
+        synchronized (stopLatencies) {
+            return Collections.unmodifiableMap(
+                    new LinkedHashMap<>(stopLatencies));
+        }
+    }
+
+    /**
+     * Stops the job suite.  Returns right away, stopping happening
+     * in background.  Invoking this method again has no effect.
+     * @return future completed once all jobs ended or were interrupted
+     */
+    public synchronized CompletableFuture<Void> stop() {
+        if (stopped != null) {
+            return stopped;
+        }
+        stopped = new CompletableFuture<>();
+        LOG.info("STOP request received.");
+        startStopping(suite.getRootJob(), stopped);
+        return stopped;
+    }
+
+    /**
+     * Stops a job and its child jobs, if any, leaving other jobs
+     * running.  Returns right away, stopping happening in background.
+     * Stopping the root job stops the suite.
+     * @param jobId identifier of the job to stop
+     * @return future completed once the job and its child jobs ended
+     *         or were interrupted
+     * @throws IllegalArgumentException no such job in this suite
+     */
+    public CompletableFuture<Void> stopJob(String jobId) {
+        IJob job = suite.getJob(jobId);
+        if (job == null) {
+            throw new IllegalArgumentException("No such job: " + jobId);
+        }
+        if (job == suite.getRootJob()) {
+            return stop();
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        LOG.info("STOP request received for job: {}", jobId);
+        startStopping(job, future);
+        return future;
+    }
+
+    private void startStopping(IJob job, CompletableFuture<Void> future) {
+        threadFactory.newThread(() -> doStop(job, future)).start();
+    }
+
+    private void doStop(IJob job, CompletableFuture<Void> future) {
+        try {
+            if (job == suite.getRootJob()) {
+                // Notify Suite Life Cycle listeners
+                suite.getEventManager().fire(new JefEvent.Builder(
+                        JefEvent.SUITE_STOPPING, suite).build());
+            }
+
+            // Flag every job before asking any of them to stop.
+            List<String> jobIds = new ArrayList<>();
+            flagStopRequested(job, jobIds);
+
+            ExecutorService pool = newPool();
+            try {
+                awaitStopped(stopLeavesFirst(job, pool), jobIds);
+            } finally {
+                pool.shutdown();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException e) {
+            LOG.error("Could not stop job: {}", job.getId(), e);
+        } finally {
+            future.complete(null);
+        }
+    }
+
+    private void awaitStopped(CompletableFuture<Void> all,
+            List<String> jobIds)
+                    throws InterruptedException, ExecutionException {
+        if (deadline == null) {
+            all.get();
+            return;
+        }
+        try {
+            all.get(deadline.toMillis(), TimeUnit.MILLISECONDS);
+            return;
+        } catch (TimeoutException e) {
+            interruptRunningJobs(jobIds);
+        }
+        try {
+            all.get(deadline.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            List<String> stillRunning = new ArrayList<>(jobIds);
+            stillRunning.retainAll(runningJobs.keySet());
+            LOG.warn("Jobs still running {} after being interrupted, "
+                    + "no longer waiting for them: {}",
+                    deadline, stillRunning);
+        }
+    }
+
+    private void flagStopRequested(IJob job, List<String> jobIds) {
+        JobStatus jobStatus = suite.getJobStatus(job);
+        jobStatus.setStopRequested(true);
+        jobIds.add(job.getId());
+        suite.getEventManager().fire(
+                new JefEvent.Builder(JefEvent.JOB_STOPPING, suite)
+                    .status(jobStatus)
+                    .build());
+        if (job instanceof IJobGroup) {
+            for (IJob child : ((IJobGroup) job).getJobs()) {
+                flagStopRequested(child, jobIds);
+            }
+        }
+    }
+
+    private CompletableFuture<Void> stopLeavesFirst(
+            IJob job, ExecutorService pool) {
+        List<CompletableFuture<Void>> children = new ArrayList<>();
+        if (job instanceof IJobGroup) {
+            for (IJob child : ((IJobGroup) job).getJobs()) {
+                children.add(stopLeavesFirst(child, pool));
+            }
+        }
+        return CompletableFuture.allOf(children.toArray(
+                new CompletableFuture<?>[children.size()]))
+                .thenComposeAsync(v -> stopJob(job), pool);
+    }
+
+    private CompletableFuture<Void> stopJob(IJob job) {
+        JobStatus status = suite.getJobStatus(job);
+        RunningJob running = runningJobs.get(job.getId());
+        long start = System.nanoTime();
+        job.stop(status, suite);
+        if (running == null) {
+            jobStopped(job, status);
+            return CompletableFuture.completedFuture(null);
+        }
+        return running.ended.thenRun(() -> {
+            Duration latency = Duration.ofNanos(System.nanoTime() - start);
+            stopLatencies.put(job.getId(), latency);
+            LOG.info("\"{}\" stopped in {} ms.",
+                    job.getId(), latency.toMillis());
+            jobStopped(job, status);
+        });
+    }
+
+    private void jobStopped(IJob job, JobStatus status) {
+        if (status.getState() == JobState.STOPPED) {
+            suite.getEventManager().fire(
+                    new JefEvent.Builder(JefEvent.JOB_STOPPED, suite)
+                        .status(status)
+                        .build());
+            if (job.getId().equals(suite.getRootJob().getId())) {
+                suite.getEventManager().fire(new JefEvent.Builder(
+                        JefEvent.SUITE_STOPPED, suite).build());
+            }
+        }
+    }
+
+    // Job groups are not interrupted: their thread waits for their
+    // jobs, and interrupting it would end them before their jobs.
+    private void interruptRunningJobs(List<String> jobIds) {
+        for (String jobId : jobIds) {
+            RunningJob running = runningJobs.get(jobId);
+            if (running != null
+                    && !(suite.getJob(jobId) instanceof IJobGroup)) {
+                LOG.warn("\"{}\" did not stop within {}, interrupting it.",
+                        jobId, deadline);
+                running.interrupt();
+            }
+        }
+    }
+
+    private ExecutorService newPool() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                maxThreads, maxThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /*default*/ void jobStarted(String jobId) {
+        runningJobs.put(jobId, new RunningJob(Thread.currentThread()));
+    }
+    /*default*/ void jobEnded(String jobId) {
+        RunningJob running = runningJobs.remove(jobId);
+        if (running != null) {
+            running.end();
+        }
+    }
+
+    private static class RunningJob {
+        private final Thread thread;
+        private final CompletableFuture<Void> ended =
+                new CompletableFuture<>();
+        // Once ended, the thread may be running another job.
+        private boolean threadReleased;
+        public RunningJob(Thread thread) {
+            super();
+            this.thread = thread;
+        }
+        private synchronized void interrupt() {
+            if (!threadReleased) {
+                thread.interrupt();
+            }
+        }
+        private void end() {
+            synchronized (this) {
+                threadReleased = true;
+            }
+            ended.complete(null);
+        }
+    }
+}
@@ -16,7 +16,6 @@ package com.norconex.jef5.suite;
 
 import static com.norconex.commons.lang.file.FileUtil.toSafeFileName;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -26,7 +25,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -34,6 +32,7 @@ import org.slf4j.LoggerFactory;
 
 import com.norconex.commons.lang.event.EventManager;
 import com.norconex.commons.lang.file.FileUtil;
+import com.norconex.commons.lang.xml.XML;
 import com.norconex.commons.lang.time.DateUtil;
 import com.norconex.jef5.JefException;
 import com.norconex.jef5.event.JefEvent;
@@ -44,10 +43,15 @@ import com.norconex.jef5.shutdown.IShutdownHook;
 import com.norconex.jef5.shutdown.ShutdownException;
 import com.norconex.jef5.shutdown.impl.FileShutdownHook;
 import com.norconex.jef5.status.IJobStatusVisitor;
+import com.norconex.jef5.status.JobHistoryCatalog;
 import com.norconex.jef5.status.JobState;
 import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusLease;
+import com.norconex.jef5.status.JobStatusSegment;
 import com.norconex.jef5.status.JobStatusUpdater;
+import com.norconex.jef5.status.JobStatusWriter;
 import com.norconex.jef5.status.JobSuiteStatus;
+import com.norconex.jef5.status.IJobSuiteStatusStore;
 import com.norconex.jef5.status.JobSuiteStatusDAO;
 
 
@@ -69,16 +73,24 @@ public final class JobSuite {
     public static final String STATUS_SUBDIR = "status";
     public static final String STATUS_BACKUP_SUBDIR = "backups/status";
     public static final String INDEX_FILENAME = "suite.index";
+    public static final String SEGMENT_FILENAME = "suite.segment";
+    public static final String HISTORY_FILENAME = "history.catalog";
+    public static final String LOCK_FILENAME = "suite.lock";
 
-    /** Associates job id with current thread. */
+    /**
+     * Associates job id with current thread. Not inherited, to keep
+     * creating threads cheap. See {@link #withRunningJobId(Runnable)}.
+     */
     private static final ThreadLocal<String> CURRENT_JOB_ID =
-            new InheritableThreadLocal<>();
+            new ThreadLocal<>();
 
     private final Map<String, IJob> jobs = new HashMap<>();
     private final IJob rootJob;
 //    private final JobSuiteConfig config;
     private final Path workdir;
     private final boolean backupDisabled;
+    private final JobSuiteStatusBackups statusBackups;
+    private final JobHistoryCatalog historyCatalog;
     //TODO rename JobEvent* to just Event*
 
     private final EventManager eventManager;
@@ -88,13 +100,23 @@ public final class JobSuite {
 //    private JobSessionFacade jobSessionFacade;
 //    private final IJobSessionStore jobSessionStore;
     private JobSuiteStatus suiteStatus;
-    private final JobSuiteStatusDAO suiteStatusDAO;
+    private final IJobSuiteStatusStore suiteStatusStore;
+    private final JobStatusWriter statusWriter;
+    private final JobStatusLease statusLease;
+    private final int statusSegmentSlots;
+    private JobStatusSegment statusSegment;
+    private JobSuiteLock suiteLock;
+    private final JobStopCoordinator stopCoordinator;
+    private final int maxJobThreads;
+    private final boolean virtualThreads;
+    private JobExecutor jobExecutor;
 
-    //TODO consider making configurable?
     //TODO have it optinally implement JefEventListener instead of
     // setup/destroy methods?  In case one wants to react to whatever
     // event.
-    IShutdownHook shutdownHook = new FileShutdownHook();
+    private final IShutdownHook shutdownHook;
+    // Null if disabled
+    private final JvmShutdownHook jvmShutdownHook;
 
     public JobSuite(final IJob rootJob) {
         this(rootJob, null, null);
@@ -122,15 +144,55 @@ public final class JobSuite {
         //TODO have a reset/clean method so a new execute can start fresh?
 
         this.workdir = resolveWorkdir(cfg.getWorkdir());
-        this.suiteStatusDAO =
-                new JobSuiteStatusDAO(rootJob.getId(), getStatusDir());
+        if (cfg.getStatusStoreFactory() != null) {
+            this.suiteStatusStore = Objects.requireNonNull(
+                    cfg.getStatusStoreFactory().create(
+                            rootJob.getId(), getStatusDir()),
+                    "Status store factory returned null.");
+        } else {
+            this.suiteStatusStore =
+                    new JobSuiteStatusDAO(rootJob.getId(), getStatusDir());
+        }
+        this.statusWriter = new JobStatusWriter(suiteStatusStore,
+                cfg.getStatusWriteInterval(),
+                cfg.getStatusWriteMinProgressDelta());
 //        try {
 //            this.suiteSession = JobSuiteStatus.getInstance(this);
 //        } catch (IOException e) {
 //            throw new JefException("Cannot create JEF suite session.", e);
 //        }
-        this.heartbeatGenerator = new JobHeartbeatGenerator(this);
+        this.statusLease = ObjectUtils.defaultIfNull(
+                cfg.getStatusLease(), JobStatusLease.DEFAULT);
+        this.statusWriter.setClock(statusLease.getClock());
+        if (suiteStatusStore instanceof JobSuiteStatusDAO) {
+            ((JobSuiteStatusDAO) suiteStatusStore).setClock(
+                    statusLease.getClock());
+        }
+        this.statusSegmentSlots = cfg.getStatusSegmentSlots();
+        this.shutdownHook = ObjectUtils.defaultIfNull(
+                cfg.getShutdownHook(), new FileShutdownHook());
+        this.virtualThreads = cfg.isVirtualThreads();
+        if (virtualThreads && !JobThreads.isVirtualThreadSupported()) {
+            LOG.warn("Virtual threads are not supported by this Java "
+                    + "version. Using regular threads.");
+        }
+        this.stopCoordinator = new JobStopCoordinator(this,
+                cfg.getStopThreads(), cfg.getStopDeadline(), virtualThreads);
+        this.maxJobThreads = cfg.getMaxJobThreads();
+        this.jvmShutdownHook = cfg.isJvmShutdownHook() ? new JvmShutdownHook(
+                this, cfg.getJvmShutdownTimeout()) : null;
+        this.heartbeatGenerator = new JobHeartbeatGenerator(
+                this, cfg.isSuiteHeartbeat(), virtualThreads
+                        && JobThreads.isVirtualThreadSupported()
+                                ? JobHeartbeatGenerator.getVirtualScheduler()
+                                : null);
         this.backupDisabled = cfg.isBackupDisabled();
+        this.statusBackups = new JobSuiteStatusBackups(
+                workdir.resolve(Paths.get(
+                        toSafeFileName(getId()), STATUS_BACKUP_SUBDIR)),
+                cfg.getBackupMaxAge(), cfg.getBackupMaxCount());
+        this.historyCatalog = new JobHistoryCatalog(
+                getHistoryCatalogFile(workdir, getId()), getId());
 
         accept((job, jobStatus) -> jobs.put(job.getId(), job));
 
@@ -177,18 +239,141 @@ public final class JobSuite {
         return statusDir.resolve(INDEX_FILENAME); // make it "suite.jef"?
     }
 
+    /**
+     * Gets the path to the catalog of past executions of a job suite.
+     * It is not moved to backups with job statuses, but is pruned
+     * according to the same retention settings.
+     * @param suiteWorkdir suite working directory
+     * @param suiteId suite id
+     * @return the history catalog file
+     * @see JobHistoryCatalog
+     */
+    public static Path getHistoryCatalogFile(
+            Path suiteWorkdir, String suiteId) {
+        return suiteWorkdir.resolve(Paths.get(
+                toSafeFileName(suiteId), HISTORY_FILENAME));
+    }
+
+    /**
+     * Gets the catalog of past executions of this suite.
+     * @return history catalog
+     */
+    public JobHistoryCatalog getHistoryCatalog() {
+        return historyCatalog;
+    }
+
+    public Path getStatusSegmentFile() {
+        return getStatusSegmentFile(getStatusDir());
+    }
+    /**
+     * Gets the path to the job suite memory-mapped status segment,
+     * present when enabled.
+     * @param statusDir suite working directory
+     * @return the segment file
+     * @see JobStatusSegment
+     */
+    public static Path getStatusSegmentFile(Path statusDir) {
+        return statusDir.resolve(SEGMENT_FILENAME);
+    }
+
+
+    public Path getLockFile() {
+        return getLockFile(getStatusDir());
+    }
+    /**
+     * Gets the path to the job suite lock file, locked for as long as
+     * the suite is executing. It sits next to the status directory so
+     * it is not moved to backups with job statuses.
+     * @param statusDir suite working directory
+     * @return the lock file
+     * @see JobSuiteLock
+     */
+    public static Path getLockFile(Path statusDir) {
+        return statusDir.resolveSibling(LOCK_FILENAME);
+    }
 
     public IJob getRootJob() {
         return rootJob;
     }
 
+    /**
+     * Gets a job of this suite.
+     * @param jobId job identifier
+     * @return the job or <code>null</code> if no such job in this suite
+     */
+    public IJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
     public Path getWorkdir() {
         return workdir;
     }
 
     // make package visibility?
+    public IJobSuiteStatusStore getJobSuiteStatusStore() {
+        return suiteStatusStore;
+    }
+
+    /**
+     * Gets the job suite status DAO.
+     * @return the status DAO, or <code>null</code> if statuses are
+     *         kept in another type of store
+     * @deprecated Use {@link #getJobSuiteStatusStore()}
+     */
+    @Deprecated
     public JobSuiteStatusDAO getJobSuiteStatusDAO() {
-        return suiteStatusDAO;
+        if (suiteStatusStore instanceof JobSuiteStatusDAO) {
+            return (JobSuiteStatusDAO) suiteStatusStore;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the liveness lease of this suite jobs.
+     * @return status lease
+     */
+    public JobStatusLease getStatusLease() {
+        return statusLease;
+    }
+
+    /**
+     * Gets the shutdown hook listening for stop requests.
+     * @return shutdown hook
+     */
+    public IShutdownHook getShutdownHook() {
+        return shutdownHook;
+    }
+
+    /**
+     * Gets the coordinator stopping this suite jobs on stop requests.
+     * @return stop coordinator
+     */
+    public JobStopCoordinator getStopCoordinator() {
+        return stopCoordinator;
+    }
+
+    /**
+     * Gets the executor shared by all job groups of this suite to run
+     * jobs concurrently.  Jobs can only be submitted to it while the
+     * suite is executing.
+     * @return job executor or <code>null</code> if never executed
+     * @see JobSuiteConfig#setMaxJobThreads(int)
+     */
+    public synchronized JobExecutor getJobExecutor() {
+        return jobExecutor;
+    }
+
+    /*default*/ JobStatusWriter getStatusWriter() {
+        return statusWriter;
+    }
+
+    /*default*/ JobSuiteStatusBackups getStatusBackups() {
+        return statusBackups;
+    }
+
+    // null if not enabled
+    /*default*/ JobStatusSegment getStatusSegment() {
+        return statusSegment;
     }
 
 
@@ -216,37 +401,94 @@ public final class JobSuite {
     }
 
     private boolean doExecute(boolean resumeIfIncomplete) throws IOException {
-        boolean success = false;
-
         LOG.info("Initialization...");
-//        this.jobSessionFacade = resolveJobSessionFacade(resumeIfIncomplete);
-        suiteStatus = resolveSuiteStatus(resumeIfIncomplete);
-
-        heartbeatGenerator.start();
+        try {
+            return doExecuteLocked(resumeIfIncomplete);
+        } finally {
+            if (suiteLock != null) {
+                suiteLock.close();
+                suiteLock = null;
+            }
+        }
+    }
+    private boolean doExecuteLocked(boolean resumeIfIncomplete)
+            throws IOException {
+        boolean success = false;
+        // What was set up so far, so only that is torn down.
+        boolean segmentCreated = false;
+        boolean heartbeatStarted = false;
+        boolean writerStarted = false;
+        boolean hookSetup = false;
+        boolean jvmHookRegistered = false;
+        JobExecutor executor = null;
+        try {
+//            this.jobSessionFacade =
+//                    resolveJobSessionFacade(resumeIfIncomplete);
+            suiteStatus = resolveSuiteStatus(resumeIfIncomplete);
+            if (statusSegmentSlots > 0) {
+                statusSegment = JobStatusSegment.create(
+                        getStatusSegmentFile(), statusSegmentSlots);
+                segmentCreated = true;
+                suiteStatus.accept(statusSegment::update);
+                statusWriter.setStatusSegment(statusSegment);
+            }
 
-        shutdownHook.setup(this);
-//        StopRequestMonitor stopMonitor = new StopRequestMonitor(this);
-//        stopMonitor.start();
+            heartbeatGenerator.start();
+            heartbeatStarted = true;
+            statusWriter.start();
+            writerStarted = true;
+
+            shutdownHook.setup(this);
+            hookSetup = true;
+            // Advertises how to reach the shutdown hook.
+            suiteStatus.toXML(getStatusIndex());
+            if (jvmShutdownHook != null) {
+                jvmShutdownHook.register();
+                jvmHookRegistered = true;
+            }
+//            StopRequestMonitor stopMonitor = new StopRequestMonitor(this);
+//            stopMonitor.start();
 
-        LOG.info("Starting execution.");
-        fire(JefEvent.SUITE_STARTED, null, this);
-        try {
+            LOG.info("Starting execution.");
+            fire(JefEvent.SUITE_STARTED, null, this);
+            executor = newJobExecutor();
             success = runJob(getRootJob());
         } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
 //            stopMonitor.stopMonitoring();
-            shutdownHook.destroy();
-            JobState jobState = suiteStatus.getRootStatus().getState();
+            if (hookSetup) {
+                shutdownHook.destroy();
+            }
+            if (jvmHookRegistered) {
+                jvmShutdownHook.unregister();
+            }
             if (success) {
+                JobState jobState = suiteStatus.getRootStatus().getState();
                 if (jobState == JobState.COMPLETED) {
                     fire(JefEvent.SUITE_COMPLETED, null, this);
                 } else if (jobState == JobState.UNCOMPLETED) {
                     fire(JefEvent.SUITE_TERMINATED_PREMATURALY, null, this);
-                } else {
+                } else if (jobState != JobState.STOPPED) {
+                    // SUITE_STOPPED is fired by the stop coordinator.
                     LOG.error("JobSuite ended but job state does not "
                             + "reflect completion: {}", jobState);
                 }
             }
-            heartbeatGenerator.terminate();
+            if (heartbeatStarted) {
+                heartbeatGenerator.terminate();
+            }
+            if (writerStarted) {
+                statusWriter.close();
+            }
+            if (executor != null) {
+                recordHistory(suiteStatus);
+            }
+            suiteStatusStore.close();
+            if (segmentCreated) {
+                statusSegment.close();
+            }
         }
         return success;
     }
@@ -265,76 +507,64 @@ public final class JobSuite {
 //        }
 //    }
 
+    private synchronized JobExecutor newJobExecutor() {
+        jobExecutor = new JobExecutor(getId(), maxJobThreads, virtualThreads);
+        return jobExecutor;
+    }
+
     private JobSuiteStatus resolveSuiteStatus(boolean resumeIfIncomplete)
             throws IOException {
 
-        // Use a a lock file while initializing to fix
+        // Use a a lock file to fix
         // https://github.com/Norconex/collector-http/issues/634
-
-        File indexFile = getStatusIndex().toFile();
-        File lockFile = new File(indexFile.getAbsolutePath() + ".lck");
-        // If file is not older than 5 seconds, we assume it is already running.
-        if (lockFile.exists()) {
-            if (FileUtils.isFileNewer(lockFile, System.currentTimeMillis()
-                    - JobHeartbeatGenerator.HEARTBEAT_INTERVAL)) {
-                throw new JefException("JOB SUITE ALREADY RUNNING. Wait for "
-                        + "previous execution to complete, or stop it.");
-            }
-            // Delete old lock file
-            lockFile.delete();
+        // Previous statuses are read before locking so they only
+        // show as running if their process is still holding the lock.
+        JobSuiteStatus status = JobSuiteStatus.getInstance(getStatusIndex());
+
+        suiteLock = JobSuiteLock.tryAcquire(getLockFile());
+        if (suiteLock == null) {
+            throw new JefException("JOB SUITE ALREADY RUNNING. Wait for "
+                    + "previous execution to complete, or stop it.");
+        }
+        if (status != null) {
+            // We hold the lock: whoever wrote these statuses is gone.
+            status.revokeLease();
         }
 
-        JobSuiteStatus status = null;
-//        FileUtils.touch(lockFile);
-//        try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rws");
-//                FileChannel channel = raf.getChannel()) {
-//
-//            FileLock lock = channel.tryLock();
-//            if (lock == null) {
-//                throw new JefException("JOB SUITE ALREADY STARTED. Wait for "
-//                        + "previous execution to complete, or stop it.");
-//            }
-
-            status = JobSuiteStatus.getInstance(getStatusIndex());
-    //        JobSessionFacade facade = JobSessionFacade.get(getSuiteIndexFile());
-
-            if (status != null) {
-                LOG.info("Previous execution detected.");
-                JobStatus rootStatus = status.getRootStatus();
-                JobState state = rootStatus.getState();
-                ensureValidExecutionState(state);
-                if (resumeIfIncomplete && !state.isOneOf(
-                        JobState.COMPLETED, JobState.UNCOMPLETED)) {
-                    LOG.info("Resuming from previous execution.");
-    //TODO fix this:                prepareStatusTreeForResume(statusTree);
+        if (status != null) {
+            LOG.info("Previous execution detected.");
+            JobStatus rootStatus = status.getRootStatus();
+            JobState state = rootStatus.getState();
+            ensureValidExecutionState(state);
+            if (resumeIfIncomplete && !state.isOneOf(
+                    JobState.COMPLETED, JobState.UNCOMPLETED)) {
+                LOG.info("Resuming from previous execution.");
+                //TODO fix this: prepareStatusTreeForResume(statusTree);
+            } else {
+                // Back-up so we can start clean
+                //TODO only backup if backup dir set...
+                if (backupDisabled) {
+                    LOG.info("Deleting previous execution status.");
+                    suiteStatusStore.delete();
                 } else {
-                    // Back-up so we can start clean
-                    //TODO only backup if backup dir set...
-                    if (backupDisabled) {
-                        LOG.info("Deleting previous execution status.");
-                        suiteStatusDAO.delete();
-                        //deleteSuite(facade);
-                    } else {
-                        LOG.info("Backing up previous execution status.");
-                        backupSuite(status);
-                    }
-                    status = null;
+                    LOG.info("Backing up previous execution status.");
+                    backupSuite(status);
                 }
-            } else {
-                LOG.info("No previous execution detected.");
+                status = null;
             }
-            if (status == null) {
-                status = JobSuiteStatus.getInstance(this);
-                status.toXML(getStatusIndex());
-    //            writeJobSuiteIndex();
-    //            facade = JobSessionFacade.get(getSuiteIndexFile());
-            }
-//            lock.release();
-//        } catch (OverlappingFileLockException e) {
-//            throw new JefException(
-//                    "JOB SUITE ALREADY STARTED by another process.");
-//        }
-//        lockFile.deleteOnExit();
+        } else {
+            LOG.info("No previous execution detected.");
+        }
+        boolean resume = status != null;
+        // From now on, statuses are kept in memory by this suite
+        // and only written to the store.
+        status = JobSuiteStatus.getInstance(this);
+        if (!resume) {
+            status.toXML(getStatusIndex());
+        } else {
+            // Previous stop requests no longer apply.
+            status.accept(js -> js.setStopRequested(false));
+        }
         return status;
     }
 
@@ -432,6 +662,27 @@ public final class JobSuite {
     public static void setCurrentJobId(String jobId) {
         CURRENT_JOB_ID.set(jobId);
     }
+    /**
+     * Wraps a task so it runs with the job identifier of the currently
+     * running job for the current thread (if any).  Job identifiers
+     * are not inherited by new threads.  Jobs executing tasks on their
+     * own threads should wrap them with this method if they rely on
+     * {@link #getRunningJobId()}.
+     * @param task the task to wrap
+     * @return wrapped task
+     */
+    public static Runnable withRunningJobId(Runnable task) {
+        String jobId = getRunningJobId();
+        return () -> {
+            String previousJobId = getRunningJobId();
+            setCurrentJobId(jobId);
+            try {
+                task.run();
+            } finally {
+                setCurrentJobId(previousJobId);
+            }
+        };
+    }
 
     public String getId() {
         IJob job = getRootJob();
@@ -487,9 +738,28 @@ public final class JobSuite {
             throw new IllegalArgumentException("Job id cannot be blank.");
         }
 
-        boolean success = false;
-        Thread.currentThread().setName(job.getId());
+        Thread thread = Thread.currentThread();
+        String previousJobId = getRunningJobId();
+        String previousName = thread.getName();
+        // Virtual threads are not named, the job id being cheaper to
+        // obtain with getRunningJobId().
+        boolean rename = !JobThreads.isVirtual(thread)
+                && !job.getId().equals(previousName);
+        if (rename) {
+            thread.setName(job.getId());
+        }
         setCurrentJobId(job.getId());
+        try {
+            return doRunJob(job);
+        } finally {
+            setCurrentJobId(previousJobId);
+            if (rename) {
+                thread.setName(previousName);
+            }
+        }
+    }
+    private boolean doRunJob(IJob job) {
+        boolean success = false;
 
         JobStatus jobStatus = suiteStatus.getStatus(job);
 
@@ -500,11 +770,12 @@ public final class JobSuite {
         }
 
         boolean errorHandled = false;
+        JobStatusUpdater statusUpdater = null;
         try {
             if (!jobStatus.isResumed()) {
-                jobStatus.setStartTime(Instant.now());
+                jobStatus.setStartTime(statusLease.now());
                 LOG.info("Running {}: START ({})",
-                        job.getId(), Instant.now());
+                        job.getId(), jobStatus.getStartTime());
                 fire(JefEvent.JOB_STARTED, jobStatus, job);
             } else {
                 LOG.info("Running {}: RESUME ({})",
@@ -514,11 +785,14 @@ public final class JobSuite {
                 jobStatus.setNote("");
             }
 
+            jobStatus.setLastActivity(statusLease.now());
             heartbeatGenerator.register(jobStatus);
+            stopCoordinator.jobStarted(job.getId());
             //--- Execute ---
-            job.execute(new JobStatusUpdater(jobStatus, js -> {
+            statusUpdater = new JobStatusUpdater(jobStatus, js -> {
+                js.setLastActivity(statusLease.now());
                 try {
-                    suiteStatusDAO.write(js);
+                    statusWriter.write(js);
                 } catch (IOException e) {
                     throw new JefException(
                             "Cannot persist status update for job: "
@@ -533,7 +807,8 @@ public final class JobSuite {
                         jobGroup.groupProgressed(js);
                     }
                 }
-            }), this);
+            });
+            job.execute(statusUpdater, this);
             success = true;
         } catch (Exception e) {
             success = false;
@@ -543,13 +818,19 @@ public final class JobSuite {
             errorHandled = true;
             //System.exit(-1)
         } finally {
+            // A requeued job gets a new updater for the same status.
+            if (statusUpdater != null) {
+                statusUpdater.detach();
+            }
             heartbeatGenerator.unregister(jobStatus);
-            jobStatus.setEndTime(Instant.now());
+            jobStatus.setEndTime(statusLease.now());
             try {
-                suiteStatusDAO.write(jobStatus);
+                // Final status is always written right away.
+                statusWriter.flush(jobStatus);
             } catch (IOException e) {
                 LOG.error("Cannot save final status.", e);
             }
+            stopCoordinator.jobEnded(job.getId());
             if (!success && !errorHandled) {
                 LOG.error("Fatal error occured in job: {}.", job.getId());
             }
@@ -577,9 +858,89 @@ public final class JobSuite {
 //                    "Could not create stop file: " + getSuiteStopFile());
 //        }
     }
+    /**
+     * Stops a job of this suite along with its child jobs, if any,
+     * leaving other jobs running.
+     * @param jobId identifier of the job to stop
+     * @throws ShutdownException could not stop the job
+     * @see #requeueJob(String)
+     */
+    public void stop(String jobId) throws ShutdownException {
+        shutdownHook.shutdown(getStatusIndex(), jobId);
+    }
+    /**
+     * Stops the job suite of the given index, using the shutdown hook
+     * advertised in the index (file-based if none).
+     * @param indexFile suite index file
+     * @throws ShutdownException could not stop the suite
+     */
     public static void stop(Path indexFile) throws ShutdownException {
-        //TODO if configurable, grab hook impl. from index file.
-        new FileShutdownHook().shutdown(indexFile);
+        newShutdownHook(indexFile).shutdown(indexFile);
+    }
+    /**
+     * Stops a job of the job suite of the given index, along with its
+     * child jobs, using the shutdown hook advertised in the index
+     * (file-based if none).
+     * @param indexFile suite index file
+     * @param jobId identifier of the job to stop
+     * @throws ShutdownException could not stop the job
+     */
+    public static void stop(Path indexFile, String jobId)
+            throws ShutdownException {
+        newShutdownHook(indexFile).shutdown(indexFile, jobId);
+    }
+
+    /**
+     * Queues a stopped job for execution again, in the same run, by the
+     * job group it belongs to.  The stop request of the job and its child
+     * jobs is cleared.  Only job groups supporting it can requeue jobs
+     * (see {@link IJobGroup#requeue(IJob, JobSuite)}), and only while
+     * they are executing.
+     * @param jobId identifier of the job to requeue
+     * @return <code>true</code> if the job was queued for execution
+     */
+    public boolean requeueJob(String jobId) {
+        IJob job = getJob(jobId);
+        JobStatus status = getJobStatus(jobId);
+        if (job == null || status == null
+                || status.getState() != JobState.STOPPED) {
+            LOG.info("Only stopped jobs can be requeued: {}", jobId);
+            return false;
+        }
+        JobStatus parentStatus = suiteStatus.getParentStatus(status);
+        if (parentStatus == null) {
+            LOG.info("The root job cannot be requeued: {}", jobId);
+            return false;
+        }
+        IJobGroup group = (IJobGroup) getJob(parentStatus.getJobId());
+        accept((j, js) -> js.setStopRequested(false), job, null);
+        if (!group.requeue(job, this)) {
+            accept((j, js) -> js.setStopRequested(true), job, null);
+            LOG.info("Job group \"{}\" could not requeue job: {}",
+                    group.getId(), jobId);
+            return false;
+        }
+        LOG.info("Job requeued: {}", jobId);
+        return true;
+    }
+    private static IShutdownHook newShutdownHook(Path indexFile)
+            throws ShutdownException {
+        String hookClass = null;
+        if (indexFile != null && indexFile.toFile().isFile()) {
+            hookClass = new XML(indexFile).getString(
+                    "shutdownHook/@class", null);
+        }
+        if (StringUtils.isBlank(hookClass)) {
+            return new FileShutdownHook();
+        }
+        try {
+            // Type checked before anything gets instantiated.
+            return Class.forName(hookClass).asSubclass(IShutdownHook.class)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new ShutdownException(
+                    "Cannot create shutdown hook: " + hookClass, e);
+        }
     }
 
 
@@ -644,8 +1005,34 @@ public final class JobSuite {
         }
     }
 
+    private void recordHistory(JobSuiteStatus suiteStatus) {
+        try {
+            historyCatalog.record(suiteStatus);
+        } catch (IOException e) {
+            LOG.error("Could not record suite execution history.", e);
+        }
+    }
+
+    private void pruneHistory() {
+        try {
+            historyCatalog.prune(statusBackups.getMaxAge(),
+                    statusBackups.getMaxCount());
+        } catch (IOException e) {
+            LOG.error("Could not prune suite execution history.", e);
+        }
+    }
+
     private void backupSuite(JobSuiteStatus suiteStatus) { // throws IOException {
         JobStatus jobStatus = suiteStatus.getRootStatus();
+        // Runs that did not end normally (e.g., killed) were not recorded.
+        try {
+            Instant runStart = jobStatus.getSessionStartTime();
+            if (runStart != null && !historyCatalog.isRecorded(runStart)) {
+                recordHistory(suiteStatus);
+            }
+        } catch (IOException e) {
+            LOG.error("Could not read suite execution history.", e);
+        }
         Instant backupDate = jobStatus.getEndTime();
         if (backupDate == null) {
             backupDate = jobStatus.getLastActivity();
@@ -654,7 +1041,11 @@ public final class JobSuite {
             backupDate = Instant.now();
         }
         try {
-            suiteStatusDAO.backup(getStatusBackupDir(backupDate));
+            // Fast move, archived in background.
+            statusBackups.backup(suiteStatusStore, backupDate);
+
+            // History kept as long as status backups.
+            pruneHistory();
 
 //            // Backup status files
 //            jobSessionStore.backup(getId(), backupDate);
@@ -15,6 +15,7 @@
 package com.norconex.jef5.suite;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -25,14 +26,41 @@ import com.norconex.commons.lang.event.Event;
 import com.norconex.commons.lang.event.IEventListener;
 import com.norconex.commons.lang.xml.IXMLConfigurable;
 import com.norconex.commons.lang.xml.XML;
+import com.norconex.jef5.shutdown.IShutdownHook;
+import com.norconex.jef5.shutdown.impl.FileShutdownHook;
+import com.norconex.jef5.shutdown.impl.JmxShutdownHook;
+import com.norconex.jef5.shutdown.impl.SocketShutdownHook;
+import com.norconex.jef5.status.IJobSuiteStatusStoreFactory;
+import com.norconex.jef5.status.JobStatusLease;
+import com.norconex.jef5.status.JobStatusSegment;
+import com.norconex.jef5.status.JobSuiteHeartbeat;
+import com.norconex.jef5.status.JobSuiteStatusDAO;
 
 //TODO really have a config still??? given it contains so little, shall
 // we move these settings directly on JobSuite? Else, make IXMLConfigurable?
 
 public class JobSuiteConfig implements IXMLConfigurable {
 
+    public static final Duration DEFAULT_JVM_SHUTDOWN_TIMEOUT =
+            Duration.ofSeconds(10);
+
     private Path workdir;
     private boolean backupDisabled;
+    private Duration backupMaxAge;
+    private int backupMaxCount;
+    private Duration statusWriteInterval;
+    private double statusWriteMinProgressDelta;
+    private IJobSuiteStatusStoreFactory statusStoreFactory;
+    private int statusSegmentSlots;
+    private boolean suiteHeartbeat;
+    private JobStatusLease statusLease;
+    private IShutdownHook shutdownHook;
+    private int maxJobThreads;
+    private boolean virtualThreads;
+    private int stopThreads;
+    private Duration stopDeadline;
+    private boolean jvmShutdownHook;
+    private Duration jvmShutdownTimeout = DEFAULT_JVM_SHUTDOWN_TIMEOUT;
     private final List<IEventListener<Event>> eventListeners =
             new ArrayList<>();
 
@@ -54,6 +82,320 @@ public class JobSuiteConfig implements IXMLConfigurable {
         this.backupDisabled = backupDisabled;
     }
 
+    /**
+     * Gets how long status backups are kept. Default is <code>null</code>
+     * (no age limit).
+     * @return maximum backup age or <code>null</code>
+     */
+    public Duration getBackupMaxAge() {
+        return backupMaxAge;
+    }
+    /**
+     * Sets how long status backups are kept. Older backups are deleted
+     * in background after a new backup is created. Suite history runs
+     * older than this are dropped from the history catalog at the same
+     * time.
+     * @param backupMaxAge maximum backup age, or <code>null</code> for
+     *        no age limit
+     */
+    public void setBackupMaxAge(Duration backupMaxAge) {
+        this.backupMaxAge = backupMaxAge;
+    }
+
+    /**
+     * Gets the maximum number of status backups kept. Default is zero
+     * (no limit).
+     * @return maximum number of backups
+     */
+    public int getBackupMaxCount() {
+        return backupMaxCount;
+    }
+    /**
+     * Sets the maximum number of status backups kept. The oldest backups
+     * are deleted in background after a new backup is created. The
+     * history catalog keeps the same number of most recent runs.
+     * @param backupMaxCount maximum number of backups, or zero for
+     *        no limit
+     */
+    public void setBackupMaxCount(int backupMaxCount) {
+        this.backupMaxCount = backupMaxCount;
+    }
+
+    /**
+     * Gets the maximum time a job status update can be held in memory
+     * before being written (write-behind).  Only the latest update of
+     * a job is written.  Default is <code>null</code>, meaning every
+     * update is written right away by the job thread.
+     * @return status write interval or <code>null</code>
+     */
+    public Duration getStatusWriteInterval() {
+        return statusWriteInterval;
+    }
+    /**
+     * Sets the maximum time a job status update can be held in memory
+     * before being written (write-behind).  Only the latest update of
+     * a job is written.  The final status of a job is always written
+     * right away.
+     * @param statusWriteInterval status write interval, or
+     *        <code>null</code> to write every update right away
+     */
+    public void setStatusWriteInterval(Duration statusWriteInterval) {
+        this.statusWriteInterval = statusWriteInterval;
+    }
+
+    /**
+     * Gets the minimum job progress change since a job status was last
+     * written that triggers a write without waiting for the
+     * status write interval to elapse.  Only applies to write-behind.
+     * Default is zero (only the interval is considered).
+     * @return minimum progress delta
+     */
+    public double getStatusWriteMinProgressDelta() {
+        return statusWriteMinProgressDelta;
+    }
+    /**
+     * Sets the minimum job progress change since a job status was last
+     * written that triggers a write without waiting for the
+     * status write interval to elapse.  Only applies to write-behind.
+     * @param statusWriteMinProgressDelta minimum progress delta
+     *        (e.g., 0.05 for 5%)
+     */
+    public void setStatusWriteMinProgressDelta(
+            double statusWriteMinProgressDelta) {
+        this.statusWriteMinProgressDelta = statusWriteMinProgressDelta;
+    }
+
+    /**
+     * Gets the factory creating the store persisting job statuses.
+     * Default is <code>null</code>, meaning statuses are written to one
+     * file per job (see {@link JobSuiteStatusDAO}).
+     * @return status store factory or <code>null</code>
+     */
+    public IJobSuiteStatusStoreFactory getStatusStoreFactory() {
+        return statusStoreFactory;
+    }
+    /**
+     * Sets the factory creating the store persisting job statuses
+     * (e.g., <code>JournalJobSuiteStatusStore::new</code>).
+     * @param statusStoreFactory status store factory, or
+     *        <code>null</code> to write statuses to one file per job
+     */
+    public void setStatusStoreFactory(
+            IJobSuiteStatusStoreFactory statusStoreFactory) {
+        this.statusStoreFactory = statusStoreFactory;
+    }
+
+    /**
+     * Gets the number of job slots of the memory-mapped status segment
+     * external processes can read job statuses from.
+     * Default is zero, meaning no status segment is created.
+     * @return number of job slots
+     * @see JobStatusSegment
+     */
+    public int getStatusSegmentSlots() {
+        return statusSegmentSlots;
+    }
+    /**
+     * Sets the number of job slots of the memory-mapped status segment
+     * external processes can read job statuses from. It should be at
+     * least the number of jobs in the suite (each slot takes 256 bytes).
+     * @param statusSegmentSlots number of job slots, or zero to not
+     *        create a status segment
+     * @see JobStatusSegment
+     */
+    public void setStatusSegmentSlots(int statusSegmentSlots) {
+        this.statusSegmentSlots = statusSegmentSlots;
+    }
+
+    /**
+     * Gets whether the suite writes a single heartbeat record listing
+     * its active jobs instead of touching each active job status.
+     * Default is <code>false</code>.
+     * @return <code>true</code> if writing a single suite heartbeat
+     * @see JobSuiteHeartbeat
+     */
+    public boolean isSuiteHeartbeat() {
+        return suiteHeartbeat;
+    }
+    /**
+     * Sets whether the suite writes a single heartbeat record listing
+     * its active jobs instead of touching each active job status.
+     * Heartbeat I/O then remains the same regardless of how many jobs
+     * run concurrently.
+     * @param suiteHeartbeat <code>true</code> to write a single suite
+     *        heartbeat
+     * @see JobSuiteHeartbeat
+     */
+    public void setSuiteHeartbeat(boolean suiteHeartbeat) {
+        this.suiteHeartbeat = suiteHeartbeat;
+    }
+
+    /**
+     * Gets the liveness lease of running jobs (renewal interval, grace
+     * period and clock). Default is <code>null</code>, meaning
+     * {@link JobStatusLease#DEFAULT} is used.
+     * @return status lease or <code>null</code>
+     */
+    public JobStatusLease getStatusLease() {
+        return statusLease;
+    }
+    /**
+     * Sets the liveness lease of running jobs (renewal interval, grace
+     * period and clock). A longer grace period avoids jobs being
+     * wrongly reported as aborted on slow file systems, while a shorter
+     * interval detects stopped jobs sooner.
+     * @param statusLease status lease, or <code>null</code> for the
+     *        default one
+     */
+    public void setStatusLease(JobStatusLease statusLease) {
+        this.statusLease = statusLease;
+    }
+
+    /**
+     * Gets the shutdown hook listening for stop requests.
+     * Default is <code>null</code>, meaning a {@link FileShutdownHook}
+     * is used.
+     * @return shutdown hook or <code>null</code>
+     */
+    public IShutdownHook getShutdownHook() {
+        return shutdownHook;
+    }
+    /**
+     * Sets the shutdown hook listening for stop requests (e.g.,
+     * {@link SocketShutdownHook} or {@link JmxShutdownHook}).  How to
+     * reach it is recorded in the suite index, so
+     * {@link JobSuite#stop(Path)} picks the right one.
+     * @param shutdownHook shutdown hook, or <code>null</code> for
+     *        a {@link FileShutdownHook}
+     */
+    public void setShutdownHook(IShutdownHook shutdownHook) {
+        this.shutdownHook = shutdownHook;
+    }
+
+    /**
+     * Gets the maximum number of jobs executing at once in the whole
+     * suite, across all job groups.  Threads of nested groups waiting for
+     * their child jobs to end are not counted.  Default is zero, meaning
+     * no limit other than the maximum number of threads of each group.
+     * @return maximum number of job threads
+     * @see JobExecutor
+     */
+    public int getMaxJobThreads() {
+        return maxJobThreads;
+    }
+    /**
+     * Sets the maximum number of jobs executing at once in the whole
+     * suite, across all job groups.
+     * @param maxJobThreads maximum number of job threads, or zero for
+     *        no limit
+     * @see JobExecutor
+     */
+    public void setMaxJobThreads(int maxJobThreads) {
+        this.maxJobThreads = maxJobThreads;
+    }
+
+    /**
+     * Gets whether jobs of asynchronous job groups, heartbeats and
+     * stop requests run on virtual threads, which suits I/O-bound jobs
+     * best.  Requires Java 21 or higher, regular threads being used
+     * otherwise.  Default is <code>false</code>.
+     * @return <code>true</code> if using virtual threads
+     * @see JobThreads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+    /**
+     * Sets whether jobs of asynchronous job groups, heartbeats and
+     * stop requests run on virtual threads.
+     * @param virtualThreads <code>true</code> to use virtual threads
+     * @see JobThreads
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Gets the maximum number of threads used to ask jobs to stop.
+     * Default is zero, meaning the number of available processors.
+     * @return maximum number of stop threads
+     * @see JobStopCoordinator
+     */
+    public int getStopThreads() {
+        return stopThreads;
+    }
+    /**
+     * Sets the maximum number of threads used to ask jobs to stop.
+     * @param stopThreads maximum number of stop threads, or zero for
+     *        the number of available processors
+     * @see JobStopCoordinator
+     */
+    public void setStopThreads(int stopThreads) {
+        this.stopThreads = stopThreads;
+    }
+
+    /**
+     * Gets how long jobs have to end once asked to stop, before the
+     * threads executing them are interrupted.  Default is
+     * <code>null</code> (jobs are never interrupted).
+     * @return stop deadline or <code>null</code>
+     * @see JobStopCoordinator
+     */
+    public Duration getStopDeadline() {
+        return stopDeadline;
+    }
+    /**
+     * Sets how long jobs have to end once asked to stop, before the
+     * threads executing them are interrupted.
+     * @param stopDeadline stop deadline, or <code>null</code> to never
+     *        interrupt jobs
+     * @see JobStopCoordinator
+     */
+    public void setStopDeadline(Duration stopDeadline) {
+        this.stopDeadline = stopDeadline;
+    }
+
+    /**
+     * Gets whether a JVM shutdown hook is registered while the suite
+     * executes, stopping jobs and saving their statuses when the JVM is
+     * terminated.  Default is <code>false</code>.
+     * @return <code>true</code> if a JVM shutdown hook is registered
+     */
+    public boolean isJvmShutdownHook() {
+        return jvmShutdownHook;
+    }
+    /**
+     * Sets whether a JVM shutdown hook is registered while the suite
+     * executes, stopping jobs and saving their statuses when the JVM is
+     * terminated.
+     * @param jvmShutdownHook <code>true</code> to register a JVM shutdown
+     *        hook
+     */
+    public void setJvmShutdownHook(boolean jvmShutdownHook) {
+        this.jvmShutdownHook = jvmShutdownHook;
+    }
+
+    /**
+     * Gets how long the JVM shutdown hook waits for jobs to stop before
+     * recording those still running as stopped.  Default is
+     * 10 seconds.
+     * @return JVM shutdown timeout
+     */
+    public Duration getJvmShutdownTimeout() {
+        return jvmShutdownTimeout;
+    }
+    /**
+     * Sets how long the JVM shutdown hook waits for jobs to stop before
+     * recording those still running as stopped.  Keep it short enough
+     * for the process to end before being forcibly killed.
+     * @param jvmShutdownTimeout JVM shutdown timeout, or <code>null</code>
+     *        for the default
+     */
+    public void setJvmShutdownTimeout(Duration jvmShutdownTimeout) {
+        this.jvmShutdownTimeout = jvmShutdownTimeout == null
+                ? DEFAULT_JVM_SHUTDOWN_TIMEOUT : jvmShutdownTimeout;
+    }
+
     public List<IEventListener<Event>> getEventListeners() {
         return Collections.unmodifiableList(eventListeners);
     }
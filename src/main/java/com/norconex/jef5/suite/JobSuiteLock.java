@@ -0,0 +1,183 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Operating system lock held on a job suite lock file for the lifetime
+ * of a job suite execution. Only one process can execute a given job
+ * suite at once, and the lock is released by the operating system as
+ * soon as the process dies, however it ends.
+ * </p>
+ * <p>
+ * Other processes can probe the lock with {@link #isLocked(Path)} to
+ * find out right away whether a suite process is still alive, without
+ * relying on activity timeouts.  The lock file itself is never deleted,
+ * so a lock file that is not locked means the last execution is over.
+ * </p>
+ * <p>
+ * Java offers no way to test a file lock without taking it, so a probe
+ * holds the lock for the brief moment it takes to test it.  To not
+ * mistake a probe for a running suite, {@link #tryAcquire(Path)} tries
+ * again a few times before giving up.
+ * </p>
+ * @author Pascal Essiembre
+ */
+public final class JobSuiteLock implements Closeable {
+
+    // Locks held by this JVM. Probing them with a new channel would
+    // release them on some systems when that channel is closed.
+    private static final Set<Path> HELD_LOCKS =
+            ConcurrentHashMap.newKeySet();
+
+    // Probes only hold the lock for microseconds.
+    private static final int ACQUIRE_ATTEMPTS = 5;
+    private static final long ACQUIRE_RETRY_DELAY_MILLIS = 20;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    private JobSuiteLock(Path file, FileChannel channel, FileLock lock) {
+        super();
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Acquires the lock on the given file, creating it if needed.
+     * If locked by another process, tries again a few times in case
+     * it is only being probed.
+     * @param lockFile lock file
+     * @return the lock, or <code>null</code> if already held by this
+     *         or another process
+     * @throws IOException could not open the lock file
+     */
+    public static JobSuiteLock tryAcquire(Path lockFile) throws IOException {
+        Path key = toKey(lockFile);
+        if (!HELD_LOCKS.add(key)) {
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(lockFile.toAbsolutePath().getParent());
+            channel = FileChannel.open(lockFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = tryLock(channel);
+            for (int i = 1; lock == null && i < ACQUIRE_ATTEMPTS
+                    && pauseBeforeRetry(); i++) {
+                lock = tryLock(channel);
+            }
+            if (lock == null) {
+                channel.close();
+                HELD_LOCKS.remove(key);
+                return null;
+            }
+            return new JobSuiteLock(key, channel, lock);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            HELD_LOCKS.remove(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Whether the given lock file is currently locked by a running job
+     * suite, in this or another process.  When not held by this process,
+     * the lock is briefly taken to find out (see class documentation).
+     * @param lockFile lock file
+     * @return <code>true</code> if locked, <code>false</code> if not
+     *         locked or the file does not exist
+     * @throws IOException could not probe the lock file
+     */
+    public static boolean isLocked(Path lockFile) throws IOException {
+        if (HELD_LOCKS.contains(toKey(lockFile))) {
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(
+                lockFile, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+    public boolean isValid() {
+        return lock.isValid();
+    }
+
+    /**
+     * Releases the lock. The lock file is kept.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (lock.isValid()) {
+                lock.release();
+            }
+        } finally {
+            channel.close();
+            HELD_LOCKS.remove(file);
+        }
+    }
+
+    // A probe from this JVM overlaps instead of holding the lock.
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static boolean pauseBeforeRetry() {
+        try {
+            Thread.sleep(ACQUIRE_RETRY_DELAY_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static Path toKey(Path lockFile) {
+        return lockFile.toAbsolutePath().normalize();
+    }
+}
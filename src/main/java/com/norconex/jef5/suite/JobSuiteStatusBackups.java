@@ -0,0 +1,320 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.status.IJobSuiteStatusStore;
+
+/**
+ * <p>
+ * Backs up job suite statuses without delaying suite execution.
+ * Statuses are first moved (renamed) to a staging directory of their own,
+ * then compressed in background to a single zip archive per backup, under
+ * <code>&lt;backupDir&gt;/yyyy/MM/dd/HH-mm-ss.zip</code>.
+ * Each staging directory is locked until archived, so it is never
+ * archived twice, even by another process.
+ * Retention policies are applied in background as well, once
+ * archives are created.
+ * </p>
+ * <p>
+ * Backups staged but not archived (e.g., because the JVM was killed) are
+ * archived with the next backup.
+ * </p>
+ * @author Pascal Essiembre
+ */
+/*default*/ final class JobSuiteStatusBackups {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobSuiteStatusBackups.class);
+
+    /*default*/ static final String STAGING_SUBDIR = ".staging";
+    private static final String ARCHIVE_EXTENSION = ".zip";
+    private static final String LOCK_EXTENSION = ".lock";
+    private static final DateTimeFormatter STAGING_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
+                    .withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter ARCHIVE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy/MM/dd/HH-mm-ss")
+                    .withZone(ZoneId.systemDefault());
+
+    private final Path backupDir;
+    private final Duration maxAge;
+    private final int maxCount;
+    // Single thread, only alive while there is work to do. A daemon so
+    // it never delays JVM exit: what is left is archived next time.
+    private final ThreadPoolExecutor executor;
+    // Last archiving scheduled. Archiving runs in order.
+    private volatile Future<?> archiving;
+
+    /**
+     * Creates suite status backups.
+     * @param backupDir directory where to store backups
+     * @param maxAge maximum age of backups, or <code>null</code>
+     * @param maxCount maximum number of backups, or zero
+     */
+    /*default*/ JobSuiteStatusBackups(
+            Path backupDir, Duration maxAge, int maxCount) {
+        super();
+        this.backupDir = backupDir;
+        this.maxAge = maxAge;
+        this.maxCount = maxCount;
+        this.executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "JobSuite Backup Thread");
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /*default*/ Duration getMaxAge() {
+        return maxAge;
+    }
+    /*default*/ int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Moves statuses to the staging directory and schedules their
+     * archiving.
+     * @param store status store to backup
+     * @param backupDate date associated with the backup
+     * @throws IOException could not move statuses
+     */
+    /*default*/ void backup(IJobSuiteStatusStore store, Instant backupDate)
+            throws IOException {
+        Path stagingDir = backupDir.resolve(STAGING_SUBDIR);
+        Files.createDirectories(stagingDir);
+        Path dir = stagingDir.resolve(STAGING_FORMAT.format(backupDate)
+                + "_" + UUID.randomUUID());
+        JobSuiteLock lock = JobSuiteLock.tryAcquire(toLockFile(dir));
+        if (lock == null) {
+            throw new IOException("Staging directory already locked: " + dir);
+        }
+        try {
+            store.backup(dir);
+        } catch (IOException | RuntimeException e) {
+            release(dir, lock);
+            throw e;
+        }
+        archiving = executor.submit(() -> archiveStaged(dir, lock));
+    }
+
+    /**
+     * Waits for scheduled archiving to complete.
+     * @param timeout maximum time to wait
+     * @return <code>true</code> if completed
+     * @throws InterruptedException interrupted while waiting
+     */
+    /*default*/ boolean awaitArchiving(Duration timeout)
+            throws InterruptedException {
+        Future<?> last = archiving;
+        if (last == null) {
+            return true;
+        }
+        try {
+            last.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            LOG.error("Status backup archiving failed.", e.getCause());
+        }
+        return true;
+    }
+
+    private void archiveStaged(Path stagedDir, JobSuiteLock stagedLock) {
+        try {
+            archive(stagedDir);
+        } catch (IOException e) {
+            LOG.error("Cannot archive status backup: {}", stagedDir, e);
+        } finally {
+            release(stagedDir, stagedLock);
+        }
+        archiveLeftovers();
+        try {
+            applyRetention();
+        } catch (IOException e) {
+            LOG.error("Cannot apply status backup retention in: {}",
+                    backupDir, e);
+        }
+    }
+
+    // Archives what other backups staged but did not archive, unless
+    // they are still at it.
+    private void archiveLeftovers() {
+        Path stagingDir = backupDir.resolve(STAGING_SUBDIR);
+        List<Path> dirs = new ArrayList<>();
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(stagingDir, Files::isDirectory)) {
+            stream.forEach(dirs::add);
+        } catch (IOException e) {
+            LOG.error("Cannot list staged status backups: {}", stagingDir, e);
+            return;
+        }
+        dirs.sort(null);
+        for (Path dir : dirs) {
+            JobSuiteLock lock = null;
+            try {
+                lock = JobSuiteLock.tryAcquire(toLockFile(dir));
+                // Archived in the meantime if gone.
+                if (lock != null && Files.isDirectory(dir)) {
+                    archive(dir);
+                }
+            } catch (IOException e) {
+                LOG.error("Cannot archive status backup: {}", dir, e);
+            } finally {
+                if (lock != null) {
+                    release(dir, lock);
+                }
+            }
+        }
+    }
+
+    private static void release(Path stagedDir, JobSuiteLock lock) {
+        try {
+            lock.close();
+            Files.deleteIfExists(toLockFile(stagedDir));
+        } catch (IOException e) {
+            LOG.debug("Could not release staged backup lock: {}",
+                    lock.getFile(), e);
+        }
+    }
+
+    private static Path toLockFile(Path stagedDir) {
+        return stagedDir.resolveSibling(
+                stagedDir.getFileName() + LOCK_EXTENSION);
+    }
+
+    private void archive(Path dir) throws IOException {
+        Instant date = toBackupDate(dir);
+        String name = ARCHIVE_FORMAT.format(date);
+        Path archive = backupDir.resolve(name + ARCHIVE_EXTENSION);
+        int cnt = 1;
+        while (Files.exists(archive)) {
+            cnt++;
+            archive = backupDir.resolve(name + "_" + cnt + ARCHIVE_EXTENSION);
+        }
+        Files.createDirectories(archive.getParent());
+        Path tmpArchive = archive.resolveSibling(
+                "." + archive.getFileName() + ".tmp");
+        LOG.debug("Archiving {} to {}", dir, archive);
+        try (ZipOutputStream zip =
+                new ZipOutputStream(Files.newOutputStream(tmpArchive));
+                Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.filter(Files::isRegularFile)
+                    .collect(Collectors.toList())) {
+                String entryName = dir.relativize(file).toString()
+                        .replace(file.getFileSystem().getSeparator(), "/");
+                zip.putNextEntry(new ZipEntry(entryName));
+                Files.copy(file, (OutputStream) zip);
+                zip.closeEntry();
+            }
+        }
+        // Age is measured from the backup date.
+        Files.setLastModifiedTime(tmpArchive, FileTime.from(date));
+        Files.move(tmpArchive, archive, StandardCopyOption.ATOMIC_MOVE);
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    private void applyRetention() throws IOException {
+        if (maxAge == null && maxCount <= 0) {
+            return;
+        }
+        List<Path> archives;
+        try (Stream<Path> files = Files.walk(backupDir)) {
+            archives = files.filter(f -> f.getFileName().toString()
+                    .endsWith(ARCHIVE_EXTENSION) && Files.isRegularFile(f))
+                    .collect(Collectors.toList());
+        }
+        // Newest first
+        archives.sort(Comparator.comparing(
+                JobSuiteStatusBackups::lastModified).thenComparing(
+                        Path::toString).reversed());
+        Instant oldest = maxAge == null ? null : Instant.now().minus(maxAge);
+        for (int i = 0; i < archives.size(); i++) {
+            Path archive = archives.get(i);
+            if ((maxCount > 0 && i >= maxCount) || (oldest != null
+                    && lastModified(archive).isBefore(oldest))) {
+                LOG.debug("Deleting expired status backup: {}", archive);
+                Files.deleteIfExists(archive);
+                deleteEmptyParents(archive);
+            }
+        }
+    }
+
+    private void deleteEmptyParents(Path file) throws IOException {
+        Path dir = file.getParent();
+        while (dir != null && !dir.equals(backupDir)
+                && dir.startsWith(backupDir)) {
+            try (DirectoryStream<Path> stream =
+                    Files.newDirectoryStream(dir)) {
+                if (stream.iterator().hasNext()) {
+                    return;
+                }
+            }
+            Files.delete(dir);
+            dir = dir.getParent();
+        }
+    }
+
+    private static Instant lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant();
+        } catch (IOException e) {
+            return Instant.EPOCH;
+        }
+    }
+
+    private static Instant toBackupDate(Path stagedDir) {
+        String name = stagedDir.getFileName().toString();
+        try {
+            return STAGING_FORMAT.parse(name.replaceFirst("_.*$", ""),
+                    Instant::from);
+        } catch (DateTimeParseException e) {
+            return lastModified(stagedDir);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.norconex.jef5.JefException;
+
+/**
+ * <p>
+ * Creates the threads of a job suite, either regular daemon threads or
+ * virtual threads.  Virtual threads are only available when running on
+ * a Java version supporting them (Java 21 or higher).  They are
+ * obtained by reflection so JEF still runs on older versions,
+ * creating regular threads instead.
+ * </p>
+ * @author Pascal Essiembre
+ * @see JobSuiteConfig#setVirtualThreads(boolean)
+ */
+public final class JobThreads {
+
+    // Thread#isVirtual(), or null if not supported.
+    private static final MethodHandle IS_VIRTUAL;
+    // Thread#ofVirtual(), Thread.Builder#name(String, long), and
+    // Thread.Builder#factory(), or null if not supported.
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle BUILDER_NAME;
+    private static final MethodHandle BUILDER_FACTORY;
+    static {
+        MethodHandle isVirtual = null;
+        MethodHandle ofVirtual = null;
+        MethodHandle builderName = null;
+        MethodHandle builderFactory = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            isVirtual = lookup.findVirtual(Thread.class, "isVirtual",
+                    MethodType.methodType(boolean.class));
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual",
+                    MethodType.methodType(Class.forName(
+                            "java.lang.Thread$Builder$OfVirtual")))
+                    .asType(MethodType.methodType(Object.class));
+            builderName = lookup.findVirtual(builder, "name",
+                    MethodType.methodType(builder, String.class, long.class))
+                    .asType(MethodType.methodType(Object.class,
+                            Object.class, String.class, long.class));
+            builderFactory = lookup.findVirtual(builder, "factory",
+                    MethodType.methodType(ThreadFactory.class))
+                    .asType(MethodType.methodType(
+                            ThreadFactory.class, Object.class));
+            // Fails when virtual threads are a disabled preview feature.
+            newVirtualThreadFactory(
+                    ofVirtual, builderName, builderFactory, "test");
+        } catch (Throwable e) {
+            isVirtual = null;
+            ofVirtual = null;
+        }
+        IS_VIRTUAL = isVirtual;
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
+    private JobThreads() {
+        super();
+    }
+
+    /**
+     * Whether virtual threads are supported by the running Java version.
+     * @return <code>true</code> if virtual threads are supported
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Whether a thread is a virtual thread.
+     * @param thread the thread
+     * @return <code>true</code> if a virtual thread
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a thread factory, creating virtual threads if requested
+     * and supported, or daemon threads otherwise.  Thread names are
+     * made of the supplied name followed by a sequence number.
+     * @param name thread name prefix
+     * @param virtual <code>true</code> to create virtual threads, when
+     *        supported
+     * @return thread factory
+     */
+    public static ThreadFactory newThreadFactory(
+            String name, boolean virtual) {
+        if (virtual && isVirtualThreadSupported()) {
+            try {
+                return newVirtualThreadFactory(
+                        OF_VIRTUAL, BUILDER_NAME, BUILDER_FACTORY, name);
+            } catch (Throwable e) {
+                throw new JefException(
+                        "Cannot create virtual thread factory.", e);
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + " " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static ThreadFactory newVirtualThreadFactory(
+            MethodHandle ofVirtual, MethodHandle builderName,
+            MethodHandle builderFactory, String name) throws Throwable {
+        Object builder = ofVirtual.invokeExact();
+        builder = builderName.invokeExact(builder, name + " ", 1L);
+        return (ThreadFactory) builderFactory.invokeExact(builder);
+    }
+}
@@ -0,0 +1,106 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusWriter;
+
+/**
+ * <p>
+ * JVM shutdown hook stopping a job suite when the JVM is terminated
+ * (e.g., SIGTERM or Ctrl-C).  It asks all jobs to stop and waits for
+ * them to end for up to a time budget, then records jobs still running
+ * as stopped and writes any pending status updates.
+ * </p>
+ * <p>
+ * Since the stop request is persisted, the next execution finds the
+ * suite in a {@link com.norconex.jef5.status.JobState#STOPPED} state
+ * instead of having to detect aborted jobs, and can resume it right away.
+ * </p>
+ * @author Pascal Essiembre
+ * @see JobSuiteConfig#setJvmShutdownHook(boolean)
+ */
+/*default*/ final class JvmShutdownHook extends Thread {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JvmShutdownHook.class);
+
+    private final JobSuite suite;
+    private final Duration timeout;
+
+    /*default*/ JvmShutdownHook(JobSuite suite, Duration timeout) {
+        super("JobSuite JVM Shutdown Hook");
+        this.suite = suite;
+        this.timeout = timeout;
+    }
+
+    /*default*/ void register() {
+        Runtime.getRuntime().addShutdownHook(this);
+    }
+    /*default*/ void unregister() {
+        try {
+            Runtime.getRuntime().removeShutdownHook(this);
+        } catch (IllegalStateException e) {
+            // JVM already shutting down: we are running or about to.
+        }
+    }
+
+    @Override
+    public void run() {
+        LOG.info("JVM shutting down. Stopping job suite: {}", suite.getId());
+        try {
+            suite.getStopCoordinator().stop().get(
+                    timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.warn("Job suite did not stop within {}. Recording "
+                    + "remaining jobs as stopped.", timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.error("Could not stop job suite: {}", suite.getId(), e);
+        }
+
+        JobStatusWriter writer = suite.getStatusWriter();
+        Instant now = suite.getStatusLease().now();
+        suite.accept(status -> {
+            if (status.isStarted() && status.getEndTime() == null) {
+                status.setStopRequested(true);
+                status.setEndTime(now);
+                flush(writer, status);
+            }
+        });
+        writer.flushAll();
+        LOG.info("Job suite statuses saved: {}", suite.getId());
+    }
+
+    private void flush(JobStatusWriter writer, JobStatus status) {
+        try {
+            writer.flush(status);
+        } catch (IOException e) {
+            LOG.error("Cannot save stopped status of job: {}",
+                    status.getJobId(), e);
+        }
+    }
+}
@@ -18,6 +18,9 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
@@ -25,11 +28,16 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import com.norconex.commons.lang.Sleeper;
 import com.norconex.jef5.JEFTestUtil;
 import com.norconex.jef5.job.IJob;
 import com.norconex.jef5.job.impl.SleepyJob;
 import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusUpdater;
+import com.norconex.jef5.status.impl.JournalJobSuiteStatusStore;
 import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobSuiteConfig;
+import com.norconex.jef5.suite.JobThreads;
 
 public class AsyncJobGroupTest {
 
@@ -38,6 +46,10 @@ public class AsyncJobGroupTest {
     private File folder = null;
     private int sleepMultiplier = 1;
 
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final AtomicInteger wrongJobIds = new AtomicInteger();
+
     public AsyncJobGroupTest() {
         super();
     }
@@ -60,6 +72,83 @@ public class AsyncJobGroupTest {
         assertStatus(suite.getJobStatus(rootJob));
     }
 
+    @Test
+    public void testNestedGroupsGlobalLimit() throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(tempFolder);
+        config.setMaxJobThreads(1);
+        // Parent groups wait on children without using up the only thread.
+        JobSuite suite = new JobSuite(new AsyncJobGroup("root",
+                new AsyncJobGroup("a", new CountingJob("a1"),
+                        new CountingJob("a2")),
+                new AsyncJobGroup("b", new CountingJob("b1"),
+                        new CountingJob("b2"))), config);
+        Assert.assertTrue(suite.execute());
+        Assert.assertEquals(1, maxRunning.get());
+        Assert.assertEquals(1d, suite.getRootStatus().getProgress(), 0d);
+    }
+
+    @Test
+    public void testGroupLimit() throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(tempFolder);
+        JobSuite suite = new JobSuite(new AsyncJobGroup("root", 2,
+                new CountingJob("j1"), new CountingJob("j2"),
+                new CountingJob("j3"), new CountingJob("j4")), config);
+        Assert.assertTrue(suite.execute());
+        Assert.assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testManyJobs() throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(tempFolder);
+        config.setStatusStoreFactory(JournalJobSuiteStatusStore::new);
+        config.setBackupDisabled(true);
+        config.setMaxJobThreads(4);
+        // More jobs than a Phaser can have parties.
+        int count = 70_000;
+        AtomicInteger executed = new AtomicInteger();
+        List<IJob> jobs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            jobs.add(new TrivialJob("job" + i, executed));
+        }
+        JobSuite suite = new JobSuite(
+                new AsyncJobGroup("root", 8, jobs), config);
+        Assert.assertTrue(suite.execute());
+        Assert.assertEquals(count, executed.get());
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(tempFolder);
+        config.setVirtualThreads(true);
+        config.setMaxJobThreads(2);
+        JobSuite suite = new JobSuite(new AsyncJobGroup("root",
+                new AsyncJobGroup("a", new CountingJob("a1"),
+                        new CountingJob("a2")),
+                new CountingJob("b")), config);
+        Assert.assertTrue(suite.execute());
+        // Regular threads are used where not supported.
+        Assert.assertEquals(JobThreads.isVirtualThreadSupported(),
+                suite.getJobExecutor().isVirtualThreads());
+        Assert.assertTrue(maxRunning.get() <= 2);
+        Assert.assertEquals(0, wrongJobIds.get());
+        Assert.assertNull(JobSuite.getRunningJobId());
+    }
+
+    @Test
+    public void testWithRunningJobId() throws Exception {
+        JobSuite.setCurrentJobId("parent");
+        try {
+            String[] jobId = new String[1];
+            Thread t = new Thread(JobSuite.withRunningJobId(
+                    () -> jobId[0] = JobSuite.getRunningJobId()));
+            t.start();
+            t.join();
+            Assert.assertEquals("parent", jobId[0]);
+        } finally {
+            JobSuite.setCurrentJobId(null);
+        }
+    }
+
     private void assertStatus(JobStatus status) {
         System.out.println("Status of \"" + status.getJobId() + "\": "
                 + status.getState() + " (" + status.getProgress() + ")");
@@ -86,4 +175,56 @@ public class AsyncJobGroupTest {
         test.sleepMultiplier = scale;
         test.testExecuteGroup();
     }
+
+    // Does nothing but count its executions.
+    private static class TrivialJob implements IJob {
+        private final String id;
+        private final AtomicInteger executed;
+        public TrivialJob(String id, AtomicInteger executed) {
+            super();
+            this.id = id;
+            this.executed = executed;
+        }
+        @Override
+        public String getId() {
+            return id;
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            executed.incrementAndGet();
+            statusUpdater.setProgress(1d);
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            //NOOP
+        }
+    }
+
+    // Records how many of these jobs run at once.
+    private class CountingJob implements IJob {
+        private final String id;
+        public CountingJob(String id) {
+            super();
+            this.id = id;
+        }
+        @Override
+        public String getId() {
+            return id;
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            if (!id.equals(JobSuite.getRunningJobId())) {
+                wrongJobIds.incrementAndGet();
+            }
+            maxRunning.accumulateAndGet(
+                    running.incrementAndGet(), Math::max);
+            Sleeper.sleepMillis(200);
+            running.decrementAndGet();
+            statusUpdater.setProgress(1d);
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            //NOOP
+        }
+    }
 }
@@ -0,0 +1,75 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.norconex.commons.lang.Sleeper;
+
+public class GroupCommitTest {
+
+    @Test
+    public void testCommitsAreShared() throws Exception {
+        AtomicInteger changes = new AtomicInteger();
+        AtomicInteger committedChanges = new AtomicInteger();
+        AtomicInteger commits = new AtomicInteger();
+        GroupCommit groupCommit = new GroupCommit(() -> {
+            commits.incrementAndGet();
+            committedChanges.set(changes.get());
+            Sleeper.sleepMillis(20);
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(10);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(pool.submit(() -> {
+                int change = changes.incrementAndGet();
+                groupCommit.commit();
+                // Own change must be committed when returning.
+                return committedChanges.get() >= change;
+            }));
+        }
+        for (Future<Boolean> future : futures) {
+            Assert.assertTrue(future.get());
+        }
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        Assert.assertTrue("Too many commits: " + commits.get(),
+                commits.get() < 100);
+    }
+
+    @Test
+    public void testFailureReportedToWaiters() {
+        GroupCommit groupCommit = new GroupCommit(() -> {
+            throw new IOException("Disk full.");
+        });
+        try {
+            groupCommit.commit();
+            Assert.fail("Should have failed.");
+        } catch (IOException e) {
+            Assert.assertEquals("Disk full.", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.JEFTestUtil;
+import com.norconex.jef5.job.group.AsyncJobGroup;
+import com.norconex.jef5.job.impl.SleepyJob;
+import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobSuiteConfig;
+
+public class JobHistoryCatalogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testJobSuiteHistory() throws IOException {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        for (int i = 0; i < 3; i++) {
+            JobSuite suite = new JobSuite(new AsyncJobGroup("my\\tgroup",
+                    new SleepyJob(1, 1), new SleepyJob(2, 1)), config);
+            Assert.assertTrue(suite.execute());
+        }
+        JobHistoryCatalog catalog = new JobHistoryCatalog(
+                JobSuite.getHistoryCatalogFile(
+                        config.getWorkdir(), "my\\tgroup"), "my\\tgroup");
+
+        List<JobHistoryRecord> runs = catalog.getRuns(10);
+        Assert.assertEquals(3, runs.size());
+        Assert.assertTrue(runs.get(0).getRunStartTime().isAfter(
+                runs.get(1).getRunStartTime()));
+        Assert.assertEquals(JobState.COMPLETED, runs.get(0).getState());
+        Assert.assertEquals(1, runs.get(0).getAttemptCount());
+
+        List<JobHistoryRecord> jobRuns =
+                catalog.getJobHistory("Sleepy Job 1-1", 2);
+        Assert.assertEquals(2, jobRuns.size());
+        Assert.assertTrue(jobRuns.get(0).getDuration().toMillis() >= 1000);
+
+        Assert.assertEquals(3, catalog.getRuns(null, null,
+                JobState.COMPLETED).size());
+        Assert.assertTrue(catalog.getRuns(null, null,
+                JobState.ABORTED, JobState.STOPPED).isEmpty());
+        Assert.assertEquals(1, catalog.getRuns(
+                runs.get(0).getRunStartTime(), null).size());
+    }
+
+    @Test
+    public void testJobSuiteHistoryRetention() throws IOException {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setBackupMaxCount(1);
+        for (int i = 0; i < 3; i++) {
+            JobSuite suite = new JobSuite(new SleepyJob(0, 1), config);
+            Assert.assertTrue(suite.execute());
+        }
+        // Last run, and the one backed up before it.
+        Assert.assertEquals(2, new JobHistoryCatalog(
+                JobSuite.getHistoryCatalogFile(config.getWorkdir(),
+                        "Sleepy Job 0-1"), "Sleepy Job 0-1")
+                                .getRuns(10).size());
+    }
+
+    @Test
+    public void testAppendAndCompact() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("history.catalog");
+        JobHistoryCatalog writer = new JobHistoryCatalog(file, "suite");
+        JobHistoryCatalog reader = new JobHistoryCatalog(file, "suite");
+
+        Path statusDir = folder.newFolder().toPath();
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("suite", statusDir);
+        Instant runStart = Instant.now();
+        JobStatus status = new JobStatus("suite", null);
+        status.setStartTime(runStart);
+        dao.write(status);
+        writer.record(newSuiteStatus(statusDir));
+        Assert.assertEquals(1, reader.getRuns(10).size());
+        Assert.assertTrue(reader.isRecorded(runStart));
+
+        // Same run recorded again: last one wins
+        status.setProgress(1d);
+        status.setEndTime(runStart.plusSeconds(5));
+        dao.write(status);
+        writer.record(newSuiteStatus(statusDir));
+        Assert.assertEquals(JobState.COMPLETED,
+                reader.getRuns(10).get(0).getState());
+        Assert.assertEquals(2, Files.readAllLines(file).size());
+
+        // Partial line is ignored until complete
+        Files.write(file, "12".getBytes(), StandardOpenOption.APPEND);
+        Assert.assertEquals(1, reader.getRuns(10).size());
+
+        writer.compact();
+        Assert.assertEquals(1, Files.readAllLines(file).size());
+        Assert.assertEquals(JobState.COMPLETED,
+                reader.getRuns(10).get(0).getState());
+    }
+
+    @Test
+    public void testRunIndex() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("history.catalog");
+        JobHistoryCatalog writer = new JobHistoryCatalog(file, "suite");
+
+        Path statusDir = folder.newFolder().toPath();
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("suite", statusDir);
+        Instant runStart = Instant.now();
+        JobStatus status = new JobStatus("suite", null);
+        status.setStartTime(runStart);
+        dao.write(status);
+        writer.record(newSuiteStatus(statusDir));
+        writer.record(newSuiteStatus(statusDir));
+        Assert.assertEquals(1,
+                Files.readAllLines(writer.getRunIndexFile()).size());
+
+        // Only the run index is read to know if a run was recorded.
+        Files.write(file, "garbage\n".getBytes());
+        JobHistoryCatalog reader = new JobHistoryCatalog(file, "suite");
+        Assert.assertTrue(reader.isRecorded(runStart));
+        Assert.assertFalse(reader.isRecorded(runStart.plusSeconds(1)));
+        Assert.assertTrue(reader.getRuns(10).isEmpty());
+
+        // Index rebuilt from a catalog without one.
+        writeRuns(file, Instant.now(), 3, 2);
+        Files.delete(writer.getRunIndexFile());
+        reader = new JobHistoryCatalog(file, "suite");
+        Assert.assertTrue(reader.isRecorded(reader.getRuns(1)
+                .get(0).getRunStartTime()));
+        Assert.assertEquals(3,
+                Files.readAllLines(writer.getRunIndexFile()).size());
+    }
+
+    @Test
+    public void testPrune() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("history.catalog");
+        // Many more runs than read at once.
+        Instant now = Instant.now();
+        writeRuns(file, now, 5000, 3);
+        Assert.assertTrue(Files.size(file) > 10 * 64 * 1024);
+        JobHistoryCatalog catalog = new JobHistoryCatalog(file, "suite");
+        Assert.assertEquals(5000, catalog.getRuns(10000).size());
+
+        // Nothing expired
+        catalog.prune(null, 0);
+        catalog.prune(Duration.ofDays(365), 5000);
+        Assert.assertEquals(5000 * 3, Files.readAllLines(file).size());
+
+        // By count
+        catalog.prune(null, 100);
+        Assert.assertEquals(100 * 3, Files.readAllLines(file).size());
+        Assert.assertEquals(100,
+                Files.readAllLines(catalog.getRunIndexFile()).size());
+        List<JobHistoryRecord> runs = catalog.getRuns(10000);
+        Assert.assertEquals(100, runs.size());
+        Assert.assertEquals(now.toEpochMilli(),
+                runs.get(0).getRunStartTime().toEpochMilli());
+        Assert.assertEquals(100, catalog.getJobHistory("job-2", 10000).size());
+
+        // By age (runs are one minute apart)
+        catalog.prune(Duration.ofMinutes(30).plusSeconds(30), 100);
+        Assert.assertEquals(31, catalog.getRuns(10000).size());
+        Assert.assertEquals(31 * 3, Files.readAllLines(file).size());
+        Assert.assertEquals(31, new JobHistoryCatalog(file, "suite")
+                .getRuns(null, null).size());
+        Assert.assertFalse(catalog.isRecorded(now.minusSeconds(31 * 60)));
+        Assert.assertTrue(catalog.isRecorded(now.minusSeconds(30 * 60)));
+    }
+
+    // Writes runs one minute apart, most recent starting at "last".
+    private void writeRuns(Path file, Instant last, int runCount,
+            int jobCount) throws IOException {
+        StringBuilder b = new StringBuilder();
+        for (int run = runCount - 1; run >= 0; run--) {
+            long start = last.minusSeconds(run * 60L).toEpochMilli();
+            for (int job = 0; job < jobCount; job++) {
+                String jobId = job == 0 ? "suite" : "job-" + job;
+                b.append(start).append('\t').append(jobId).append('\t')
+                        .append(start).append('\t').append(start + 1000)
+                        .append("\t1000\tCOMPLETED\t1\n");
+            }
+        }
+        Files.write(file, b.toString().getBytes());
+    }
+
+    private JobSuiteStatus newSuiteStatus(Path statusDir) throws IOException {
+        return JobSuiteStatus.getInstance(statusDir, new StringReader(
+                "<suite-index><job id=\"suite\"/></suite-index>"));
+    }
+}
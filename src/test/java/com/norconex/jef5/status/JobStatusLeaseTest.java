@@ -0,0 +1,65 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JobStatusLeaseTest {
+
+    @Test
+    public void testLease() {
+        Instant now = Instant.parse("2021-01-01T00:00:00Z");
+        JobStatusLease lease = new JobStatusLease(Duration.ofSeconds(2),
+                Duration.ofSeconds(30), Clock.fixed(now, ZoneOffset.UTC));
+        Assert.assertEquals(Duration.ofSeconds(32), lease.getTimeout());
+
+        Assert.assertFalse(lease.isHeld(null));
+        Assert.assertTrue(lease.isHeld(now.minusSeconds(31)));
+        Assert.assertFalse(lease.isHeld(now.minusSeconds(32)));
+
+        Assert.assertTrue(lease.isRenewalDue(null));
+        Assert.assertFalse(lease.isRenewalDue(now.minusSeconds(14)));
+        Assert.assertTrue(lease.isRenewalDue(now.minusSeconds(15)));
+
+        JobStatus status = new JobStatus("myjob", null);
+        status.setStartTime(now.minusSeconds(60));
+        status.setLastActivity(now.minusSeconds(20));
+        Assert.assertEquals(JobState.ABORTED, status.getState());
+        status.setLease(lease);
+        Assert.assertEquals(JobState.RUNNING, status.getState());
+        status.setStopRequested(true);
+        Assert.assertEquals(JobState.STOPPING, status.getState());
+    }
+
+    @Test
+    public void testLeaseInIndex() throws IOException {
+        String xml = "<suite-index>"
+                + "<statusLease interval=\"PT1S\" grace=\"PT1M\"/>"
+                + "<job id=\"myjob\"/></suite-index>";
+        JobSuiteStatus suiteStatus = JobSuiteStatus.getInstance(
+                Paths.get("n/a"), new StringReader(xml));
+        Assert.assertTrue(suiteStatus.toXML().contains(
+                "<statusLease interval=\"PT1S\" grace=\"PT1M\""));
+    }
+}
@@ -0,0 +1,91 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JobStatusSegmentTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteRead() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("suite.segment");
+        try (JobStatusSegment writer = JobStatusSegment.create(file, 2);
+                JobStatusSegment reader = JobStatusSegment.open(file)) {
+            JobStatus status = new JobStatus("myjob", null);
+            status.setProgress(0.5);
+            status.setStartTime(Instant.ofEpochMilli(1000));
+            status.setLastActivity(Instant.now());
+            writer.update(status);
+            writer.update(new JobStatus("job2", null));
+            // No slot left
+            writer.update(new JobStatus("job3", null));
+
+            JobStatusData data = reader.read("myjob");
+            Assert.assertEquals(0.5, data.getProgress(), 0);
+            Assert.assertEquals(Instant.ofEpochMilli(1000),
+                    data.getStartTime());
+            Assert.assertNull(data.getEndTime());
+            Assert.assertEquals(JobState.RUNNING, data.getState());
+            Assert.assertEquals(
+                    JobState.RUNNING, data.getRecordedState());
+            Assert.assertEquals(JobState.UNKNOWN,
+                    reader.read("job2").getRecordedState());
+            Assert.assertNull(reader.read("job3"));
+            Assert.assertEquals(2, reader.readAll().size());
+            Assert.assertEquals(writer.getCreated(), reader.getCreated());
+        }
+    }
+
+    @Test
+    public void testConsistentReads() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("suite.segment");
+        try (JobStatusSegment writer = JobStatusSegment.create(file, 1);
+                JobStatusSegment reader = JobStatusSegment.open(file)) {
+            AtomicBoolean done = new AtomicBoolean();
+            Thread t = new Thread(() -> {
+                JobStatus status = new JobStatus("myjob", null);
+                for (int i = 0; i < 200_000; i++) {
+                    // Start time always matches progress
+                    status.setProgress(i);
+                    status.setStartTime(Instant.ofEpochMilli(i));
+                    writer.update(status);
+                }
+                done.set(true);
+            });
+            t.start();
+            while (!done.get()) {
+                Map<String, JobStatusData> all = reader.readAll();
+                JobStatusData data = all.get("myjob");
+                if (data != null && data.getStartTime() != null) {
+                    Assert.assertEquals(data.getStartTime().toEpochMilli(),
+                            (long) data.getProgress());
+                }
+            }
+            t.join();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JobStatusUpdaterTest {
+
+    @Test
+    public void testBatch() {
+        AtomicInteger notifications = new AtomicInteger();
+        JobStatus status = new JobStatus("myjob", null);
+        JobStatusUpdater updater = new JobStatusUpdater(
+                status, s -> notifications.incrementAndGet());
+
+        updater.setProgress(0.1);
+        updater.setNote("Not batched");
+        Assert.assertEquals(2, notifications.get());
+
+        updater.batch(u -> {
+            u.setProgress(0.5);
+            u.setNote("Batched");
+            u.updateProperties(props -> {
+                props.set("key1", "value1");
+                props.set("key2", "value2");
+            });
+        });
+        Assert.assertEquals(3, notifications.get());
+        Assert.assertEquals(0.5, status.getProgress(), 0);
+        Assert.assertEquals("value2",
+                status.getProperties().getString("key2"));
+
+        // Nothing changed, no notification
+        updater.beginBatch();
+        updater.commitBatch();
+        Assert.assertEquals(3, notifications.get());
+    }
+}
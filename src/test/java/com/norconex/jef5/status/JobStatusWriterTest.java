@@ -0,0 +1,118 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.commons.lang.Sleeper;
+
+public class JobStatusWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteBehindCoalescing() throws IOException {
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO(
+                "mysuite", folder.newFolder().toPath());
+        JobStatusWriter writer =
+                new JobStatusWriter(dao, Duration.ofHours(1), 0);
+        writer.start();
+        try {
+            JobStatus status = new JobStatus("myjob", null);
+            for (int i = 1; i <= 100; i++) {
+                status.setProgress(i / 100d);
+                status.setNote("Item " + i);
+                writer.write(status);
+            }
+            // Nothing written yet.
+            Assert.assertEquals(0d, dao.read("myjob").getProgress(), 0d);
+
+            writer.flushAll();
+            JobStatus written = dao.read("myjob");
+            Assert.assertEquals(1d, written.getProgress(), 0d);
+            Assert.assertEquals("Item 100", written.getNote());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testMinProgressDelta() throws IOException {
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO(
+                "mysuite", folder.newFolder().toPath());
+        JobStatusWriter writer =
+                new JobStatusWriter(dao, Duration.ofHours(1), 0.5);
+        writer.start();
+        try {
+            JobStatus status = new JobStatus("myjob", null);
+            status.setProgress(0.6);
+            writer.write(status);
+            for (int i = 0; i < 50
+                    && dao.read("myjob").getProgress() == 0d; i++) {
+                Sleeper.sleepMillis(100);
+            }
+            Assert.assertEquals(0.6d, dao.read("myjob").getProgress(), 0d);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testSynchronous() throws IOException {
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO(
+                "mysuite", folder.newFolder().toPath());
+        JobStatusWriter writer = new JobStatusWriter(dao);
+        writer.start();
+        JobStatus status = new JobStatus("myjob", null);
+        status.setProgress(0.3);
+        writer.write(status);
+        Assert.assertEquals(0.3d, dao.read("myjob").getProgress(), 0d);
+        Assert.assertNotNull(writer.getLastWriteTime("myjob"));
+        writer.close();
+    }
+
+    @Test
+    public void testEndedJobsForgotten() throws IOException {
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO(
+                "mysuite", folder.newFolder().toPath());
+        JobStatusWriter writer =
+                new JobStatusWriter(dao, Duration.ofHours(1), 0);
+        writer.start();
+        try {
+            JobStatus status = new JobStatus("myjob", null);
+            status.setProgress(0.5);
+            writer.write(status);
+            writer.flushAll();
+            Assert.assertNotNull(writer.getLastWriteTime("myjob"));
+
+            status.setProgress(1d);
+            status.setEndTime(Instant.now());
+            writer.write(status);
+            writer.flushAll();
+            Assert.assertNull(writer.getLastWriteTime("myjob"));
+            Assert.assertEquals(1d, dao.read("myjob").getProgress(), 0d);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -18,10 +18,18 @@ import static java.time.Duration.ofMinutes;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TreeSet;
+import java.util.stream.Stream;
 
 import org.junit.Assert;
 import org.junit.Rule;
@@ -85,4 +93,240 @@ public class JobSuiteStatusDAOTest {
         Assert.assertEquals(jobStatus, newJobStatus);
     }
 
+    @Test
+    public void testAttemptManifest() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("mysuite", dir);
+
+        Instant start = Instant.now().minus(ofMinutes(60));
+        for (int i = 0; i < 3; i++) {
+            JobStatusData attempt = new JobStatusData();
+            attempt.setStartTime(start.plus(ofMinutes(i * 10)));
+            attempt.setEndTime(start.plus(ofMinutes(i * 10 + 5)));
+            attempt.setProgress(i / 10d);
+            dao.writeAttempt("myjob", attempt);
+        }
+        JobStatus jobStatus = dao.read("myjob");
+        Assert.assertTrue(jobStatus.isResumed());
+        Assert.assertEquals(3, jobStatus.getResumedAttempts().size());
+        Assert.assertEquals(start, jobStatus.getSessionStartTime());
+        Assert.assertEquals(ofMinutes(15),
+                jobStatus.getSessionEffectiveDuration());
+        Assert.assertFalse(dao.read("otherjob").isResumed());
+
+        // Manifest is recreated from attempt files when missing.
+        Files.delete(dir.resolve(JobAttemptManifest.FILE_NAME));
+        dao = new JobSuiteStatusDAO("mysuite", dir);
+        jobStatus = dao.read("myjob");
+        Assert.assertEquals(3, jobStatus.getResumedAttempts().size());
+        Assert.assertEquals(start, jobStatus.getSessionStartTime());
+        Assert.assertTrue(
+                Files.exists(dir.resolve(JobAttemptManifest.FILE_NAME)));
+    }
+
+    @Test
+    public void testDurability() throws IOException {
+        for (StatusDurability durability : StatusDurability.values()) {
+            Path dir = folder.newFolder().toPath();
+            JobSuiteStatusDAO dao = new JobSuiteStatusDAO("mysuite", dir);
+            dao.setDurability(durability);
+            JobStatus jobStatus = new JobStatus("myjob", null);
+            for (int i = 1; i <= 3; i++) {
+                jobStatus.setProgress(i / 3d);
+                jobStatus.setNote("Note " + i);
+                dao.write(jobStatus);
+            }
+            JobStatus newJobStatus = dao.read("myjob");
+            Assert.assertEquals(jobStatus, newJobStatus);
+            // No temporary files left behind.
+            try (Stream<Path> files = Files.list(dir)) {
+                Assert.assertEquals(1, files.count());
+            }
+        }
+    }
+
+    @Test
+    public void testCodecs() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("mysuite", dir);
+        dao.setCodec(new BinaryJobStatusCodec());
+
+        Instant earlier = Instant.now().minus(ofMinutes(10));
+        JobStatus jobStatus = new JobStatus("myjob", null);
+        jobStatus.setStartTime(earlier.plus(ofMinutes(1)));
+        jobStatus.setEndTime(earlier.plus(ofMinutes(3)));
+        jobStatus.setNote("Note:\n  This is a note.");
+        jobStatus.setProgress(13.666);
+        jobStatus.setStopRequested(true);
+        Properties props = jobStatus.getProperties();
+        props.add("bigD", BigDecimal.valueOf(33.3));
+        props.add("klazz", Integer.class);
+        props.set("locale", Locale.CANADA_FRENCH);
+        dao.write(jobStatus);
+        jobStatus.setLastActivity(dao.read("myjob").getLastActivity());
+        Assert.assertEquals(jobStatus, dao.read("myjob"));
+
+        // Default codec still reads binary statuses.
+        Assert.assertEquals(jobStatus,
+                new JobSuiteStatusDAO("mysuite", dir).read("myjob"));
+
+        // Convert back and forth
+        Assert.assertEquals(1, JobStatusConverter.convert(
+                dir, new PropertiesJobStatusCodec()));
+        Assert.assertEquals(0, JobStatusConverter.convert(
+                dir, new PropertiesJobStatusCodec()));
+        Assert.assertEquals(jobStatus, dao.read("myjob"));
+        Assert.assertEquals(1, JobStatusConverter.convert(
+                dir, new BinaryJobStatusCodec()));
+        Assert.assertEquals(jobStatus, dao.read("myjob"));
+    }
+
+    @Test
+    public void testTouchClock() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("mysuite", dir);
+        Instant time = Instant.ofEpochMilli(1_500_000_000_000L);
+        dao.setClock(Clock.fixed(time, ZoneOffset.UTC));
+        dao.write(new JobStatus("myjob", null));
+        Assert.assertEquals(time, dao.touch("myjob"));
+        Assert.assertEquals(time, dao.read("myjob").getLastActivity());
+    }
+
+    @Test
+    public void testPropertyDeltas() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("mysuite", dir);
+        dao.setMaxPropertyDeltas(5);
+
+        JobStatus jobStatus = new JobStatus("myjob", null);
+        Properties props = jobStatus.getProperties();
+        for (int i = 0; i < 100; i++) {
+            props.set("key" + i, "value" + i);
+        }
+        dao.write(jobStatus);
+        long fullSize = Files.size(dir.resolve("myjob.job"));
+
+        props.set("key3", "changed");
+        props.remove("key4");
+        jobStatus.setProgress(0.5);
+        dao.write(jobStatus);
+        Path deltaFile = dir.resolve("myjob.job.delta");
+        Assert.assertTrue(Files.size(deltaFile) < fullSize / 10);
+
+        JobStatus newJobStatus = dao.read("myjob");
+        Assert.assertEquals(jobStatus, newJobStatus);
+        Assert.assertEquals("changed",
+                newJobStatus.getProperties().getString("key3"));
+        Assert.assertFalse(newJobStatus.getProperties().containsKey("key4"));
+
+        // Deltas are only read when enabled
+        Assert.assertEquals(0d, new JobSuiteStatusDAO("mysuite", dir)
+                .read("myjob").getProgress(), 0);
+
+        // Consolidated after max deltas
+        for (int i = 0; i < 5; i++) {
+            props.set("key5", "changed " + i);
+            dao.write(jobStatus);
+        }
+        Assert.assertFalse(Files.exists(deltaFile));
+        try (Stream<Path> files = Files.list(dir)) {
+            Assert.assertEquals(1, files.filter(f -> f.getFileName()
+                    .toString().startsWith("myjob.job")).count());
+        }
+        Assert.assertEquals(jobStatus, dao.read("myjob"));
+        Assert.assertEquals(1, dao.getDeltaStateCount());
+
+        // Consolidated and no longer tracked once ended
+        props.set("key5", "ended");
+        dao.write(jobStatus);
+        Assert.assertTrue(Files.exists(deltaFile));
+        jobStatus.setEndTime(Instant.now());
+        dao.write(jobStatus);
+        Assert.assertFalse(Files.exists(deltaFile));
+        Assert.assertEquals(0, dao.getDeltaStateCount());
+        Assert.assertEquals(jobStatus, dao.read("myjob"));
+
+        // Tracked again if it runs again
+        jobStatus.setEndTime(null);
+        dao.write(jobStatus);
+        props.set("key5", "rerun");
+        dao.write(jobStatus);
+        Assert.assertTrue(Files.exists(deltaFile));
+        Assert.assertEquals(1, dao.getDeltaStateCount());
+        Assert.assertEquals(jobStatus, dao.read("myjob"));
+    }
+
+    @Test
+    public void testSharded() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JobSuiteStatusDAO flatDao = new JobSuiteStatusDAO("mysuite", dir);
+        JobStatus flatStatus = new JobStatus("flatjob", null);
+        flatStatus.setProgress(0.25);
+        flatDao.write(flatStatus);
+
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("mysuite", dir);
+        dao.setSharded(true);
+        JobStatus jobStatus = new JobStatus("myjob", null);
+        jobStatus.setProgress(0.5);
+        dao.write(jobStatus);
+        dao.writeAttempt("myjob", jobStatus);
+        Path shardDir = dir.resolve(
+                JobSuiteStatusDAO.toShardDirName("myjob.job"));
+        Assert.assertTrue(Files.exists(shardDir.resolve("myjob.job")));
+        Assert.assertTrue(Files.exists(shardDir.resolve("myjob.job.1")));
+        Assert.assertFalse(Files.exists(dir.resolve("myjob.job")));
+
+        // Existing flat files stay where they are
+        flatStatus.setProgress(0.75);
+        dao.write(flatStatus);
+        Assert.assertEquals(0.75, flatDao.read("flatjob").getProgress(), 0);
+
+        // A non-sharded reader finds both
+        JobSuiteStatusDAO reader = new JobSuiteStatusDAO("mysuite", dir);
+        Assert.assertEquals(jobStatus, reader.read("myjob"));
+        Assert.assertEquals(1,
+                reader.read("myjob").getResumedAttempts().size());
+        Assert.assertEquals(0.75, reader.read("flatjob").getProgress(), 0);
+
+        Assert.assertEquals(3, JobStatusConverter.convert(
+                dir, new BinaryJobStatusCodec()));
+        Assert.assertEquals(jobStatus, reader.read("myjob"));
+    }
+
+    @Test
+    public void testReadAll() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("mysuite", dir);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            JobStatus jobStatus = new JobStatus("job" + i, null);
+            jobStatus.setProgress(i / 50d);
+            jobStatus.getProperties().set("key", "value" + i);
+            dao.setSharded(i % 2 == 0);
+            dao.setMaxPropertyDeltas(i % 3);
+            dao.write(jobStatus);
+            if (i % 5 == 0) {
+                jobStatus.setNote("Delta or rewrite");
+                dao.write(jobStatus);
+                dao.writeAttempt(jobStatus.getJobId(), jobStatus);
+            }
+            ids.add(jobStatus.getJobId());
+        }
+        ids.add("never-written");
+
+        JobSuiteStatusDAO reader = new JobSuiteStatusDAO("mysuite", dir);
+        reader.setMaxPropertyDeltas(2);
+        Map<String, JobStatus> all = reader.readAll(ids);
+        Assert.assertEquals(ids, new ArrayList<>(all.keySet()));
+        for (String id : ids) {
+            JobStatus expected = reader.read(id);
+            JobStatus actual = all.get(id);
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(expected.getLastActivity(),
+                    actual.getLastActivity());
+            Assert.assertEquals(expected.getResumedAttempts(),
+                    actual.getResumedAttempts());
+        }
+        Assert.assertEquals("Delta or rewrite", all.get("job10").getNote());
+    }
 }
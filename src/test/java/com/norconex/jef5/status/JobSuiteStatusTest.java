@@ -17,15 +17,26 @@ package com.norconex.jef5.status;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class JobSuiteStatusTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testLoadJobStatuses() throws IOException {
         JobSuiteStatus facade = JobSuiteStatus.getInstance(Paths.get("n/a"),
@@ -48,6 +59,39 @@ public class JobSuiteStatusTest {
 //        System.out.println("facade:\n\n" + facade);
     }
 
+    @Test
+    public void testSuiteHeartbeat() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("Root Job", dir);
+        Instant past = Instant.now().minus(Duration.ofMinutes(5));
+        for (String jobId : Arrays.asList("Job A", "Job B")) {
+            JobStatus status = new JobStatus(jobId, null);
+            status.setStartTime(past);
+            status.setProgress(0.5);
+            dao.write(status);
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(f -> f.toFile().setLastModified(
+                    FileTime.from(past).toMillis()));
+        }
+        JobSuiteStatus suiteStatus = JobSuiteStatus.getInstance(dir,
+                new InputStreamReader(
+                JobSuiteStatusTest.class.getResourceAsStream(
+                        JobSuiteStatusTest.class.getSimpleName() + ".xml"),
+                StandardCharsets.UTF_8));
+        Assert.assertFalse(suiteStatus.getStatus("Job A").isRunning());
+
+        Instant now = Instant.now();
+        new JobSuiteHeartbeat(now, Arrays.asList("Job A")).write(dir);
+        Assert.assertEquals(now.toEpochMilli(), JobSuiteHeartbeat.read(
+                dir).getTime().toEpochMilli());
+        Assert.assertTrue(suiteStatus.getStatus("Job A").isRunning());
+        Assert.assertFalse(suiteStatus.getStatus("Job B").isRunning());
+        List<JobStatus> all = suiteStatus.getAllStatuses();
+        Assert.assertTrue(all.get(1).isRunning());
+        Assert.assertFalse(all.get(2).isRunning());
+    }
+
 //
 //    @Test
 //    public void testWriteRead() throws IOException {
@@ -0,0 +1,200 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.impl;
+
+import static java.time.Duration.ofMinutes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.commons.lang.map.Properties;
+import com.norconex.jef5.status.JobStatus;
+
+public class JournalJobSuiteStatusStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteRead() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JournalJobSuiteStatusStore store =
+                new JournalJobSuiteStatusStore("mysuite", dir);
+
+        Instant earlier = Instant.now().minus(ofMinutes(10));
+        JobStatus jobStatus = new JobStatus("myjob", null);
+        jobStatus.setStartTime(earlier.plus(ofMinutes(1)));
+        jobStatus.setEndTime(earlier.plus(ofMinutes(3)));
+        jobStatus.setNote("Note:\n  This is a note.");
+        jobStatus.setProgress(13.666);
+        jobStatus.setStopRequested(true);
+        Properties props = jobStatus.getProperties();
+        props.add("bigD", BigDecimal.valueOf(33.3));
+        props.add("klazz", Integer.class);
+        props.set("locale", Locale.CANADA_FRENCH);
+
+        store.write(jobStatus);
+        Assert.assertEquals(jobStatus, store.read("myjob"));
+
+        // Replayed by a different instance
+        JournalJobSuiteStatusStore reader =
+                new JournalJobSuiteStatusStore("mysuite", dir);
+        Assert.assertEquals(jobStatus, reader.read("myjob"));
+
+        // Reader sees new records
+        jobStatus.setProgress(0.5);
+        store.write(jobStatus);
+        Assert.assertEquals(0.5, reader.read("myjob").getProgress(), 0);
+        Assert.assertNotNull(reader.read("myjob").getLastActivity());
+        store.close();
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JournalJobSuiteStatusStore store =
+                new JournalJobSuiteStatusStore("mysuite", dir);
+        store.setMaxSegmentSize(1024);
+        JournalJobSuiteStatusStore reader =
+                new JournalJobSuiteStatusStore("mysuite", dir);
+
+        for (int i = 1; i <= 500; i++) {
+            JobStatus status = new JobStatus("job" + (i % 5), null);
+            status.setProgress(i / 500d);
+            store.write(status);
+            if (i % 50 == 0) {
+                Assert.assertEquals(i / 500d, reader.read(
+                        "job" + (i % 5)).getProgress(), 0);
+            }
+        }
+        store.close();
+        try (Stream<Path> files = Files.list(dir)) {
+            Assert.assertEquals(1, files.count());
+        }
+        JournalJobSuiteStatusStore replayed =
+                new JournalJobSuiteStatusStore("mysuite", dir);
+        Assert.assertEquals(1d, replayed.read("job0").getProgress(), 0);
+        Assert.assertEquals(0.998, replayed.read("job4").getProgress(), 0);
+    }
+
+    @Test
+    public void testCompactionOfLargeLiveSet() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JournalJobSuiteStatusStore store =
+                new JournalJobSuiteStatusStore("mysuite", dir);
+        store.setMaxSegmentSize(1024);
+        // Latest records of all jobs take several times the maximum.
+        for (int i = 0; i < 100; i++) {
+            JobStatus status = new JobStatus("job" + i, null);
+            status.setNote(StringUtils.repeat('x', 100));
+            store.write(status);
+        }
+        for (int i = 0; i < 1000; i++) {
+            JobStatus status = new JobStatus("job" + (i % 100), null);
+            status.setNote(StringUtils.repeat('x', 100));
+            status.setProgress(i / 1000d);
+            store.write(status);
+        }
+        store.close();
+
+        // Compacted when doubling, not on every write.
+        String segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.findFirst().get().getFileName().toString();
+        }
+        long compactions = Long.parseLong(
+                segment.replaceAll("\\D", "")) - 1;
+        Assert.assertTrue("Too many compactions: " + compactions,
+                compactions < 20);
+        store = new JournalJobSuiteStatusStore("mysuite", dir);
+        Assert.assertEquals(0.999, store.read("job99").getProgress(), 0);
+        store.close();
+    }
+
+    @Test
+    public void testPartialRecordIgnored() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JournalJobSuiteStatusStore store =
+                new JournalJobSuiteStatusStore("mysuite", dir);
+        JobStatus status = new JobStatus("myjob", null);
+        status.setProgress(0.25);
+        store.write(status);
+        store.close();
+
+        // Simulate a crash in the middle of a record.
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.findFirst().get();
+        }
+        try (OutputStream out = Files.newOutputStream(
+                segment, StandardOpenOption.APPEND)) {
+            out.write(new byte[] { 0, 0, 0, 99, 1, 2 });
+        }
+
+        store = new JournalJobSuiteStatusStore("mysuite", dir);
+        Assert.assertEquals(0.25, store.read("myjob").getProgress(), 0);
+        status.setProgress(0.5);
+        store.write(status);
+        store.close();
+
+        store = new JournalJobSuiteStatusStore("mysuite", dir);
+        Assert.assertEquals(0.5, store.read("myjob").getProgress(), 0);
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JournalJobSuiteStatusStore store =
+                new JournalJobSuiteStatusStore("mysuite", dir);
+        store.setMaxSegmentSize(1024);
+        for (int i = 1; i <= 100; i++) {
+            JobStatus status = new JobStatus("job" + i, null);
+            status.setProgress(i / 100d);
+            store.write(status);
+            // Close now and then, compacted or not, and keep appending.
+            if (i % 7 == 0) {
+                store.close();
+            }
+        }
+        store.close();
+
+        store = new JournalJobSuiteStatusStore("mysuite", dir);
+        store.setMaxSegmentSize(1024);
+        JobStatus status = new JobStatus("job101", null);
+        status.setProgress(1d);
+        store.write(status);
+        store.close();
+
+        store = new JournalJobSuiteStatusStore("mysuite", dir);
+        for (int i = 1; i <= 101; i++) {
+            Assert.assertEquals("job" + i, Math.min(1d, i / 100d),
+                    store.read("job" + i).getProgress(), 0);
+        }
+        store.close();
+    }
+}
@@ -0,0 +1,189 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.commons.lang.Sleeper;
+import com.norconex.jef5.JEFTestUtil;
+import com.norconex.jef5.event.JefEvent;
+import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.job.group.AsyncJobGroup;
+import com.norconex.jef5.job.impl.SleepyJob;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusUpdater;
+import com.norconex.jef5.status.JobSuiteStatus;
+import com.norconex.jef5.status.StatusDurability;
+import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobSuiteConfig;
+
+public class MVStoreJobSuiteStatusStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteRead() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        MVStoreJobSuiteStatusStore store =
+                new MVStoreJobSuiteStatusStore("mysuite", dir);
+        // Nothing written yet
+        Assert.assertEquals(0d, store.read("job1").getProgress(), 0);
+
+        JobStatus job1 = new JobStatus("job1", null);
+        job1.setStartTime(Instant.now());
+        job1.setProgress(0.5);
+        job1.setNote("Half done.");
+        job1.getProperties().set("key", "value");
+        store.write(job1);
+        JobStatus job2 = new JobStatus("job2", null);
+        job2.setProgress(1d);
+        job2.setEndTime(Instant.now());
+        store.write(job2);
+
+        Assert.assertEquals(job1, store.read("job1"));
+        Assert.assertNotNull(store.read("job1").getLastActivity());
+        Assert.assertEquals(2, store.readAll(
+                Arrays.asList("job1", "job2")).size());
+        Assert.assertEquals(Collections.singleton("job1"),
+                store.getJobIds(JobState.RUNNING));
+        Assert.assertEquals(Collections.singleton("job2"),
+                store.getJobIds(JobState.COMPLETED));
+
+        // State index follows state changes
+        job1.setProgress(1d);
+        store.write(job1);
+        Assert.assertTrue(store.getJobIds(JobState.RUNNING).isEmpty());
+        Assert.assertEquals(Arrays.asList("job1", "job2"), Arrays.asList(
+                store.getJobIds(JobState.COMPLETED).toArray()));
+        store.close();
+
+        // Read by a different instance
+        MVStoreJobSuiteStatusStore reader =
+                new MVStoreJobSuiteStatusStore("mysuite", dir);
+        Assert.assertEquals(job1, reader.read("job1"));
+
+        // Backup
+        Path backupDir = folder.getRoot().toPath().resolve("backup");
+        reader.backup(backupDir);
+        Assert.assertFalse(Files.exists(dir));
+        Assert.assertEquals(job2, new MVStoreJobSuiteStatusStore(
+                "mysuite", backupDir).read("job2"));
+    }
+
+    @Test
+    public void testReadWhileWriting() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        MVStoreJobSuiteStatusStore writer =
+                new MVStoreJobSuiteStatusStore("mysuite", dir);
+        writer.setDurability(StatusDurability.ATOMIC);
+        JobStatus job1 = new JobStatus("job1", null);
+        job1.setProgress(0.5);
+        writer.write(job1);
+
+        // Locked by the writer, a copy is read.
+        MVStoreJobSuiteStatusStore reader =
+                new MVStoreJobSuiteStatusStore("mysuite", dir);
+        Assert.assertEquals(0.5d, reader.read("job1").getProgress(), 0);
+
+        // Copied again once changed.
+        job1.setProgress(1d);
+        writer.write(job1);
+        Assert.assertEquals(1d, reader.read("job1").getProgress(), 0);
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testStopRunningSuite() throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setStatusStoreFactory(MVStoreJobSuiteStatusStore::new);
+        CountDownLatch started = new CountDownLatch(1);
+        IJob job = new IJob() {
+            @Override
+            public String getId() {
+                return "untilStopped";
+            }
+            @Override
+            public void execute(
+                    JobStatusUpdater statusUpdater, JobSuite suite) {
+                statusUpdater.setProgress(0.1);
+                started.countDown();
+                while (!suite.getJobStatus(getId()).isStopRequested()) {
+                    Sleeper.sleepMillis(50);
+                }
+            }
+            @Override
+            public void stop(JobStatus status, JobSuite suite) {
+                //NOOP
+            }
+        };
+        CountDownLatch stopping = new CountDownLatch(1);
+        config.addEventListeners(e -> {
+            if (e.is(JefEvent.SUITE_STOPPING)) {
+                stopping.countDown();
+            }
+        });
+        JobSuite suite = new JobSuite(job, config);
+        Thread t = new Thread(suite::execute);
+        t.start();
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // Statuses of the running suite can be read, once committed...
+        JobSuiteStatus suiteStatus =
+                JobSuiteStatus.getInstance(suite.getStatusIndex());
+        for (int i = 0; i < 50
+                && !suiteStatus.getRootStatus().isRunning(); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(suiteStatus.getRootStatus().isRunning());
+        // ...and it can be stopped.
+        JobSuite.stop(suite.getStatusIndex());
+        Assert.assertTrue("Stop request not detected within 5 seconds.",
+                stopping.await(5, TimeUnit.SECONDS));
+        t.join();
+        Assert.assertEquals(JobState.STOPPED, JobSuiteStatus.getInstance(
+                suite.getStatusIndex()).getRootStatus().getState());
+    }
+
+    @Test
+    public void testJobSuite() throws IOException {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setStatusStoreFactory(MVStoreJobSuiteStatusStore::new);
+        JobSuite suite = new JobSuite(new AsyncJobGroup("async",
+                new SleepyJob(2, 1), new SleepyJob(3, 1)), config);
+        Assert.assertTrue("Execution returned false.", suite.execute());
+
+        JobSuiteStatus suiteStatus =
+                JobSuiteStatus.getInstance(suite.getStatusIndex());
+        Assert.assertEquals(3, suiteStatus.getAllStatuses().size());
+        for (JobStatus status : suiteStatus.getAllStatuses()) {
+            Assert.assertEquals(1d, status.getProgress(), 0d);
+        }
+    }
+}
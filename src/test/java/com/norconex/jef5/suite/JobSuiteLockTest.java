@@ -0,0 +1,101 @@
+/* Copyright 2021 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobSuiteStatus;
+import com.norconex.jef5.status.JobSuiteStatusDAO;
+
+public class JobSuiteLockTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLock() throws IOException {
+        Path lockFile = folder.getRoot().toPath().resolve("a/suite.lock");
+        Assert.assertFalse(JobSuiteLock.isLocked(lockFile));
+
+        try (JobSuiteLock lock = JobSuiteLock.tryAcquire(lockFile)) {
+            Assert.assertNotNull(lock);
+            Assert.assertTrue(JobSuiteLock.isLocked(lockFile));
+            Assert.assertNull(JobSuiteLock.tryAcquire(lockFile));
+            Assert.assertTrue(lock.isValid());
+        }
+        Assert.assertTrue(Files.exists(lockFile));
+        Assert.assertFalse(JobSuiteLock.isLocked(lockFile));
+        JobSuiteLock.tryAcquire(lockFile).close();
+    }
+
+    @Test
+    public void testProbeDoesNotPreventAcquire() throws Exception {
+        Path lockFile = folder.getRoot().toPath().resolve("suite.lock");
+        AtomicBoolean done = new AtomicBoolean();
+        Thread prober = new Thread(() -> {
+            while (!done.get()) {
+                try {
+                    JobSuiteLock.isLocked(lockFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        prober.start();
+        try {
+            for (int i = 0; i < 200; i++) {
+                JobSuiteLock lock = JobSuiteLock.tryAcquire(lockFile);
+                Assert.assertNotNull(lock);
+                lock.close();
+            }
+        } finally {
+            done.set(true);
+            prober.join();
+        }
+    }
+
+    @Test
+    public void testLeaseRevokedWhenUnlocked() throws IOException {
+        Path statusDir = folder.newFolder("status").toPath();
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("myjob", statusDir);
+        JobStatus status = new JobStatus("myjob", null);
+        status.setProgress(0.5);
+        dao.write(status);
+
+        String xml = "<suite-index><job id=\"myjob\"/></suite-index>";
+        JobSuiteStatus suiteStatus = JobSuiteStatus.getInstance(
+                statusDir, new StringReader(xml));
+        // No lock file: relies on last activity.
+        Assert.assertTrue(suiteStatus.getRootStatus().isRunning());
+
+        Path lockFile = JobSuite.getLockFile(statusDir);
+        try (JobSuiteLock lock = JobSuiteLock.tryAcquire(lockFile)) {
+            Assert.assertTrue(suiteStatus.getRootStatus().isRunning());
+        }
+        // Lock released: process is gone.
+        Assert.assertFalse(suiteStatus.getRootStatus().isRunning());
+    }
+}
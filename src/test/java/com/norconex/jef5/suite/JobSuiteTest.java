@@ -15,16 +15,46 @@
 package com.norconex.jef5.suite;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
 
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import com.norconex.commons.lang.Sleeper;
+import com.norconex.commons.lang.file.FileUtil;
 import com.norconex.jef5.JEFTestUtil;
+import com.norconex.jef5.event.JefEvent;
 import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.job.group.AsyncJobGroup;
 import com.norconex.jef5.job.impl.SleepyJob;
+import com.norconex.jef5.shutdown.IShutdownHook;
+import com.norconex.jef5.shutdown.impl.JmxShutdownHook;
+import com.norconex.jef5.shutdown.impl.SocketShutdownHook;
+import com.norconex.jef5.status.IJobSuiteStatusStore;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusData;
+import com.norconex.jef5.status.JobStatusSegment;
+import com.norconex.jef5.status.JobStatusUpdater;
 import com.norconex.jef5.status.JobSuiteStatus;
+import com.norconex.jef5.status.JobSuiteStatusDAO;
+import com.norconex.jef5.status.impl.JournalJobSuiteStatusStore;
 
 public class JobSuiteTest {
 
@@ -45,4 +75,393 @@ public class JobSuiteTest {
         Assert.assertEquals(1d, tree.getRootStatus().getProgress(), 0d);
     }
 
+    @Test
+    public void testCustomStatusStore() throws IOException {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setStatusStoreFactory(JournalJobSuiteStatusStore::new);
+        JobSuite suite = new JobSuite(new SleepyJob(2, 1), config);
+        Assert.assertTrue(suite.getJobSuiteStatusStore()
+                instanceof JournalJobSuiteStatusStore);
+        Assert.assertNull(suite.getJobSuiteStatusDAO());
+        JobSuiteConfig daoConfig = new JobSuiteConfig();
+        daoConfig.setWorkdir(folder.newFolder().toPath());
+        Assert.assertNotNull(new JobSuite(new SleepyJob(2, 1), daoConfig)
+                .getJobSuiteStatusDAO());
+        Assert.assertTrue("Execution returned false.", suite.execute());
+
+        // Store is recreated from the index
+        JobSuiteStatus tree =
+                JobSuiteStatus.getInstance(suite.getStatusIndex());
+        Assert.assertEquals(1d, tree.getRootStatus().getProgress(), 0d);
+    }
+
+    @Test
+    public void testStatusSegment() throws IOException {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setStatusSegmentSlots(10);
+        JobSuite suite = new JobSuite(new SleepyJob(2, 1), config);
+        Assert.assertTrue("Execution returned false.", suite.execute());
+
+        try (JobStatusSegment segment =
+                JobStatusSegment.open(suite.getStatusSegmentFile())) {
+            JobStatusData data = segment.read(suite.getId());
+            Assert.assertEquals(1d, data.getProgress(), 0d);
+            Assert.assertEquals(JobState.COMPLETED, data.getState());
+        }
+    }
+
+    @Test
+    public void testBackups() throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setBackupMaxCount(2);
+        for (int i = 0; i < 4; i++) {
+            JobSuite suite = new JobSuite(new SleepyJob(0, 1), config);
+            Assert.assertTrue("Execution returned false.", suite.execute());
+            Assert.assertTrue(suite.getStatusBackups().awaitArchiving(
+                    Duration.ofSeconds(10)));
+        }
+        Path backupDir = config.getWorkdir().resolve(
+                Paths.get(FileUtil.toSafeFileName("Sleepy Job 0-1"),
+                        JobSuite.STATUS_BACKUP_SUBDIR));
+        try (Stream<Path> files = Files.walk(backupDir)) {
+            Assert.assertEquals(2, files.filter(
+                    f -> f.toString().endsWith(".zip")).count());
+        }
+        try (Stream<Path> files = Files.list(backupDir.resolve(
+                JobSuiteStatusBackups.STAGING_SUBDIR))) {
+            Assert.assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testStatusesReadOnce() throws IOException {
+        AtomicInteger reads = new AtomicInteger();
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setStatusStoreFactory((suiteId, statusDir) -> {
+            JobSuiteStatusDAO dao = new JobSuiteStatusDAO(suiteId, statusDir);
+            return new IJobSuiteStatusStore() {
+                @Override
+                public void write(JobStatus status) throws IOException {
+                    dao.write(status);
+                }
+                @Override
+                public JobStatus read(String jobId) throws IOException {
+                    reads.incrementAndGet();
+                    return dao.read(jobId);
+                }
+                @Override
+                public Instant touch(String jobId) throws IOException {
+                    return dao.touch(jobId);
+                }
+                @Override
+                public void delete() throws IOException {
+                    dao.delete();
+                }
+                @Override
+                public void backup(Path backupDir) throws IOException {
+                    dao.backup(backupDir);
+                }
+            };
+        });
+        JobSuite suite = new JobSuite(new AsyncJobGroup("group",
+                new SleepyJob(2, 1), new SleepyJob(3, 1)), config);
+        Assert.assertTrue("Execution returned false.", suite.execute());
+
+        // Each job status was read from the store once only, then kept
+        // in memory.
+        Assert.assertEquals(3, reads.get());
+        Assert.assertSame(suite.getRootStatus(), suite.getRootStatus());
+        Assert.assertEquals(1d, suite.getRootStatus().getProgress(), 0d);
+    }
+
+    @Test
+    public void testStopRequestDetected() throws Exception {
+        assertStopRequestDetected(null);
+    }
+    @Test
+    public void testSocketStopRequest() throws Exception {
+        assertStopRequestDetected(new SocketShutdownHook());
+    }
+    @Test
+    public void testJmxStopRequest() throws Exception {
+        assertStopRequestDetected(new JmxShutdownHook());
+    }
+    @Test
+    public void testJmxStopRequiresToken() throws Exception {
+        JmxShutdownHook hook = new JmxShutdownHook();
+        hook.setup(new JobSuite(new SleepyJob(1, 1),
+                JEFTestUtil.newConfig(folder)));
+        try {
+            Map<String, String> attribs = hook.getIndexAttributes();
+            ObjectName name = new ObjectName(
+                    attribs.get(JmxShutdownHook.ATTR_OBJECT_NAME));
+            Assert.assertFalse(ManagementFactory.getPlatformMBeanServer()
+                    .isRegistered(name));
+            JMXServiceURL url = new JMXServiceURL(
+                    attribs.get(JmxShutdownHook.ATTR_URL));
+            try {
+                JMXConnectorFactory.connect(url).close();
+                Assert.fail("Connected without a token.");
+            } catch (SecurityException e) {
+                // expected
+            }
+        } finally {
+            hook.destroy();
+        }
+    }
+    private void assertStopRequestDetected(IShutdownHook hook)
+            throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setShutdownHook(hook);
+        CountDownLatch stopping = new CountDownLatch(1);
+        config.addEventListeners(e -> {
+            if (e.is(JefEvent.SUITE_STOPPING)) {
+                stopping.countDown();
+            }
+        });
+        JobSuite suite = new JobSuite(new SleepyJob(3, 1), config);
+        Thread t = new Thread(suite::execute);
+        t.start();
+        for (int i = 0; i < 50 && !isRunning(suite.getStatusIndex()); i++) {
+            Thread.sleep(100);
+        }
+        JobSuite.stop(suite.getStatusIndex());
+        Assert.assertTrue("Stop request not detected within 2 seconds.",
+                stopping.await(2, TimeUnit.SECONDS));
+        t.join();
+    }
+
+    @Test
+    public void testStopCoordinator() throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setStopThreads(2);
+        config.setStopDeadline(Duration.ofSeconds(5));
+        IJob job1 = new SleepyJob(5, 1);
+        IJob job2 = new SleepyJob(4, 1);
+        JobSuite suite = new JobSuite(
+                new AsyncJobGroup("group", job1, job2), config);
+        Thread t = new Thread(suite::execute);
+        t.start();
+        for (int i = 0; i < 50 && !isRunning(suite.getStatusIndex()); i++) {
+            Thread.sleep(100);
+        }
+        suite.getStopCoordinator().stop().get(10, TimeUnit.SECONDS);
+        t.join();
+        // The group may end before it is asked to stop, once its jobs
+        // have ended, so its latency is not always known.
+        Map<String, Duration> latencies =
+                suite.getStopCoordinator().getStopLatencies();
+        Assert.assertTrue(latencies.containsKey(job1.getId()));
+        Assert.assertTrue(latencies.containsKey(job2.getId()));
+        Assert.assertEquals(JobState.STOPPED, suite.getRootStatus().getState());
+    }
+
+    @Test
+    public void testStopDeadline() throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setStopDeadline(Duration.ofMillis(300));
+        CountDownLatch release = new CountDownLatch(1);
+        IJob interruptible = new UnstoppableJob("interruptible", null);
+        IJob stubborn = new UnstoppableJob("stubborn", release);
+        JobSuite suite = new JobSuite(new AsyncJobGroup(
+                "group", interruptible, stubborn), config);
+        Thread t = new Thread(suite::execute);
+        t.start();
+        for (int i = 0; i < 50 && !isRunning(suite.getStatusIndex()); i++) {
+            Thread.sleep(100);
+        }
+
+        // Not waiting indefinitely for jobs ignoring interruptions.
+        suite.getStopCoordinator().stop().get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(JobState.STOPPED,
+                suite.getJobStatus(interruptible).getState());
+        // The group was not interrupted and still waits for its jobs.
+        Assert.assertTrue(t.isAlive());
+        Assert.assertEquals(
+                JobState.STOPPING, suite.getRootStatus().getState());
+
+        release.countDown();
+        t.join();
+        Assert.assertEquals(JobState.STOPPED, suite.getRootStatus().getState());
+    }
+
+    @Test
+    public void testFailedSetupTornDown() throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setStatusWriteInterval(Duration.ofMillis(50));
+        config.setStatusSegmentSlots(10);
+        AtomicInteger destroyed = new AtomicInteger();
+        config.setShutdownHook(new IShutdownHook() {
+            @Override
+            public void setup(JobSuite suite) {
+                throw new IllegalStateException("Setup failure.");
+            }
+            @Override
+            public void destroy() {
+                destroyed.incrementAndGet();
+            }
+            @Override
+            public boolean shutdown(Path indexFile) {
+                return false;
+            }
+        });
+        JobSuite suite = new JobSuite(new SleepyJob(0, 1), config);
+        Assert.assertFalse(suite.execute());
+
+        // What was started is stopped, what was not is left alone.
+        Assert.assertEquals(0, destroyed.get());
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if ("JobStatusWriter Thread".equals(t.getName())) {
+                t.join(5000);
+                Assert.assertFalse("Status writer still running.",
+                        t.isAlive());
+            }
+        }
+        // Lock released and store closed: can run again.
+        config.setShutdownHook(null);
+        Assert.assertTrue(
+                new JobSuite(new SleepyJob(0, 1), config).execute());
+    }
+
+    @Test
+    public void testJvmShutdownHook() throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setJvmShutdownHook(true);
+        JobSuite suite = new JobSuite(new SleepyJob(3, 1), config);
+        Thread t = new Thread(suite::execute);
+        t.start();
+        for (int i = 0; i < 50 && !isRunning(suite.getStatusIndex()); i++) {
+            Thread.sleep(100);
+        }
+        // Same as the JVM invoking it on termination.
+        new JvmShutdownHook(suite, Duration.ofMillis(200)).run();
+
+        // Recorded as stopped right away, not aborted.
+        JobSuiteStatus status =
+                JobSuiteStatus.getInstance(suite.getStatusIndex());
+        Assert.assertEquals(
+                JobState.STOPPED, status.getRootStatus().getState());
+        t.join();
+    }
+
+    @Test
+    public void testStopAndRequeueJob() throws Exception {
+        assertStopAndRequeueJob(null);
+    }
+    @Test
+    public void testSocketStopJob() throws Exception {
+        assertStopAndRequeueJob(new SocketShutdownHook());
+    }
+    @Test
+    public void testJmxStopJob() throws Exception {
+        assertStopAndRequeueJob(new JmxShutdownHook());
+    }
+    private void assertStopAndRequeueJob(IShutdownHook hook)
+            throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setShutdownHook(hook);
+        StoppableJob stoppable = new StoppableJob();
+        AtomicInteger progressed = new AtomicInteger();
+        config.addEventListeners(e -> {
+            if (e.is(JefEvent.JOB_PROGRESSED)) {
+                JobStatus js = ((JefEvent) e).getStatus();
+                if (js != null && stoppable.getId().equals(js.getJobId())) {
+                    progressed.incrementAndGet();
+                }
+            }
+        });
+        IJob sleepy = new SleepyJob(3, 1);
+        JobSuite suite = new JobSuite(
+                new AsyncJobGroup("group", stoppable, sleepy), config);
+        Thread t = new Thread(suite::execute);
+        t.start();
+        for (int i = 0; i < 50 && !isRunning(suite.getStatusIndex()); i++) {
+            Thread.sleep(100);
+        }
+
+        JobSuite.stop(suite.getStatusIndex(), stoppable.getId());
+        JobStatus status = suite.getJobStatus(stoppable);
+        for (int i = 0; i < 50 && status.getState() != JobState.STOPPED;
+                i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(JobState.STOPPED, status.getState());
+        // Siblings are not affected.
+        Assert.assertEquals(
+                JobState.RUNNING, suite.getJobStatus(sleepy).getState());
+
+        Assert.assertTrue(suite.requeueJob(stoppable.getId()));
+        t.join();
+        Assert.assertEquals(2, stoppable.runs.get());
+        // One notification per change, not one per execution.
+        Assert.assertEquals(2, progressed.get());
+        Assert.assertEquals(JobState.COMPLETED, status.getState());
+        Assert.assertEquals(
+                JobState.COMPLETED, suite.getRootStatus().getState());
+    }
+
+    private boolean isRunning(Path index) throws IOException {
+        JobSuiteStatus status = JobSuiteStatus.getInstance(index);
+        return status != null && status.getRootStatus().isRunning();
+    }
+
+    // Ignores stop requests. Ends when interrupted, or once released
+    // if a latch is given.
+    private static class UnstoppableJob implements IJob {
+        private final String id;
+        private final CountDownLatch release;
+        public UnstoppableJob(String id, CountDownLatch release) {
+            super();
+            this.id = id;
+            this.release = release;
+        }
+        @Override
+        public String getId() {
+            return id;
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            while (true) {
+                try {
+                    if (release == null) {
+                        Thread.sleep(Long.MAX_VALUE);
+                    } else if (release.await(10, TimeUnit.SECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    if (release == null) {
+                        return;
+                    }
+                }
+            }
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            //NOOP
+        }
+    }
+
+    // Runs until stopped the first time, completes right away after.
+    private static class StoppableJob implements IJob {
+        private final AtomicInteger runs = new AtomicInteger();
+        @Override
+        public String getId() {
+            return "stoppable";
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            if (runs.incrementAndGet() > 1) {
+                statusUpdater.getProperties().set("rerun", true);
+                statusUpdater.setProgress(1d);
+                return;
+            }
+            while (!suite.getJobStatus(getId()).isStopRequested()) {
+                Sleeper.sleepMillis(50);
+            }
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            //NOOP
+        }
+    }
 }